@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.DirectoryService;
+
+/**
+ * Test data shared by the benchmarks: users <code>uid=user{N},ou=Users,dc=ldap,dc=example</code> with password
+ * <code>password{N}</code>.
+ */
+final class BenchmarkData {
+
+    static final String USERS_DN = "ou=Users,dc=ldap,dc=example";
+    static final int PORT = 10489;
+
+    private BenchmarkData() {
+    }
+
+    static String userDn(int id) {
+        return "uid=user" + id + "," + USERS_DN;
+    }
+
+    static String password(int id) {
+        return "password" + id;
+    }
+
+    /**
+     * Starts a server with the default data on {@link #PORT}.
+     */
+    static LdapServer startServer(String... extraArgs) throws Exception {
+        String[] args = new String[extraArgs.length + 4];
+        args[0] = "-b";
+        args[1] = "127.0.0.1";
+        args[2] = "-p";
+        args[3] = String.valueOf(PORT);
+        System.arraycopy(extraArgs, 0, args, 4, extraArgs.length);
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, args);
+        return new LdapServer(cliArguments);
+    }
+
+    /**
+     * Adds users with IDs from interval [0, count) directly to the partition.
+     */
+    static void addUsers(DirectoryService directoryService, int count) throws LdapException {
+        BulkLoader loader = new BulkLoader(directoryService);
+        for (int i = 0; i < count; i++) {
+            loader.add(new DefaultEntry(directoryService.getSchemaManager(), userDn(i), "objectClass: inetOrgPerson",
+                    "uid: user" + i, "cn: User " + i, "sn: " + i, "userPassword: " + password(i)));
+        }
+    }
+
+    /**
+     * Writes LDIF file with given number of users.
+     */
+    static File writeLdif(int count) throws IOException {
+        File file = File.createTempFile("ldap-benchmark-" + count + "-", ".ldif");
+        file.deleteOnExit();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("version: 1\n\n");
+            for (int i = 0; i < count; i++) {
+                writer.write("dn: " + userDn(i) + "\nobjectClass: top\nobjectClass: person\nobjectClass: inetOrgPerson\nuid: user"
+                        + i + "\ncn: User " + i + "\nsn: " + i + "\nmail: user" + i + "@ldap.example\nuserPassword: "
+                        + password(i) + "\n\n");
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latency of searches with compound filters with and without the search optimizer (<code>--search-optimizer</code>) for
+ * the default and the multi-version partitions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ComplexFilterBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({ "avl", "mvcc" })
+        public String partition;
+
+        @Param({ "false", "true" })
+        public boolean optimizer;
+
+        @Param({ "100000" })
+        public int entries;
+
+        LdapServer server;
+        SchemaManager schemaManager;
+        CoreSession adminSession;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            List<String> args = new ArrayList<String>();
+            if ("mvcc".equals(partition)) {
+                args.add("-mvcc");
+            }
+            if (optimizer) {
+                args.add("-so");
+            }
+            server = BenchmarkData.startServer(args.toArray(new String[args.size()]));
+            schemaManager = server.getDirectoryService().getSchemaManager();
+            BenchmarkData.addUsers(server.getDirectoryService(), entries);
+            if (server.getSearchOptimizer() != null) {
+                server.getSearchOptimizer().rebuild();
+            }
+            adminSession = server.getDirectoryService().getAdminSession();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            server.stop();
+        }
+
+        int randomUser() {
+            return ThreadLocalRandom.current().nextInt(entries);
+        }
+    }
+
+    @Benchmark
+    public int classAndUid(Server server) throws Exception {
+        return search(server, "(&(objectClass=person)(uid=user" + server.randomUser() + "))");
+    }
+
+    @Benchmark
+    public int nested(Server server) throws Exception {
+        int id = server.randomUser();
+        return search(server, "(&(objectClass=inetOrgPerson)(sn=*)(|(uid=user" + id + ")(cn=User " + id + "))(!(cn=nobody)))");
+    }
+
+    @Benchmark
+    public int impossible(Server server) throws Exception {
+        return search(server, "(&(objectClass=person)(sn=*)(uid=nobody" + server.randomUser() + "))");
+    }
+
+    private static int search(Server server, String filter) throws Exception {
+        Cursor<Entry> cursor = server.adminSession.search(new Dn(server.schemaManager, BenchmarkData.USERS_DN),
+                SearchScope.SUBTREE, FilterParser.parse(server.schemaManager, filter), AliasDerefMode.NEVER_DEREF_ALIASES,
+                "cn");
+        int count = 0;
+        try {
+            while (cursor.next()) {
+                cursor.get();
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+}
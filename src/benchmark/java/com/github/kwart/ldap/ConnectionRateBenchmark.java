@@ -0,0 +1,88 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Short-lived connections (connect, bind, close) from many concurrent clients with the default and with tuned transport
+ * settings (<code>--backlog</code>, <code>--io-threads</code>, <code>--worker-threads</code>). The sample time mode reports
+ * both the connection rate and the latency percentiles.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(64)
+public class ConnectionRateBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({ "default", "tuned" })
+        public String transport;
+
+        @Param({ "1000" })
+        public int entries;
+
+        LdapServer server;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            if ("tuned".equals(transport)) {
+                int cpus = Runtime.getRuntime().availableProcessors();
+                server = BenchmarkData.startServer("-bl", "4096", "-iot", String.valueOf(cpus), "-wt",
+                        String.valueOf(cpus * 8));
+            } else {
+                server = BenchmarkData.startServer();
+            }
+            BenchmarkData.addUsers(server.getDirectoryService(), entries);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            server.stop();
+        }
+    }
+
+    @Benchmark
+    public void connectBindClose(Server server) throws Exception {
+        int id = ThreadLocalRandom.current().nextInt(server.entries);
+        LdapNetworkConnection connection = new LdapNetworkConnection("127.0.0.1", BenchmarkData.PORT);
+        try {
+            connection.bind(BenchmarkData.userDn(id), BenchmarkData.password(id));
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Bind, search and modify throughput for several directory sizes, both in-process (directly through the
+ * {@link DirectoryService}) and over TCP (LDAP API client, one connection per benchmark thread).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DirectoryOperationsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({ "1000", "10000", "100000" })
+        public int entries;
+
+        LdapServer server;
+        DirectoryService directoryService;
+        CoreSession adminSession;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            server = BenchmarkData.startServer();
+            directoryService = server.getDirectoryService();
+            BenchmarkData.addUsers(directoryService, entries);
+            adminSession = directoryService.getAdminSession();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            server.stop();
+        }
+
+        int randomUser() {
+            return ThreadLocalRandom.current().nextInt(entries);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+
+        LdapNetworkConnection userConnection;
+        LdapNetworkConnection adminConnection;
+
+        /**
+         * The {@link Server} parameter makes JMH start the server before the connections are opened.
+         */
+        @Setup(Level.Trial)
+        public void connect(Server server) throws Exception {
+            userConnection = new LdapNetworkConnection("127.0.0.1", BenchmarkData.PORT);
+            adminConnection = new LdapNetworkConnection("127.0.0.1", BenchmarkData.PORT);
+            userConnection.connect();
+            adminConnection.connect();
+            adminConnection.bind("uid=admin,ou=system", "secret");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            userConnection.close();
+            adminConnection.close();
+        }
+    }
+
+    @Benchmark
+    public Object inProcessBind(Server server) throws Exception {
+        int id = server.randomUser();
+        CoreSession session = server.directoryService.getSession(new Dn(server.directoryService.getSchemaManager(),
+                BenchmarkData.userDn(id)), Strings.getBytesUtf8(BenchmarkData.password(id)));
+        session.unbind();
+        return session;
+    }
+
+    @Benchmark
+    public int inProcessSearch(Server server) throws Exception {
+        Cursor<Entry> cursor = server.adminSession.search(
+                new Dn(server.directoryService.getSchemaManager(), BenchmarkData.USERS_DN), SearchScope.SUBTREE,
+                FilterParser.parse(server.directoryService.getSchemaManager(), "(uid=user" + server.randomUser() + ")"),
+                AliasDerefMode.NEVER_DEREF_ALIASES, "cn", "mail");
+        return consume(cursor);
+    }
+
+    @Benchmark
+    public void inProcessModify(Server server) throws Exception {
+        server.adminSession.modify(new Dn(server.directoryService.getSchemaManager(), BenchmarkData.userDn(server.randomUser())),
+                new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, "description",
+                        String.valueOf(System.nanoTime())));
+    }
+
+    @Benchmark
+    public void tcpBind(Server server, Connection connection) throws Exception {
+        int id = server.randomUser();
+        connection.userConnection.bind(BenchmarkData.userDn(id), BenchmarkData.password(id));
+    }
+
+    @Benchmark
+    public int tcpSearch(Server server, Connection connection) throws Exception {
+        EntryCursor cursor = connection.adminConnection.search(BenchmarkData.USERS_DN, "(uid=user" + server.randomUser() + ")",
+                SearchScope.SUBTREE, "cn", "mail");
+        return consume(cursor);
+    }
+
+    @Benchmark
+    public void tcpModify(Server server, Connection connection) throws Exception {
+        connection.adminConnection.modify(BenchmarkData.userDn(server.randomUser()),
+                new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, "description",
+                        String.valueOf(System.nanoTime())));
+    }
+
+    private static int consume(Cursor<Entry> cursor) throws Exception {
+        int count = 0;
+        try {
+            while (cursor.next()) {
+                cursor.get();
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Loads users to an empty server and reports the memory cost per entry for the default and the off-heap
+ * (<code>--off-heap-partitions</code>) partitions. The <code>heapBytesPerEntry</code> and <code>offHeapBytesPerEntry</code>
+ * secondary results hold the numbers, the primary score is the load time.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EntryMemoryBenchmark {
+
+    @State(Scope.Thread)
+    public static class Server {
+
+        @Param({ "avl", "offheap" })
+        public String partition;
+
+        @Param({ "100000" })
+        public int entries;
+
+        LdapServer server;
+
+        @Setup(Level.Iteration)
+        public void start() throws Exception {
+            server = "offheap".equals(partition) ? BenchmarkData.startServer("-ohp") : BenchmarkData.startServer();
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop() throws Exception {
+            server.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Memory {
+        public long heapBytesPerEntry;
+        public long offHeapBytesPerEntry;
+    }
+
+    @Benchmark
+    public void load(Server server, Memory memory) throws Exception {
+        DirectoryService directoryService = server.server.getDirectoryService();
+        long heapBefore = usedHeap();
+        BenchmarkData.addUsers(directoryService, server.entries);
+        memory.heapBytesPerEntry = (usedHeap() - heapBefore) / server.entries;
+        long offHeap = 0L;
+        for (Partition partition : directoryService.getPartitions()) {
+            if (partition instanceof OffHeapPartition) {
+                offHeap += ((OffHeapPartition) partition).getOffHeapBytes();
+            }
+        }
+        memory.offHeapBytesPerEntry = offHeap / server.entries;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
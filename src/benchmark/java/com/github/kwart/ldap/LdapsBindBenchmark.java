@@ -0,0 +1,178 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Context;
+import javax.naming.ldap.InitialLdapContext;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Throughput of binds over a new ldaps connection each time. Without resumption every connection uses a new client SSL
+ * context, so each bind pays a full TLS handshake; with resumption the clients share one context and the server resumes
+ * the cached TLS sessions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class LdapsBindBenchmark {
+
+    static final int SSL_PORT = 10499;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({ "false", "true" })
+        public boolean resumption;
+
+        @Param({ "1000" })
+        public int entries;
+
+        LdapServer server;
+        Properties env;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            server = BenchmarkData.startServer("-sp", String.valueOf(SSL_PORT), "-sscs", "10000", "-sst", "3600");
+            BenchmarkData.addUsers(server.getDirectoryService(), entries);
+            env = new Properties();
+            env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+            env.put(Context.PROVIDER_URL, "ldaps://127.0.0.1:" + SSL_PORT);
+            env.put(Context.SECURITY_AUTHENTICATION, "simple");
+            env.put("java.naming.ldap.factory.socket",
+                    (resumption ? SharedContextSocketFactory.class : NewContextSocketFactory.class).getName());
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            TlsHandshakeCounter counter = server.getTlsHandshakes();
+            System.out.println("TLS handshakes: full=" + counter.getFullHandshakes() + ", resumed="
+                    + counter.getResumedHandshakes());
+            server.stop();
+        }
+    }
+
+    @Benchmark
+    public void connectBindClose(Server server) throws Exception {
+        int id = ThreadLocalRandom.current().nextInt(server.entries);
+        Properties env = (Properties) server.env.clone();
+        env.put(Context.SECURITY_PRINCIPAL, BenchmarkData.userDn(id));
+        env.put(Context.SECURITY_CREDENTIALS, BenchmarkData.password(id));
+        new InitialLdapContext(env, null).close();
+    }
+
+    static SSLContext createClientContext() {
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            // a plain X509TrustManager would still get the LDAPS host name check, the extended one skips it
+            sslContext.init(null, new TrustManager[] { new LdapServerTest.NoVerificationTrustManager() },
+                    new SecureRandom());
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * JNDI socket factory which shares one client SSL context, so the TLS sessions can be resumed.
+     */
+    public static class SharedContextSocketFactory extends DelegatingSocketFactory {
+
+        private static final SocketFactory SHARED = createClientContext().getSocketFactory();
+
+        public static SocketFactory getDefault() {
+            return new SharedContextSocketFactory();
+        }
+
+        @Override
+        SocketFactory delegate() {
+            return SHARED;
+        }
+    }
+
+    /**
+     * JNDI socket factory which creates a new client SSL context for each connection.
+     */
+    public static class NewContextSocketFactory extends DelegatingSocketFactory {
+
+        public static SocketFactory getDefault() {
+            return new NewContextSocketFactory();
+        }
+
+        @Override
+        SocketFactory delegate() {
+            return createClientContext().getSocketFactory();
+        }
+    }
+
+    abstract static class DelegatingSocketFactory extends SocketFactory {
+
+        abstract SocketFactory delegate();
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return delegate().createSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return delegate().createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return delegate().createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return delegate().createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return delegate().createSocket(address, port, localAddress, localPort);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * LDIF import throughput ({@code LdapServer.importLdif}) into a freshly started server. Each invocation imports the whole
+ * generated LDIF file, so the score is the import time for the given number of entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LdifImportBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int entries;
+
+    @Param({ "false", "true" })
+    public boolean bulkImport;
+
+    private File ldifFile;
+    private LdapServer server;
+
+    @Setup(Level.Trial)
+    public void createLdif() throws Exception {
+        ldifFile = BenchmarkData.writeLdif(entries);
+    }
+
+    @Setup(Level.Invocation)
+    public void startServer() throws Exception {
+        server = bulkImport ? BenchmarkData.startServer("-bi") : BenchmarkData.startServer();
+    }
+
+    @Benchmark
+    public void importLdif() throws Exception {
+        server.importLdif(Collections.singletonList(ldifFile.getAbsolutePath()));
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopServer() throws Exception {
+        server.stop();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLdif() {
+        ldifFile.delete();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Search throughput of several reader threads while another thread keeps modifying entries. Compare the <code>read</code>
+ * score of the default partitions with the multi-version ones (<code>--mvcc-partitions</code>) and with the
+ * <code>readOnly</code> group as the baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MixedReadWriteBenchmark {
+
+    @State(Scope.Group)
+    public static class Server {
+
+        @Param({ "avl", "mvcc" })
+        public String partition;
+
+        @Param({ "10000" })
+        public int entries;
+
+        LdapServer server;
+        DirectoryService directoryService;
+        SchemaManager schemaManager;
+        CoreSession adminSession;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            server = "mvcc".equals(partition) ? BenchmarkData.startServer("-mvcc") : BenchmarkData.startServer();
+            directoryService = server.getDirectoryService();
+            schemaManager = directoryService.getSchemaManager();
+            BenchmarkData.addUsers(directoryService, entries);
+            adminSession = directoryService.getAdminSession();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws Exception {
+            server.stop();
+        }
+
+        int randomUser() {
+            return ThreadLocalRandom.current().nextInt(entries);
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public int read(Server server) throws Exception {
+        return search(server);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void write(Server server) throws Exception {
+        server.adminSession.modify(new Dn(server.schemaManager, BenchmarkData.userDn(server.randomUser())),
+                new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, "description",
+                        String.valueOf(System.nanoTime())));
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    @GroupThreads(3)
+    public int readOnly(Server server) throws Exception {
+        return search(server);
+    }
+
+    private static int search(Server server) throws Exception {
+        Cursor<Entry> cursor = server.adminSession.search(new Dn(server.schemaManager, BenchmarkData.USERS_DN),
+                SearchScope.SUBTREE, FilterParser.parse(server.schemaManager, "(uid=user" + server.randomUser() + ")"),
+                AliasDerefMode.NEVER_DEREF_ALIASES, "cn", "mail");
+        int count = 0;
+        try {
+            while (cursor.next()) {
+                cursor.get();
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+}
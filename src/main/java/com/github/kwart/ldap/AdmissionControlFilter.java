@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.message.AbandonRequest;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.message.extended.NoticeOfDisconnect;
+import org.apache.directory.server.protocol.shared.transport.Transport;
+import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+ * MINA filter which limits the number of client connections (in total and per client IP address) and the number of LDAP
+ * operations in progress over all connections. Requests over the limit are answered immediately with the <code>busy</code>
+ * result code instead of waiting in the request queue; connections over the limit get the <code>unavailable</code> notice of
+ * disconnection as soon as they are opened and are closed. One instance is shared by all transports.
+ * <p>
+ * An operation is in progress from the moment its decoded request arrives until its final response (the one with the
+ * result code and the same message ID) is written or until it's abandoned. Abandon and unbind requests are never rejected.
+ * Persistent searches are not limited, they don't end with a response and would hold their slots for the whole connection
+ * lifetime.
+ */
+public class AdmissionControlFilter extends IoFilterAdapter {
+
+    public static final String NAME = "admissionControl";
+
+    private static final AttributeKey IN_FLIGHT = new AttributeKey(AdmissionControlFilter.class, "inFlight");
+    private static final AttributeKey REJECTED = new AttributeKey(AdmissionControlFilter.class, "rejected");
+
+    private final int maxConnections;
+    private final int maxConnectionsPerIp;
+    private final int maxInFlight;
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<InetAddress, Integer> connectionsPerIp = new ConcurrentHashMap<InetAddress, Integer>();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder rejectedOperations = new LongAdder();
+
+    /**
+     * @param maxConnections maximal number of open connections (0 means unlimited)
+     * @param maxConnectionsPerIp maximal number of open connections from one client address (0 means unlimited)
+     * @param maxInFlight maximal number of operations in progress (0 means unlimited)
+     */
+    public AdmissionControlFilter(int maxConnections, int maxConnectionsPerIp, int maxInFlight) {
+        if (maxConnections < 0 || maxConnectionsPerIp < 0 || maxInFlight < 0) {
+            throw new IllegalArgumentException("Admission control limits can't be negative");
+        }
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Adds the filter to the transport right before the request executor, i.e. after the LDAP codec. It has to be called
+     * before the transport is bound, so no connection bypasses the limits.
+     */
+    public void install(Transport transport) {
+        if (transport.getAcceptor() == null) {
+            return;
+        }
+        DefaultIoFilterChainBuilder chain = transport.getAcceptor().getFilterChain();
+        if (chain.contains(TransportConfig.EXECUTOR_FILTER)) {
+            chain.addBefore(TransportConfig.EXECUTOR_FILTER, NAME, this);
+        } else {
+            chain.addLast(NAME, this);
+        }
+    }
+
+    /**
+     * Returns number of connections accepted by this filter which are still open.
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Returns number of operations in progress, both queued and running.
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    public long getRejectedOperations() {
+        return rejectedOperations.sum();
+    }
+
+    @Override
+    public void sessionCreated(NextFilter nextFilter, IoSession session) throws Exception {
+        InetAddress address = maxConnectionsPerIp > 0 ? getAddress(session.getRemoteAddress()) : null;
+        boolean accepted = tryAcquire(connections, maxConnections);
+        if (accepted && address != null && !acquireAddress(address)) {
+            connections.decrementAndGet();
+            accepted = false;
+        }
+        if (accepted) {
+            session.setAttribute(IN_FLIGHT, ConcurrentHashMap.<Integer> newKeySet());
+        } else {
+            rejectedConnections.increment();
+            session.setAttribute(REJECTED, Boolean.TRUE);
+        }
+        nextFilter.sessionCreated(session);
+    }
+
+    @Override
+    public void sessionOpened(NextFilter nextFilter, IoSession session) throws Exception {
+        nextFilter.sessionOpened(session);
+        if (session.containsAttribute(REJECTED)) {
+            // don't keep the rejected connection open until the client sends a request
+            session.write(NoticeOfDisconnect.UNAVAILABLE).addListener(IoFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void sessionClosed(NextFilter nextFilter, IoSession session) throws Exception {
+        Set<Integer> admitted = getAdmitted(session);
+        if (admitted != null) {
+            session.removeAttribute(IN_FLIGHT);
+            // operations which won't send their responses anymore
+            for (Integer messageId : admitted) {
+                release(admitted, messageId);
+            }
+            connections.decrementAndGet();
+            InetAddress address = maxConnectionsPerIp > 0 ? getAddress(session.getRemoteAddress()) : null;
+            if (address != null) {
+                connectionsPerIp.computeIfPresent(address, (a, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        nextFilter.sessionClosed(session);
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception {
+        if (!(message instanceof ResultResponseRequest)) {
+            if (message instanceof AbandonRequest) {
+                release(getAdmitted(session), ((AbandonRequest) message).getAbandoned());
+            }
+            nextFilter.messageReceived(session, message);
+            return;
+        }
+        if (session.containsAttribute(REJECTED)) {
+            reject(nextFilter, session, (ResultResponseRequest) message, ResultCodeEnum.UNAVAILABLE,
+                    "Too many connections").addListener(IoFutureListener.CLOSE);
+            return;
+        }
+        ResultResponseRequest request = (ResultResponseRequest) message;
+        Set<Integer> admitted = getAdmitted(session);
+        if (admitted == null || request.hasControl(PersistentSearch.OID)) {
+            nextFilter.messageReceived(session, message);
+            return;
+        }
+        if (!tryAcquire(inFlight, maxInFlight)) {
+            rejectedOperations.increment();
+            reject(nextFilter, session, request, ResultCodeEnum.BUSY, "Too many operations in progress");
+            return;
+        }
+        if (!admitted.add(request.getMessageId())) {
+            // a message ID which is already in progress, its responses can't be told apart
+            inFlight.decrementAndGet();
+        }
+        nextFilter.messageReceived(session, message);
+    }
+
+    @Override
+    public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception {
+        if (writeRequest.getMessage() instanceof ResultResponse) {
+            // unsolicited responses (message ID 0) and responses of not counted operations don't match an admitted ID
+            release(getAdmitted(session), ((ResultResponse) writeRequest.getMessage()).getMessageId());
+        }
+        nextFilter.filterWrite(session, writeRequest);
+    }
+
+    /**
+     * Writes the error response directly to the filters closer to the socket, so it's not counted as a completed operation.
+     */
+    private WriteFuture reject(NextFilter nextFilter, IoSession session, ResultResponseRequest request,
+            ResultCodeEnum resultCode, String message) {
+        ResultResponse response = request.getResultResponse();
+        response.getLdapResult().setResultCode(resultCode);
+        response.getLdapResult().setDiagnosticMessage(message);
+        WriteFuture future = new DefaultWriteFuture(session);
+        nextFilter.filterWrite(session, new DefaultWriteRequest(response, future));
+        return future;
+    }
+
+    private boolean acquireAddress(InetAddress address) {
+        final boolean[] acquired = new boolean[1];
+        connectionsPerIp.compute(address, (a, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxConnectionsPerIp) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private static boolean tryAcquire(AtomicInteger counter, int limit) {
+        if (limit <= 0) {
+            counter.incrementAndGet();
+            return true;
+        }
+        for (;;) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Ends the operation if it was admitted and not ended yet.
+     */
+    private void release(Set<Integer> admitted, int messageId) {
+        if (admitted != null && admitted.remove(messageId)) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Integer> getAdmitted(IoSession session) {
+        return (Set<Integer>) session.getAttribute(IN_FLIGHT);
+    }
+
+    private static InetAddress getAddress(SocketAddress socketAddress) {
+        return socketAddress instanceof InetSocketAddress ? ((InetSocketAddress) socketAddress).getAddress() : null;
+    }
+}
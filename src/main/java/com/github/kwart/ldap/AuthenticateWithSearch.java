@@ -19,18 +19,26 @@
  */
 package com.github.kwart.ldap;
 
-import java.util.Properties;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.naming.Context;
-import javax.naming.NamingEnumeration;
-import javax.naming.NamingException;
-import javax.naming.directory.SearchControls;
-import javax.naming.directory.SearchResult;
-import javax.naming.ldap.InitialLdapContext;
-import javax.naming.ldap.LdapContext;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+
+import com.beust.jcommander.ParameterException;
 
 /**
- * An LDAP bind application with user search by <code>uid</code> attribute.
+ * An LDAP bind application with user search by <code>uid</code> attribute. It uses {@link LdapAuthenticator}, so in the
+ * batch mode the searches and binds reuse pooled connections.
  *
  * @author Josef Cacek
  */
@@ -40,73 +48,156 @@ public class AuthenticateWithSearch {
      * The main.
      *
      * @param args
-     * @throws NamingException
      */
     public static void main(String[] args) {
-        if (args == null || args.length != 3) {
-            System.err.println("Simple LDAP authenticator");
-            System.err.println();
-            System.err.println("Usage:");
-            System.err.println("\tjava " + AuthenticateWithSearch.class.getName() + " <ldapURL> <username> <password>");
-            System.err.println();
-            System.err.println("Example:");
-            System.err.println("\tjava -cp ldap-server.jar " + AuthenticateWithSearch.class.getName()
-                    + " ldap://localhost:10389 jduke theduke");
-            System.err.println();
-            System.err.println("Exit codes:");
-            System.err.println("\t0\tAuthentication succeeded");
-            System.err.println("\t1\tWrong parameters count");
-            System.err.println("\t2\tAuthentication failed");
+        final AuthenticateWithSearchArguments arguments = new AuthenticateWithSearchArguments();
+        final ExtCommander jCmd = new ExtCommander(arguments);
+        jCmd.setProgramName("java -cp ldap-server.jar " + AuthenticateWithSearch.class.getName());
+        jCmd.setUsageHead("Simple LDAP authenticator. It searches the user DN with an admin account and verifies the password"
+                + " by a bind with the found DN.");
+        jCmd.setUsageTail("Examples:\n\n" //
+                + "$ java -cp ldap-server.jar " + AuthenticateWithSearch.class.getName()
+                + " ldap://localhost:10389 jduke theduke\n" //
+                + " Authenticates a single user\n\n" //
+                + "$ java -cp ldap-server.jar " + AuthenticateWithSearch.class.getName()
+                + " -B -c 16 ldap://localhost:10389 < credentials.txt\n" //
+                + " Verifies username:password lines from the file with 16 concurrent connections\n\n" //
+                + "Exit codes:\n" //
+                + " 0 Authentication succeeded (all authentications succeeded in the batch mode)\n" //
+                + " 1 Wrong parameters\n" //
+                + " 2 Authentication failed (at least one authentication failed in the batch mode)");
+        try {
+            jCmd.parse(args);
+        } catch (ParameterException e) {
+            System.err.println(e.getMessage());
+            jCmd.usage();
+            System.exit(1);
+        }
+        if (arguments.isHelp()) {
+            jCmd.usage();
+            return;
+        }
+        final List<String> parameters = arguments.getParameters();
+        if (parameters.size() != (arguments.isBatch() ? 1 : 3)) {
+            jCmd.usage();
             System.exit(1);
         }
 
-        // Initial bind with Admin account - used to search User DN
-        final Properties env = new Properties();
-        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-        env.put(Context.SECURITY_AUTHENTICATION, "simple");
-        env.put(Context.PROVIDER_URL, args[0]);
-        env.put(Context.SECURITY_PRINCIPAL, "uid=admin,ou=system");
-        env.put(Context.SECURITY_CREDENTIALS, "secret");
         int exitCode = 2;
-        LdapContext ctx = null;
-        try {
-            ctx = new InitialLdapContext(env, null);
-            final SearchControls searchControls = new SearchControls();
-            searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-            final String baseDN = "dc=ldap,dc=example";
-            NamingEnumeration<?> namingEnum = ctx.search(baseDN, "(uid={0})", new Object[] { args[1] }, searchControls);
-            String userDN = null;
-            if (namingEnum.hasMore()) {
-                // We found a user with given uid in the LDAP
-                SearchResult sr = (SearchResult) namingEnum.next();
-                if (sr.isRelative()) {
-                    userDN = sr.getName() + "," + baseDN;
-                } else {
-                    userDN = sr.getName();
+        try (LdapAuthenticator authenticator = new LdapAuthenticator(parameters.get(0), arguments.getSearchDn(),
+                arguments.getSearchPassword())) {
+            authenticator.setBaseDn(arguments.getBaseDn()).setFilter(arguments.getFilter());
+            if (arguments.isBatch()) {
+                authenticator.setPoolSize(arguments.getConnections());
+                final long start = System.nanoTime();
+                BatchResult result = authenticateBatch(authenticator,
+                        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), System.out,
+                        arguments.getConnections());
+                System.out.println("Verified " + result.getTotal() + " credentials (" + result.getFailed() + " failed) in "
+                        + (System.nanoTime() - start) / 1000000L + " ms");
+                if (result.getFailed() == 0) {
+                    exitCode = 0;
+                }
+            } else {
+                authenticator.setPoolSize(1);
+                String userDN = authenticator.searchUserDn(parameters.get(1));
+                if (userDN != null) {
+                    System.out.println("User found: " + userDN);
+                    if (authenticator.bind(userDN, parameters.get(2))) {
+                        System.out.println("User is authenticated");
+                        exitCode = 0;
+                    }
                 }
-                System.out.println("User found: " + userDN);
-            }
-            namingEnum.close();
-            ctx.close();
-            if (userDN != null) {
-                // try bind with user DN and user's password
-                env.put(Context.SECURITY_PRINCIPAL, userDN);
-                env.put(Context.SECURITY_CREDENTIALS, args[2]);
-                ctx = new InitialLdapContext(env, null);
-                System.out.println("User is authenticated");
-                exitCode = 0;
             }
-        } catch (NamingException e) {
+        } catch (LdapException | IOException | RuntimeException e) {
             e.printStackTrace();
-        } finally {
-            if (ctx != null) {
-                try {
-                    ctx.close();
-                } catch (NamingException e) {
-                    e.printStackTrace();
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Verifies <code>username:password</code> lines from the reader concurrently and prints one result line per credential
+     * to the output. The results are printed in the input order.
+     */
+    public static BatchResult authenticateBatch(LdapAuthenticator authenticator, BufferedReader in, PrintStream out,
+            int concurrency) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        final Deque<Future<Outcome>> pending = new ArrayDeque<Future<Outcome>>();
+        final BatchResult result = new BatchResult();
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
                 }
+                final int pos = line.indexOf(':');
+                final String username = pos < 0 ? line : line.substring(0, pos);
+                final String password = pos < 0 ? "" : line.substring(pos + 1);
+                pending.add(executor.submit(() -> authenticate(authenticator, username, password)));
+                // keep a bounded window of queued credentials, so large inputs are streamed
+                if (pending.size() >= 4 * concurrency) {
+                    printResult(pending.poll(), out, result);
+                }
+            }
+            while (!pending.isEmpty()) {
+                printResult(pending.poll(), out, result);
             }
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    private static Outcome authenticate(LdapAuthenticator authenticator, String username, String password) {
+        try {
+            String dn = authenticator.authenticate(username, password);
+            return dn != null ? new Outcome(true, username + ": authenticated as " + dn)
+                    : new Outcome(false, username + ": failed");
+        } catch (LdapException | RuntimeException e) {
+            return new Outcome(false, username + ": error - " + e.getMessage());
+        }
+    }
+
+    private static void printResult(Future<Outcome> future, PrintStream out, BatchResult result) throws IOException {
+        Outcome outcome;
+        try {
+            outcome = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            outcome = new Outcome(false, "error - " + e.getCause());
+        }
+        result.total++;
+        if (!outcome.success) {
+            result.failed++;
+        }
+        out.println(outcome.message);
+    }
+
+    private static class Outcome {
+        private final boolean success;
+        private final String message;
+
+        Outcome(boolean success, String message) {
+            this.success = success;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Counters of a batch authentication.
+     */
+    public static class BatchResult {
+        private long total;
+        private long failed;
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getFailed() {
+            return failed;
         }
-        System.exit(exitCode);
     }
 }
@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Command line arguments for {@link AuthenticateWithSearch}.
+ */
+public class AuthenticateWithSearchArguments {
+
+    @Parameter(description = "<ldapURL> [<username> <password>]")
+    private List<String> parameters = new ArrayList<String>();
+
+    @Parameter(names = { "--help", "-h" }, description = "shows this help and exits", help = true)
+    private boolean help;
+
+    @Parameter(names = { "--batch",
+            "-B" }, description = "reads [username:password] pairs from the standard input (one per line) and verifies them concurrently")
+    private boolean batch;
+
+    @Parameter(names = { "--connections",
+            "-c" }, description = "takes [count] as argument and uses it as the size of the search connection pool and of the bind connection pool")
+    private int connections = LdapAuthenticator.DEFAULT_POOL_SIZE;
+
+    @Parameter(names = { "--base-dn", "-bd" }, description = "takes [baseDn] as argument and uses it as the user search base")
+    private String baseDn = LdapAuthenticator.DEFAULT_BASE_DN;
+
+    @Parameter(names = { "--filter",
+            "-f" }, description = "takes [filterTemplate] as argument and uses it for user searches. The {0} is replaced by the username")
+    private String filter = LdapAuthenticator.DEFAULT_FILTER;
+
+    @Parameter(names = { "--search-dn", "-sd" }, description = "takes [bindDn] as argument and uses it for search connections")
+    private String searchDn = "uid=admin,ou=system";
+
+    @Parameter(names = { "--search-password",
+            "-sw" }, description = "takes [password] as argument and uses it for search connections")
+    private String searchPassword = "secret";
+
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public String getBaseDn() {
+        return baseDn;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public String getSearchDn() {
+        return searchDn;
+    }
+
+    public String getSearchPassword() {
+        return searchPassword;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.BinaryValue;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Ava;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.ObjectClass;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.server.constants.ServerDNConstants;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.interceptor.Interceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+
+/**
+ * Loads entries directly into the partitions, bypassing the interceptor chain. Entries are normalized and validated against
+ * the schema and then written to the partition which holds their DN. Callers which load many entries (the LDIF import, the
+ * generator) {@link #prepare(Entry) prepare} the entries in parallel and {@link #write(Partition, Entry) write} them in order
+ * from a single thread.
+ * <p>
+ * Only the work done by the schema and operational-attribute interceptors is repeated here (objectClass superiors, MUST and
+ * MAY attributes, attribute syntaxes, entryUUID, entryCSN, creatorsName, createTimestamp). Access control, subentry and trigger processing is skipped,
+ * so administrative entries should be imported through the regular path.
+ */
+public class BulkLoader {
+
+    private final DirectoryService directoryService;
+    private final SchemaManager schemaManager;
+    private final ValueInterner interner;
+
+    private long count;
+
+    public BulkLoader(DirectoryService directoryService) {
+        this.directoryService = directoryService;
+        this.schemaManager = directoryService.getSchemaManager();
+        Interceptor interceptor = directoryService.getInterceptor(ValueInterningInterceptor.NAME);
+        this.interner = interceptor instanceof ValueInterningInterceptor ? ((ValueInterningInterceptor) interceptor).getInterner()
+                : null;
+    }
+
+    /**
+     * Normalizes, validates and writes the entry. Entries outside user partitions are added through the interceptor chain.
+     *
+     * @param entry entry to be imported (doesn't have to be schema aware)
+     * @throws LdapException
+     */
+    public void add(Entry entry) throws LdapException {
+        Partition partition = directoryService.getPartitionNexus().getPartition(new Dn(schemaManager, entry.getDn().getName()));
+        if (isUserPartition(partition)) {
+            write(partition, prepare(entry));
+        } else {
+            // schema and system changes have to be processed by the interceptors
+            directoryService.getAdminSession().add(new DefaultEntry(schemaManager, entry));
+            count++;
+        }
+    }
+
+    /**
+     * Returns number of entries written so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Creates a schema aware copy of the entry with the operational attributes which are usually added by the interceptor
+     * chain. The entry is validated against its object classes.
+     */
+    Entry prepare(Entry entry) throws LdapException {
+        checkSyntax(entry);
+        Entry schemaEntry = new DefaultEntry(schemaManager, entry);
+        addObjectClassSuperiors(schemaEntry);
+        validate(schemaEntry);
+        if (!schemaEntry.containsAttribute(SchemaConstants.ENTRY_CSN_AT)) {
+            schemaEntry.add(SchemaConstants.ENTRY_CSN_AT, directoryService.getCSN().toString());
+        }
+        if (!schemaEntry.containsAttribute(SchemaConstants.ENTRY_UUID_AT)) {
+            schemaEntry.add(SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString());
+        }
+        if (!schemaEntry.containsAttribute(SchemaConstants.CREATORS_NAME_AT)) {
+            schemaEntry.add(SchemaConstants.CREATORS_NAME_AT, ServerDNConstants.ADMIN_SYSTEM_DN);
+        }
+        if (!schemaEntry.containsAttribute(SchemaConstants.CREATE_TIMESTAMP_AT)) {
+            schemaEntry.add(SchemaConstants.CREATE_TIMESTAMP_AT, DateUtils.getGeneralizedTime());
+        }
+        return schemaEntry;
+    }
+
+    /**
+     * Writes already prepared entry to the given partition.
+     */
+    void write(Partition partition, Entry entry) throws LdapException {
+        if (interner != null) {
+            interner.intern(entry);
+        }
+        partition.add(new AddOperationContext(null, entry));
+        count++;
+    }
+
+    static boolean isUserPartition(Partition partition) {
+        String id = partition.getId();
+        return !"schema".equals(id) && !"system".equals(id);
+    }
+
+    private void addObjectClassSuperiors(Entry entry) throws LdapException {
+        Attribute objectClass = entry.get(SchemaConstants.OBJECT_CLASS_AT);
+        if (objectClass == null) {
+            throw new LdapSchemaViolationException(ResultCodeEnum.OBJECT_CLASS_VIOLATION,
+                    "Entry " + entry.getDn() + " has no objectClass");
+        }
+        Set<String> names = new HashSet<String>();
+        List<ObjectClass> toProcess = new ArrayList<ObjectClass>();
+        for (Value<?> value : objectClass) {
+            ObjectClass oc = schemaManager.lookupObjectClassRegistry(value.getString());
+            names.add(oc.getOid());
+            toProcess.add(oc);
+        }
+        for (int i = 0; i < toProcess.size(); i++) {
+            List<ObjectClass> superiors = toProcess.get(i).getSuperiors();
+            if (superiors == null) {
+                continue;
+            }
+            for (ObjectClass superior : superiors) {
+                if (names.add(superior.getOid())) {
+                    toProcess.add(superior);
+                    objectClass.add(superior.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks syntaxes of values in attributes which are not schema aware yet. The LDAP API silently drops invalid values when
+     * an entry is made schema aware (the regular path does the same), so the bulk load rejects the entry before that.
+     */
+    private void checkSyntax(Entry entry) throws LdapException {
+        for (Attribute attribute : entry) {
+            if (attribute.getAttributeType() != null) {
+                // the values were checked when they were added
+                continue;
+            }
+            AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry(attribute.getId());
+            for (Value<?> value : attribute) {
+                try {
+                    if (attributeType.getSyntax().isHumanReadable()) {
+                        new StringValue(attributeType, value.getString());
+                    } else {
+                        new BinaryValue(attributeType, value.getBytes());
+                    }
+                } catch (LdapInvalidAttributeValueException e) {
+                    throw new LdapInvalidAttributeValueException(ResultCodeEnum.INVALID_ATTRIBUTE_SYNTAX, "Value '"
+                            + value.getString() + "' of attribute '" + attribute.getUpId() + "' of entry " + entry.getDn()
+                            + " has invalid syntax");
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the entry the way the schema interceptor does for the MUST and MAY attributes of its object classes and the RDN.
+     * Structural object class chains and DIT content and structure rules are not checked. Extra values of single valued
+     * attributes are already dropped when the entry is made schema aware (as in the regular path).
+     */
+    private void validate(Entry entry) throws LdapException {
+        Set<AttributeType> allowedAttributes = new HashSet<AttributeType>();
+        boolean extensible = false;
+        for (Value<?> value : entry.get(SchemaConstants.OBJECT_CLASS_AT)) {
+            ObjectClass oc = schemaManager.lookupObjectClassRegistry(value.getString());
+            extensible |= SchemaConstants.EXTENSIBLE_OBJECT_OC_OID.equals(oc.getOid());
+            List<AttributeType> mustAttributes = oc.getMustAttributeTypes();
+            if (mustAttributes != null) {
+                for (AttributeType mustAttribute : mustAttributes) {
+                    if (!entry.containsAttribute(mustAttribute)) {
+                        throw new LdapSchemaViolationException(ResultCodeEnum.OBJECT_CLASS_VIOLATION, "Entry "
+                                + entry.getDn() + " is missing attribute '" + mustAttribute.getName() + "' required by "
+                                + oc.getName());
+                    }
+                }
+                allowedAttributes.addAll(mustAttributes);
+            }
+            if (oc.getMayAttributeTypes() != null) {
+                allowedAttributes.addAll(oc.getMayAttributeTypes());
+            }
+        }
+        for (Attribute attribute : entry) {
+            AttributeType attributeType = attribute.getAttributeType();
+            if (!extensible && attributeType.isUser() && !isAllowed(attributeType, allowedAttributes)) {
+                throw new LdapSchemaViolationException(ResultCodeEnum.OBJECT_CLASS_VIOLATION, "Attribute '"
+                        + attribute.getUpId() + "' of entry " + entry.getDn() + " is not allowed by its object classes");
+            }
+        }
+        Rdn rdn = entry.getDn().getRdn();
+        for (Ava ava : rdn) {
+            if (!entry.contains(ava.getNormType(), ava.getValue())) {
+                throw new LdapSchemaViolationException(ResultCodeEnum.NOT_ALLOWED_ON_RDN,
+                        "Entry " + entry.getDn() + " doesn't contain its RDN value " + ava);
+            }
+        }
+    }
+
+    /**
+     * An attribute is allowed also when one of its superiors is (e.g. <code>cn</code> allowed by <code>name</code>).
+     */
+    private static boolean isAllowed(AttributeType attributeType, Set<AttributeType> allowedAttributes) {
+        for (AttributeType type = attributeType; type != null; type = type.getSuperior()) {
+            if (allowedAttributes.contains(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
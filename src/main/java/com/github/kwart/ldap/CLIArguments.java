@@ -66,7 +66,7 @@ public class CLIArguments {
 
     @Parameter(names = { "--ssl-enabled-protocol",
             "-sep" }, description = "takes [sslProtocolName] as argument and enables it for 'ldaps'. Can be used multiple times."
-                    + " If the argument is not provided following are used: TLSv1, TLSv1.1, TLSv1.2")
+                    + " If the argument is not provided only TLSv1.2 is used (TLSv1.3 has to be enabled explicitly)")
     private List<String> sslEnabledProtocols;
 
     @Parameter(names = { "--ssl-enabled-ciphersuite", "-scs" }, description = "takes [sslCipherSuite] as argument and enables it for 'ldaps'. Can be used multiple times.")
@@ -78,6 +78,173 @@ public class CLIArguments {
     @Parameter(names = { "--ssl-keystore-password", "-skp" }, description = "takes keystore [password] as argument")
     private String sslKeystorePassword;
 
+    @Parameter(names = { "--bulk-import",
+            "-bi" }, description = "imports LDIF entries directly into partitions and skips the interceptor chain. It's much faster for large LDIFs, but ACI, subentry and trigger processing is not done for the imported entries")
+    private boolean bulkImport;
+
+    @Parameter(names = { "--import-threads",
+            "-it" }, description = "takes [threadCount] as argument and uses it as the number of threads which parse and normalize the imported LDIF records")
+    private int importThreads = LdifImportPipeline.DEFAULT_THREADS;
+
+    @Parameter(names = { "--index",
+            "-i" }, description = "takes [attribute[@partitionSuffix]] as argument and adds an index for the attribute to user partitions (or only to the partition with given suffix). Can be used multiple times")
+    private List<String> indexes = new ArrayList<String>();
+
+    @Parameter(names = { "--no-default-indexes",
+            "-ndi" }, description = "don't create the default indexes (objectClass, uid, cn, mail, member, uniqueMember, memberUid) in user partitions")
+    private boolean noDefaultIndexes;
+
+    @Parameter(names = { "--substring-index",
+            "-si" }, description = "takes [attribute[@partitionSuffix]] as argument and adds a trigram index for substring searches (e.g. cn=*smi*) of the attribute to user partitions (or only to the partition with given suffix). Can be used multiple times")
+    private List<String> substringIndexes = new ArrayList<String>();
+
+    @Parameter(names = { "--search-optimizer",
+            "-so" }, description = "keeps attribute and value statistics of user partitions and uses them to reorder search filters and to skip filter branches which can't match")
+    private boolean searchOptimizer;
+
+    @Parameter(names = { "--cache-size",
+            "-cs" }, description = "takes [cacheName=maxEntries] as argument and sets the size of the cache (e.g. dnCache=100000). The 'default' name is used for caches which are not configured explicitly. Can be used multiple times")
+    private List<String> cacheSizes = new ArrayList<String>();
+
+    @Parameter(names = { "--cache-ttl",
+            "-ct" }, description = "takes [cacheName=seconds] as argument and sets time-to-live of the cache entries (0 means no expiration). Can be used multiple times")
+    private List<String> cacheTtls = new ArrayList<String>();
+
+    @Parameter(names = { "--cache-eviction-policy",
+            "-cep" }, description = "takes [policy] as argument and uses it for evicting entries from full caches. Supported values: LRU, LFU, FIFO")
+    private String cacheEvictionPolicy;
+
+    @Parameter(names = { "--metrics",
+            "-m" }, description = "enables operation metrics (counts and latency histograms of LDAP operations)")
+    private boolean metrics;
+
+    @Parameter(names = { "--metrics-port",
+            "-mp" }, description = "takes [portNumber] as argument and starts HTTP server on that port which publishes the server metrics in Prometheus (/metrics) and JSON (/metrics.json) formats. It implies --metrics")
+    private Integer metricsPort;
+
+    @Parameter(names = { "--snapshot-save",
+            "-ss" }, description = "takes [filePath] as argument and saves all user partitions to the file after the LDIF import")
+    private String snapshotSave;
+
+    @Parameter(names = { "--snapshot-load",
+            "-sl" }, description = "takes [filePath] as argument and restores the user partitions from the snapshot file. The default LDIF is not imported in this case")
+    private String snapshotLoad;
+
+    @Parameter(names = { "--generate-users",
+            "-gu" }, description = "takes [count] as argument and generates the given number of users (uid=user{N}, password password{N}) under 'ou=Users,dc=ldap,dc=example' after the LDIF import")
+    private int generateUsers;
+
+    @Parameter(names = { "--generate-groups",
+            "-gg" }, description = "takes [count] as argument and generates the given number of groups (cn=group{N}) under 'ou=Groups,dc=ldap,dc=example'")
+    private int generateGroups;
+
+    @Parameter(names = { "--generate-members",
+            "-gm" }, description = "takes [count] as argument and uses it as the number of members in each generated group")
+    private int generateMembers = 10;
+
+    @Parameter(names = { "--generate-ou-levels",
+            "-gol" }, description = "takes [depth] as argument and places the generated users into a tree of organizational units with the given depth")
+    private int generateOuLevels;
+
+    @Parameter(names = { "--generate-ou-fanout",
+            "-gof" }, description = "takes [count] as argument and uses it as the number of child units of each generated organizational unit")
+    private int generateOuFanout = 10;
+
+    @Parameter(names = { "--generate-seed",
+            "-gs" }, description = "takes [number] as argument and uses it as the seed for the generated data. The same seed produces the same directory")
+    private long generateSeed = DirectoryGenerator.DEFAULT_SEED;
+
+    @Parameter(names = { "--reset-baseline",
+            "-rb" }, description = "keeps an in-memory copy of the data imported during startup and enables the directory reset (LdapServer.reset() and the reset extended operation). The copy needs about as much memory as the directory itself")
+    private boolean resetBaseline;
+
+    @Parameter(names = { "--shared-schema",
+            "-shs" }, description = "shares one read-only schema between all servers started with this argument in the same JVM. The next servers start faster and use less memory, but the schema can't be modified")
+    private boolean sharedSchema;
+
+    @Parameter(names = { "--mvcc-partitions",
+            "-mvcc" }, description = "stores the data in multi-version partitions. Searches and lookups don't wait for running writes and always see a consistent version of the partition")
+    private boolean mvccPartitions;
+
+    @Parameter(names = { "--off-heap-partitions",
+            "-ohp" }, description = "stores the entries serialized in off-heap memory. It needs much less heap for large directories, but reading an entry is slower. It can't be combined with --mvcc-partitions")
+    private boolean offHeapPartitions;
+
+    @Parameter(names = { "--intern-values",
+            "-iv" }, description = "deduplicates repeated attribute values (object classes, OUs, group members, ...) of imported, added and modified entries to reduce heap usage")
+    private boolean internValues;
+
+    @Parameter(names = { "--heap-report", "-hr" }, description = "prints live heap usage (and value interning statistics) after the data import")
+    private boolean heapReport;
+
+    @Parameter(names = { "--member-of",
+            "-mo" }, description = "maintains a reverse index of group members and returns the virtual memberOf attribute (including nested groups) when it's requested")
+    private boolean memberOf;
+
+    @Parameter(names = { "--bind-cache-size",
+            "-bcs" }, description = "takes [maxEntries] as argument and caches up to the given number of successfully verified simple bind credentials (as salted digests), so repeated binds skip the password hash computation. The cache is disabled by default")
+    private int bindCacheSize;
+
+    @Parameter(names = { "--bind-cache-ttl",
+            "-bct" }, description = "takes [seconds] as argument and sets time-to-live of the cached bind credentials (0 means no expiration)")
+    private long bindCacheTtl = CachingSimpleAuthenticator.DEFAULT_TTL_SECONDS;
+
+    @Parameter(names = { "--io-threads",
+            "-iot" }, description = "takes [count] as argument and sets the number of I/O processor threads of each transport (ldap, ldaps)")
+    private Integer ioThreads;
+
+    @Parameter(names = { "--worker-threads",
+            "-wt" }, description = "takes [count] as argument and sets the number of threads processing the LDAP requests (shared by the transports). By default it's the number of I/O threads")
+    private Integer workerThreads;
+
+    @Parameter(names = { "--backlog",
+            "-bl" }, description = "takes [count] as argument and sets the length of the accept queue of the listening sockets")
+    private Integer backlog;
+
+    @Parameter(names = { "--socket-receive-buffer",
+            "-srb" }, description = "takes [bytes] as argument and sets the receive buffer size (SO_RCVBUF) of the client connections")
+    private Integer socketReceiveBuffer;
+
+    @Parameter(names = { "--socket-send-buffer",
+            "-ssb" }, description = "takes [bytes] as argument and sets the send buffer size (SO_SNDBUF) of the client connections")
+    private Integer socketSendBuffer;
+
+    @Parameter(names = { "--tcp-no-delay",
+            "-tnd" }, arity = 1, description = "takes [true|false] as argument and enables or disables TCP_NODELAY on the client connections (enabled by ApacheDS by default)")
+    private Boolean tcpNoDelay;
+
+    @Parameter(names = { "--max-pdu-size",
+            "-mps" }, description = "takes [bytes] as argument and rejects LDAP requests larger than the given size")
+    private Integer maxPduSize;
+
+    @Parameter(names = { "--virtual-threads",
+            "-vt" }, description = "processes each LDAP request in a new virtual thread, so slow operations don't block the others (requires Java 21+). It can't be combined with --worker-threads")
+    private boolean virtualThreads;
+
+    @Parameter(names = { "--max-connections",
+            "-mc" }, description = "takes [count] as argument and limits the number of open client connections. Connections over the limit get the 'unavailable' notice of disconnection and are closed (0 means unlimited)")
+    private int maxConnections;
+
+    @Parameter(names = { "--max-connections-per-ip",
+            "-mcip" }, description = "takes [count] as argument and limits the number of open connections from one client IP address (0 means unlimited)")
+    private int maxConnectionsPerIp;
+
+    @Parameter(names = { "--max-in-flight",
+            "-mif" }, description = "takes [count] as argument and limits the number of LDAP operations in progress (queued or running) over all connections. Requests over the limit get the 'busy' result immediately (0 means unlimited)")
+    private int maxInFlight;
+
+    @Parameter(names = { "--ssl-session-cache-size",
+            "-sscs" }, description = "takes [count] as argument and sets the number of TLS sessions kept by 'ldaps' for resumption (0 means unlimited)")
+    private Integer sslSessionCacheSize;
+
+    @Parameter(names = { "--ssl-session-timeout",
+            "-sst" }, description = "takes [seconds] as argument and sets how long a TLS session of 'ldaps' can be resumed (0 means no limit)")
+    private Integer sslSessionTimeout;
+
+    @Parameter(names = { "--ssl-session-tickets",
+            "-sstk" }, arity = 1, description = "takes [true|false] as argument and enables or disables TLS session tickets (stateless resumption, Java 13+)")
+    private Boolean sslSessionTickets;
+
     public List<String> getLdifFiles() {
         return ldifFiles;
     }
@@ -129,4 +296,172 @@ public class CLIArguments {
     public String getSslKeystorePassword() {
         return sslKeystorePassword;
     }
+
+    public boolean isBulkImport() {
+        return bulkImport;
+    }
+
+    public int getImportThreads() {
+        return importThreads;
+    }
+
+    public List<String> getIndexes() {
+        return indexes;
+    }
+
+    public boolean isNoDefaultIndexes() {
+        return noDefaultIndexes;
+    }
+
+    public List<String> getSubstringIndexes() {
+        return substringIndexes;
+    }
+
+    public boolean isSearchOptimizer() {
+        return searchOptimizer;
+    }
+
+    public List<String> getCacheSizes() {
+        return cacheSizes;
+    }
+
+    public List<String> getCacheTtls() {
+        return cacheTtls;
+    }
+
+    public String getCacheEvictionPolicy() {
+        return cacheEvictionPolicy;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public Integer getMetricsPort() {
+        return metricsPort;
+    }
+
+    public String getSnapshotSave() {
+        return snapshotSave;
+    }
+
+    public String getSnapshotLoad() {
+        return snapshotLoad;
+    }
+
+    public int getGenerateUsers() {
+        return generateUsers;
+    }
+
+    public int getGenerateGroups() {
+        return generateGroups;
+    }
+
+    public int getGenerateMembers() {
+        return generateMembers;
+    }
+
+    public int getGenerateOuLevels() {
+        return generateOuLevels;
+    }
+
+    public int getGenerateOuFanout() {
+        return generateOuFanout;
+    }
+
+    public long getGenerateSeed() {
+        return generateSeed;
+    }
+
+    public boolean isResetBaseline() {
+        return resetBaseline;
+    }
+
+    public boolean isSharedSchema() {
+        return sharedSchema;
+    }
+
+    public boolean isMvccPartitions() {
+        return mvccPartitions;
+    }
+
+    public boolean isOffHeapPartitions() {
+        return offHeapPartitions;
+    }
+
+    public boolean isInternValues() {
+        return internValues;
+    }
+
+    public boolean isHeapReport() {
+        return heapReport;
+    }
+
+    public boolean isMemberOf() {
+        return memberOf;
+    }
+
+    public int getBindCacheSize() {
+        return bindCacheSize;
+    }
+
+    public long getBindCacheTtl() {
+        return bindCacheTtl;
+    }
+
+    public Integer getIoThreads() {
+        return ioThreads;
+    }
+
+    public Integer getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public Integer getBacklog() {
+        return backlog;
+    }
+
+    public Integer getSocketReceiveBuffer() {
+        return socketReceiveBuffer;
+    }
+
+    public Integer getSocketSendBuffer() {
+        return socketSendBuffer;
+    }
+
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public Integer getMaxPduSize() {
+        return maxPduSize;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerIp() {
+        return maxConnectionsPerIp;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public Integer getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public Integer getSslSessionTimeout() {
+        return sslSessionTimeout;
+    }
+
+    public Boolean getSslSessionTickets() {
+        return sslSessionTickets;
+    }
 }
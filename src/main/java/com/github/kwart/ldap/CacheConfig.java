@@ -0,0 +1,198 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+
+/**
+ * Configuration of the EhCache caches used by the directory service. Each cache has its own maximal number of entries and
+ * time-to-live; the eviction policy is shared. Caches which are not configured explicitly (e.g. partition caches) use the
+ * {@link #DEFAULT_CACHE} settings. Default sizes are derived from the maximal heap size.
+ */
+public class CacheConfig {
+
+    /**
+     * Settings used for caches which are not configured explicitly.
+     */
+    public static final String DEFAULT_CACHE = "default";
+    /**
+     * Cache of normalized DNs.
+     */
+    public static final String DN_CACHE = "dnCache";
+    /**
+     * Group membership cache used by the authorization.
+     */
+    public static final String GROUP_CACHE = "groupCache";
+
+    public static final List<String> EVICTION_POLICIES = Arrays.asList("LRU", "LFU", "FIFO");
+
+    private final Map<String, CacheSettings> caches = new LinkedHashMap<String, CacheSettings>();
+    private String evictionPolicy = "LRU";
+
+    /**
+     * Creates the configuration with default cache sizes scaled by the maximal heap size.
+     */
+    public CacheConfig() {
+        this(Runtime.getRuntime().maxMemory());
+    }
+
+    CacheConfig(long maxHeapBytes) {
+        long heapMb = Math.max(1L, maxHeapBytes / (1024L * 1024L));
+        caches.put(DEFAULT_CACHE, new CacheSettings(scale(heapMb, 10, 1000, 100000), 600L));
+        caches.put(DN_CACHE, new CacheSettings(scale(heapMb, 50, 10000, 1000000), 0L));
+        // groups are loaded once on startup, they must not expire
+        caches.put(GROUP_CACHE, new CacheSettings(scale(heapMb, 10, 10000, 100000), 0L));
+    }
+
+    /**
+     * Creates configuration from CLI values.
+     *
+     * @param sizes list of <code>cacheName=maxEntries</code> values
+     * @param ttls list of <code>cacheName=seconds</code> values
+     * @param evictionPolicy eviction policy name or <code>null</code> for the default
+     */
+    public static CacheConfig parse(List<String> sizes, List<String> ttls, String evictionPolicy) {
+        CacheConfig config = new CacheConfig();
+        if (sizes != null) {
+            for (String size : sizes) {
+                String[] nameValue = splitNameValue(size);
+                config.setMaxEntries(nameValue[0], Integer.parseInt(nameValue[1]));
+            }
+        }
+        if (ttls != null) {
+            for (String ttl : ttls) {
+                String[] nameValue = splitNameValue(ttl);
+                config.setTimeToLive(nameValue[0], Long.parseLong(nameValue[1]));
+            }
+        }
+        if (evictionPolicy != null) {
+            config.setEvictionPolicy(evictionPolicy);
+        }
+        return config;
+    }
+
+    /**
+     * Sets maximal number of entries held in the cache.
+     */
+    public CacheConfig setMaxEntries(String cacheName, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size has to be a positive number: " + cacheName + "=" + maxEntries);
+        }
+        getSettings(cacheName).maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Sets time-to-live (and time-to-idle) for entries in the cache. Zero means the entries don't expire.
+     */
+    public CacheConfig setTimeToLive(String cacheName, long seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Cache TTL can't be negative: " + cacheName + "=" + seconds);
+        }
+        getSettings(cacheName).timeToLiveSeconds = seconds;
+        return this;
+    }
+
+    /**
+     * Sets the eviction policy (one of {@link #EVICTION_POLICIES}) used when a cache is full.
+     */
+    public CacheConfig setEvictionPolicy(String policy) {
+        String upperCase = policy.toUpperCase();
+        if (!EVICTION_POLICIES.contains(upperCase)) {
+            throw new IllegalArgumentException("Unsupported eviction policy " + policy + ", use one of " + EVICTION_POLICIES);
+        }
+        evictionPolicy = upperCase;
+        return this;
+    }
+
+    public int getMaxEntries(String cacheName) {
+        CacheSettings settings = caches.get(cacheName);
+        return (settings != null ? settings : caches.get(DEFAULT_CACHE)).maxEntries;
+    }
+
+    public long getTimeToLive(String cacheName) {
+        CacheSettings settings = caches.get(cacheName);
+        return (settings != null ? settings : caches.get(DEFAULT_CACHE)).timeToLiveSeconds;
+    }
+
+    public String getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Creates the EhCache configuration.
+     */
+    public Configuration toEhCacheConfiguration() {
+        Configuration ehCacheConfig = new Configuration();
+        for (Map.Entry<String, CacheSettings> entry : caches.entrySet()) {
+            CacheSettings settings = entry.getValue();
+            CacheConfiguration cacheConfig = new CacheConfiguration(entry.getKey(), settings.maxEntries)
+                    .eternal(settings.timeToLiveSeconds == 0L).timeToIdleSeconds(settings.timeToLiveSeconds)
+                    .timeToLiveSeconds(settings.timeToLiveSeconds)
+                    .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.fromString(evictionPolicy));
+            if (DEFAULT_CACHE.equals(entry.getKey())) {
+                ehCacheConfig.addDefaultCache(cacheConfig);
+            } else {
+                ehCacheConfig.addCache(cacheConfig);
+            }
+        }
+        return ehCacheConfig;
+    }
+
+    private CacheSettings getSettings(String cacheName) {
+        CacheSettings settings = caches.get(cacheName);
+        if (settings == null) {
+            CacheSettings defaults = caches.get(DEFAULT_CACHE);
+            settings = new CacheSettings(defaults.maxEntries, defaults.timeToLiveSeconds);
+            caches.put(cacheName, settings);
+        }
+        return settings;
+    }
+
+    private static int scale(long heapMb, int entriesPerMb, int min, int max) {
+        return (int) Math.max(min, Math.min(max, heapMb * entriesPerMb));
+    }
+
+    private static String[] splitNameValue(String value) {
+        int pos = value.lastIndexOf('=');
+        if (pos < 1) {
+            throw new IllegalArgumentException("Expected format is cacheName=value: " + value);
+        }
+        return new String[] { value.substring(0, pos).trim(), value.substring(pos + 1).trim() };
+    }
+
+    private static class CacheSettings {
+        private int maxEntries;
+        private long timeToLiveSeconds;
+
+        CacheSettings(int maxEntries, long timeToLiveSeconds) {
+            this.maxEntries = maxEntries;
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.statistics.StatisticsGateway;
+
+/**
+ * Point-in-time statistics of a single cache.
+ */
+public class CacheStatistics {
+
+    private final String name;
+    private final long size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public CacheStatistics(String name, long size, long hits, long misses, long evictions) {
+        this.name = name;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * Reads statistics of all caches in the given cache manager (sorted by cache name).
+     */
+    public static List<CacheStatistics> collect(CacheManager cacheManager) {
+        List<CacheStatistics> result = new ArrayList<CacheStatistics>();
+        String[] names = cacheManager.getCacheNames();
+        Arrays.sort(names);
+        for (String name : names) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                StatisticsGateway stats = cache.getStatistics();
+                result.add(new CacheStatistics(name, stats.getSize(), stats.cacheHitCount(), stats.cacheMissCount(),
+                        stats.cacheEvictedCount()));
+            }
+        }
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns ratio of hits to all cache reads (0 if the cache wasn't used yet).
+     */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0L ? 0d : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: size=%d, hits=%d, misses=%d, evictions=%d, hitRatio=%.3f", name, size, hits, misses,
+                evictions, getHitRatio());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.directory.api.ldap.model.constants.AuthenticationLevel;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
+import org.apache.directory.server.core.authn.SimpleAuthenticator;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * Simple bind authenticator which remembers successfully verified credentials, so repeated binds of the same account don't
+ * compute the (possibly expensive) password hash again. The cache holds the bind DN and an HMAC of the last verified
+ * credentials under a random per-process key, never the password itself.
+ * <p>
+ * The authentication interceptor invalidates the DN when its <code>userPassword</code> is modified or when the entry is
+ * deleted, renamed or moved. The cache is bounded (LRU) and its entries expire after the configured time-to-live. It's not
+ * used when the password policy is enabled, as the policy has to be checked on each bind.
+ */
+public class CachingSimpleAuthenticator extends SimpleAuthenticator {
+
+    public static final String CACHE_NAME = "bindCache";
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TTL_SECONDS = 300L;
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, Credential> credentials;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingSimpleAuthenticator() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS, null);
+    }
+
+    /**
+     * @param maxSize maximal number of cached DNs
+     * @param ttlSeconds time-to-live of the cached credentials (0 means no expiration)
+     * @param baseDn base DN of the authenticator (may be <code>null</code>)
+     */
+    public CachingSimpleAuthenticator(int maxSize, long ttlSeconds, Dn baseDn) {
+        super(baseDn);
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The bind cache size has to be positive: " + maxSize);
+        }
+        if (ttlSeconds < 0L) {
+            throw new IllegalArgumentException("The bind cache time-to-live can't be negative: " + ttlSeconds);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.key = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::createMac);
+        this.credentials = new LinkedHashMap<String, Credential>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Credential> eldest) {
+                if (size() > CachingSimpleAuthenticator.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public LdapPrincipal authenticate(BindOperationContext bindContext) throws LdapException {
+        if (getDirectoryService().isPwdPolicyEnabled() || bindContext.getCredentials() == null) {
+            return super.authenticate(bindContext);
+        }
+        Dn dn = bindContext.getDn();
+        String normName = dn.getNormName();
+        byte[] digest = digest(normName, bindContext.getCredentials());
+        Credential credential;
+        synchronized (credentials) {
+            credential = credentials.get(normName);
+        }
+        if (credential != null && MessageDigest.isEqual(credential.digest, digest) && !isExpired(credential)) {
+            hits.increment();
+            LdapPrincipal principal = new LdapPrincipal(getDirectoryService().getSchemaManager(), dn,
+                    AuthenticationLevel.SIMPLE);
+            IoSession session = bindContext.getIoSession();
+            if (session != null) {
+                principal.setClientAddress(session.getRemoteAddress());
+                principal.setServerAddress(session.getServiceAddress());
+            }
+            return principal;
+        }
+        misses.increment();
+        long generation = invalidations.get();
+        LdapPrincipal principal = super.authenticate(bindContext);
+        synchronized (credentials) {
+            // don't cache a password which was changed while it was being verified
+            if (generation == invalidations.get()) {
+                credentials.put(normName, new Credential(digest, ttlNanos > 0L ? System.nanoTime() + ttlNanos : 0L));
+            }
+        }
+        return principal;
+    }
+
+    @Override
+    public void invalidateCache(Dn bindDn) {
+        synchronized (credentials) {
+            invalidations.incrementAndGet();
+            if (bindDn != null) {
+                credentials.remove(bindDn.getNormName());
+            }
+        }
+        super.invalidateCache(bindDn);
+    }
+
+    /**
+     * Removes all the cached credentials (e.g. after a directory reset which bypasses the interceptor chain).
+     */
+    public void clear() {
+        synchronized (credentials) {
+            invalidations.incrementAndGet();
+            credentials.clear();
+        }
+    }
+
+    /**
+     * Returns the bind cache statistics. A hit is a bind which skipped the password verification.
+     */
+    public CacheStatistics getStatistics() {
+        int size;
+        synchronized (credentials) {
+            size = credentials.size();
+        }
+        return new CacheStatistics(CACHE_NAME, size, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private boolean isExpired(Credential credential) {
+        return credential.expires != 0L && credential.expires - System.nanoTime() <= 0L;
+    }
+
+    private byte[] digest(String normName, byte[] password) {
+        Mac mac = macs.get();
+        mac.update(normName.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + MAC_ALGORITHM, e);
+        }
+    }
+
+    private static final class Credential {
+        final byte[] digest;
+        final long expires;
+
+        Credential(byte[] digest, long expires) {
+            this.digest = digest;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+
+import com.github.kwart.ldap.DirectorySnapshot.PartitionCreator;
+
+/**
+ * In-memory copy of the user partitions which allows to roll the directory back to the captured state. The captured entries
+ * are already normalized and never handed to a partition directly: each restore replaces the user partitions by new empty
+ * ones and writes clones of the baseline entries into them (see {@link BulkLoader}), so nothing is parsed again.
+ */
+final class DirectoryBaseline {
+
+    private final Map<Dn, PartitionContent> partitions;
+
+    private DirectoryBaseline(Map<Dn, PartitionContent> partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Captures the current content of all user partitions.
+     */
+    static DirectoryBaseline capture(DirectoryService directoryService) throws Exception {
+        final long start = System.currentTimeMillis();
+        Map<Dn, PartitionContent> partitions = new LinkedHashMap<Dn, PartitionContent>();
+        long count = 0L;
+        for (Partition partition : directoryService.getPartitions()) {
+            if (BulkLoader.isUserPartition(partition)) {
+                List<Entry> entries = new ArrayList<Entry>();
+                for (Entry entry : DirectorySnapshot.readEntries(directoryService, partition.getSuffixDn())) {
+                    entries.add(entry.clone());
+                }
+                partitions.put(partition.getSuffixDn(),
+                        new PartitionContent(partition.getId(), Collections.unmodifiableList(entries)));
+                count += entries.size();
+            }
+        }
+        System.out.println("Baseline with " + count + " entries captured in " + (System.currentTimeMillis() - start) + "ms");
+        return new DirectoryBaseline(partitions);
+    }
+
+    /**
+     * Replaces all user partitions with the baseline content. User partitions created after the capture are removed.
+     *
+     * @return number of restored entries
+     */
+    long restore(DirectoryService directoryService, PartitionCreator partitionCreator) throws Exception {
+        List<Partition> current = new ArrayList<Partition>();
+        for (Partition partition : directoryService.getPartitions()) {
+            if (BulkLoader.isUserPartition(partition)) {
+                current.add(partition);
+            }
+        }
+        for (Partition partition : current) {
+            directoryService.removePartition(partition);
+        }
+        BulkLoader loader = new BulkLoader(directoryService);
+        for (Map.Entry<Dn, PartitionContent> entry : partitions.entrySet()) {
+            PartitionContent content = entry.getValue();
+            Partition partition = partitionCreator.createPartition(content.id, entry.getKey());
+            for (Entry baselineEntry : content.entries) {
+                loader.write(partition, baselineEntry.clone());
+            }
+        }
+        return loader.getCount();
+    }
+
+    private static class PartitionContent {
+        final String id;
+        final List<Entry> entries;
+
+        PartitionContent(String id, List<Entry> entries) {
+            this.id = id;
+            this.entries = entries;
+        }
+    }
+}
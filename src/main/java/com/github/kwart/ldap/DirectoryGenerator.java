@@ -0,0 +1,319 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+
+/**
+ * Generates a synthetic directory directly into a partition: nested organizational units, users (<code>inetOrgPerson</code>)
+ * and groups (<code>groupOfNames</code>). The content depends only on the settings and the seed, not on the number of
+ * threads. Entries are built and normalized in parallel and written in order by a single thread (see {@link BulkLoader}).
+ * <p>
+ * Layout under the base DN:
+ * <ul>
+ * <li><code>ou=unit{a}.{b}...,ou=Users</code> - OU tree with given levels and fan-out</li>
+ * <li><code>uid=user{N},[leaf OU,]ou=Users</code> - users with password <code>password{N}</code>, spread over the leaf OUs</li>
+ * <li><code>cn=group{N},ou=Groups</code> - groups with randomly chosen members</li>
+ * </ul>
+ */
+public class DirectoryGenerator {
+
+    public static final String DEFAULT_BASE_DN = "dc=ldap,dc=example";
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final String[] FIRST_NAMES = { "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael",
+            "Linda", "William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah",
+            "Charles", "Karen", "Jan", "Eva", "Petr", "Jana", "Josef" };
+    private static final String[] LAST_NAMES = { "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+            "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Wilson", "Anderson", "Taylor", "Moore", "Novak",
+            "Svoboda", "Dvorak", "Cerny", "Duke" };
+
+    private final DirectoryService directoryService;
+    private final BulkLoader loader;
+
+    private String baseDn = DEFAULT_BASE_DN;
+    private int users;
+    private int groups;
+    private int membersPerGroup = 10;
+    private int ouLevels;
+    private int ouFanout = 10;
+    private long seed = DEFAULT_SEED;
+    private int threads = LdifImportPipeline.DEFAULT_THREADS;
+
+    public DirectoryGenerator(DirectoryService directoryService) {
+        this.directoryService = directoryService;
+        this.loader = new BulkLoader(directoryService);
+    }
+
+    public DirectoryGenerator setBaseDn(String baseDn) {
+        this.baseDn = baseDn;
+        return this;
+    }
+
+    public DirectoryGenerator setUsers(int users) {
+        this.users = users;
+        return this;
+    }
+
+    public DirectoryGenerator setGroups(int groups) {
+        this.groups = groups;
+        return this;
+    }
+
+    /**
+     * Sets the number of members in each group (limited by the number of users).
+     */
+    public DirectoryGenerator setMembersPerGroup(int membersPerGroup) {
+        this.membersPerGroup = membersPerGroup;
+        return this;
+    }
+
+    /**
+     * Sets the depth of the OU tree under <code>ou=Users</code>. Zero means the users are stored directly in
+     * <code>ou=Users</code>.
+     */
+    public DirectoryGenerator setOuLevels(int ouLevels) {
+        this.ouLevels = ouLevels;
+        return this;
+    }
+
+    /**
+     * Sets the number of child OUs of each non-leaf OU.
+     */
+    public DirectoryGenerator setOuFanout(int ouFanout) {
+        this.ouFanout = ouFanout;
+        return this;
+    }
+
+    public DirectoryGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DirectoryGenerator setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Generates the entries. The base entry has to exist already.
+     *
+     * @return number of generated entries
+     */
+    public long generate() throws Exception {
+        if (groups > 0 && users == 0) {
+            throw new IllegalArgumentException("Groups can't be generated without users");
+        }
+        if (ouLevels > 0 && ouFanout < 1) {
+            throw new IllegalArgumentException("OU fan-out has to be a positive number");
+        }
+        final long start = System.currentTimeMillis();
+        Dn base = new Dn(directoryService.getSchemaManager(), baseDn);
+        if (!directoryService.getAdminSession().exists(base)) {
+            throw new IllegalStateException("Base entry " + baseDn + " doesn't exist");
+        }
+        final String usersDn = "ou=Users," + baseDn;
+        final String groupsDn = "ou=Groups," + baseDn;
+        addContainer(usersDn, "Users");
+        if (groups > 0) {
+            addContainer(groupsDn, "Groups");
+        }
+        final Partition partition = directoryService.getPartitionNexus().getPartition(base);
+        final long before = loader.getCount();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            // OU tree, level by level so parents are written first
+            for (int level = 1; level <= ouLevels; level++) {
+                final int currentLevel = level;
+                generate(executor, partition, power(ouFanout, level),
+                        i -> createOu(ouDn(currentLevel, i, usersDn), ouName(currentLevel, i)));
+            }
+            final int leaves = power(ouFanout, ouLevels);
+            generate(executor, partition, users, i -> createUser(i, ouDn(ouLevels, i % leaves, usersDn)));
+            generate(executor, partition, groups, i -> createGroup(i, groupsDn, usersDn, leaves));
+        } finally {
+            executor.shutdownNow();
+        }
+        long count = loader.getCount() - before;
+        long duration = Math.max(1L, System.currentTimeMillis() - start);
+        System.out.println("Generated " + count + " entries under " + baseDn + " in " + duration + "ms ("
+                + (count * 1000L / duration) + " entries/s)");
+        return count;
+    }
+
+    /**
+     * Returns DN of the user with given index, as generated with the given settings.
+     */
+    public String getUserDn(int index) {
+        return userDn(index, ouDn(ouLevels, index % power(ouFanout, ouLevels), "ou=Users," + baseDn));
+    }
+
+    private void generate(ExecutorService executor, Partition partition, int count, EntryFactory factory)
+            throws Exception {
+        ArrayDeque<Future<List<Entry>>> window = new ArrayDeque<Future<List<Entry>>>();
+        int next = 0;
+        while (next < count || !window.isEmpty()) {
+            while (next < count && window.size() < Math.max(1, threads) * 2) {
+                final int from = next;
+                final int to = Math.min(count, from + CHUNK_SIZE);
+                window.add(executor.submit(() -> {
+                    List<Entry> entries = new ArrayList<Entry>(to - from);
+                    for (int i = from; i < to; i++) {
+                        entries.add(loader.prepare(factory.create(i)));
+                    }
+                    return entries;
+                }));
+                next = to;
+            }
+            List<Entry> entries;
+            try {
+                entries = window.poll().get();
+            } catch (ExecutionException e) {
+                for (Future<List<Entry>> future : window) {
+                    future.cancel(true);
+                }
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            for (Entry entry : entries) {
+                loader.write(partition, entry);
+            }
+        }
+    }
+
+    private void addContainer(String dn, String ou) throws LdapException {
+        Dn containerDn = new Dn(directoryService.getSchemaManager(), dn);
+        if (!directoryService.getAdminSession().exists(containerDn)) {
+            directoryService.getAdminSession().add(new DefaultEntry(directoryService.getSchemaManager(), containerDn,
+                    "objectClass: top", "objectClass: organizationalUnit", "ou: " + ou));
+        }
+    }
+
+    private Entry createOu(String dn, String name) throws LdapException {
+        Entry entry = new DefaultEntry(dn);
+        entry.add("objectClass", "top", "organizationalUnit");
+        entry.add("ou", name);
+        return entry;
+    }
+
+    private Entry createUser(int index, String parentDn) throws LdapException {
+        SplittableRandom random = random(index, 1L);
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        String uid = "user" + index;
+        Entry entry = new DefaultEntry(userDn(index, parentDn));
+        entry.add("objectClass", "top", "person", "organizationalPerson", "inetOrgPerson");
+        entry.add("uid", uid);
+        entry.add("cn", firstName + " " + lastName);
+        entry.add("givenName", firstName);
+        entry.add("sn", lastName);
+        entry.add("mail", uid + "@example.com");
+        entry.add("employeeNumber", String.valueOf(100000 + random.nextInt(900000)));
+        entry.add("telephoneNumber", String.format("+1 555 %04d", random.nextInt(10000)));
+        entry.add("userPassword", "password" + index);
+        return entry;
+    }
+
+    private Entry createGroup(int index, String groupsDn, String usersDn, int leaves) throws LdapException {
+        SplittableRandom random = random(index, 2L);
+        Entry entry = new DefaultEntry("cn=group" + index + "," + groupsDn);
+        entry.add("objectClass", "top", "groupOfNames");
+        entry.add("cn", "group" + index);
+        int memberCount = Math.max(1, Math.min(membersPerGroup, users));
+        if (memberCount == users) {
+            for (int i = 0; i < users; i++) {
+                entry.add("member", userDn(i, ouDn(ouLevels, i % leaves, usersDn)));
+            }
+        } else {
+            Set<Integer> members = new HashSet<Integer>();
+            while (members.size() < memberCount) {
+                int member = random.nextInt(users);
+                if (members.add(member)) {
+                    entry.add("member", userDn(member, ouDn(ouLevels, member % leaves, usersDn)));
+                }
+            }
+        }
+        return entry;
+    }
+
+    private SplittableRandom random(int index, long kind) {
+        return new SplittableRandom(seed ^ (kind << 56) ^ (index * GOLDEN_GAMMA));
+    }
+
+    private static String userDn(int index, String parentDn) {
+        return "uid=user" + index + "," + parentDn;
+    }
+
+    /**
+     * Returns DN of the OU with given index on the given level (level 0 is the parent itself).
+     */
+    private String ouDn(int level, int index, String parentDn) {
+        StringBuilder sb = new StringBuilder();
+        for (int l = level; l >= 1; l--) {
+            sb.append("ou=").append(ouName(l, index / power(ouFanout, level - l))).append(',');
+        }
+        return sb.append(parentDn).toString();
+    }
+
+    /**
+     * Returns name of the OU with given index on the given level, e.g. "unit3.0.7" (level 3).
+     */
+    private String ouName(int level, int index) {
+        StringBuilder sb = new StringBuilder("unit");
+        for (int l = level - 1; l >= 0; l--) {
+            sb.append((index / power(ouFanout, l)) % ouFanout);
+            if (l > 0) {
+                sb.append('.');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int power(int base, int exponent) {
+        int result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    private interface EntryFactory {
+        Entry create(int index) throws LdapException;
+    }
+}
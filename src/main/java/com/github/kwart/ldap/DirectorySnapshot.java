@@ -0,0 +1,186 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+
+/**
+ * Saves all user partitions to a binary file and restores them. The snapshot is read through a {@link MappedByteBuffer} and the
+ * entries are written directly to the partitions (see {@link BulkLoader}). Partition indexes are rebuilt during the restore.
+ * <p>
+ * File layout: <code>magic, version, partitionCount, (partitionId, suffixDn, entryCount, entry*)*</code>, where entries are
+ * encoded by {@link EntryCodec} and ordered so that parents come before their children.
+ */
+public final class DirectorySnapshot {
+
+    private static final int MAGIC = 0x4c534e50;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Operational attributes stored in the snapshot.
+     */
+    private static final String[] ATTRIBUTES = { SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ENTRY_UUID_AT,
+            SchemaConstants.ENTRY_CSN_AT, SchemaConstants.CREATORS_NAME_AT, SchemaConstants.CREATE_TIMESTAMP_AT,
+            SchemaConstants.MODIFIERS_NAME_AT, SchemaConstants.MODIFY_TIMESTAMP_AT };
+
+    private DirectorySnapshot() {
+    }
+
+    /**
+     * Writes all user partitions of the directory service to the given file.
+     *
+     * @return number of written entries
+     */
+    public static long save(DirectoryService directoryService, File file) throws Exception {
+        final long start = System.currentTimeMillis();
+        List<Partition> partitions = new ArrayList<Partition>();
+        for (Partition partition : directoryService.getPartitions()) {
+            if (BulkLoader.isUserPartition(partition)) {
+                partitions.add(partition);
+            }
+        }
+        long count = 0L;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(partitions.size());
+            for (Partition partition : partitions) {
+                List<Entry> entries = readEntries(directoryService, partition.getSuffixDn());
+                EntryCodec.writeString(out, partition.getId());
+                EntryCodec.writeString(out, partition.getSuffixDn().getName());
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    EntryCodec.writeEntry(out, entry);
+                }
+                count += entries.size();
+            }
+        }
+        System.out.println("Snapshot with " + count + " entries saved to " + file + " in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return count;
+    }
+
+    /**
+     * Restores partitions from the given snapshot file.
+     *
+     * @param directoryService target directory service
+     * @param file snapshot file
+     * @param partitionCreator used for partitions which don't exist in the directory service yet
+     * @return number of restored entries
+     */
+    public static long load(DirectoryService directoryService, File file, PartitionCreator partitionCreator)
+            throws Exception {
+        final long start = System.currentTimeMillis();
+        final SchemaManager schemaManager = directoryService.getSchemaManager();
+        final BulkLoader loader = new BulkLoader(directoryService);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot files larger than 2GB are not supported: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format: " + file);
+            }
+            int partitionCount = buffer.getInt();
+            for (int i = 0; i < partitionCount; i++) {
+                String id = EntryCodec.readString(buffer);
+                Dn suffixDn = new Dn(schemaManager, EntryCodec.readString(buffer));
+                Partition partition = findPartition(directoryService, suffixDn);
+                if (partition == null) {
+                    partition = partitionCreator.createPartition(id, suffixDn);
+                }
+                int entryCount = buffer.getInt();
+                for (int j = 0; j < entryCount; j++) {
+                    loader.write(partition, EntryCodec.readEntry(buffer, schemaManager));
+                }
+            }
+        }
+        long duration = Math.max(1L, System.currentTimeMillis() - start);
+        System.out.println("Snapshot with " + loader.getCount() + " entries loaded from " + file + " in " + duration
+                + "ms (" + (loader.getCount() * 1000L / duration) + " entries/s)");
+        return loader.getCount();
+    }
+
+    private static Partition findPartition(DirectoryService directoryService, Dn suffixDn) {
+        for (Partition partition : directoryService.getPartitions()) {
+            if (suffixDn.equals(partition.getSuffixDn())) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads all entries (with the snapshot operational attributes) under the given suffix, parents first.
+     */
+    static List<Entry> readEntries(DirectoryService directoryService, Dn suffixDn) throws Exception {
+        List<Entry> entries = new ArrayList<Entry>();
+        PresenceNode filter = new PresenceNode(
+                directoryService.getSchemaManager().getAttributeType(SchemaConstants.OBJECT_CLASS_AT));
+        Cursor<Entry> cursor = directoryService.getAdminSession().search(suffixDn, SearchScope.SUBTREE, filter,
+                AliasDerefMode.NEVER_DEREF_ALIASES, ATTRIBUTES);
+        try {
+            while (cursor.next()) {
+                entries.add(cursor.get());
+            }
+        } finally {
+            cursor.close();
+        }
+        // parents first
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return Integer.compare(e1.getDn().size(), e2.getDn().size());
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Creates (and registers) a partition with the given ID and suffix.
+     */
+    public interface PartitionCreator {
+        Partition createPartition(String id, Dn suffixDn) throws Exception;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+/**
+ * Compact binary form of LDAP entries. Only the user provided forms are stored (DN, attribute IDs and values), so the entries
+ * are normalized again when they are read with a {@link SchemaManager}.
+ * <p>
+ * Entry layout: <code>DN, attributeCount, (attributeId, valueCount, (type, value)*)*</code>. Strings are stored as
+ * length-prefixed UTF-8.
+ */
+final class EntryCodec {
+
+    private static final byte STRING_VALUE = 0;
+    private static final byte BINARY_VALUE = 1;
+
+    private EntryCodec() {
+    }
+
+    static void writeEntry(DataOutput out, Entry entry) throws IOException {
+        writeString(out, entry.getDn().getName());
+        out.writeInt(entry.size());
+        for (Attribute attribute : entry) {
+            writeString(out, attribute.getUpId());
+            out.writeInt(attribute.size());
+            for (Value<?> value : attribute) {
+                if (value.isHumanReadable()) {
+                    out.writeByte(STRING_VALUE);
+                    writeString(out, value.getString());
+                } else {
+                    out.writeByte(BINARY_VALUE);
+                    writeBytes(out, value.getBytes());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an entry from the buffer.
+     *
+     * @param buffer source buffer
+     * @param schemaManager schema manager, or <code>null</code> if a non-schema-aware entry should be created
+     */
+    static Entry readEntry(ByteBuffer buffer, SchemaManager schemaManager) throws LdapException {
+        String dn = readString(buffer);
+        Entry entry = schemaManager == null ? new DefaultEntry(new Dn(dn)) : new DefaultEntry(schemaManager, new Dn(
+                schemaManager, dn));
+        int attributeCount = buffer.getInt();
+        for (int i = 0; i < attributeCount; i++) {
+            String upId = readString(buffer);
+            int valueCount = buffer.getInt();
+            for (int j = 0; j < valueCount; j++) {
+                if (buffer.get() == BINARY_VALUE) {
+                    entry.add(upId, readBytes(buffer));
+                } else {
+                    entry.add(upId, readString(buffer));
+                }
+            }
+        }
+        return entry;
+    }
+
+    static void writeString(DataOutput out, String str) throws IOException {
+        writeBytes(out, str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+
+/**
+ * Cardinality statistics of user partitions: number of entries, exact number of entries containing each attribute and
+ * estimated number of entries containing an attribute value. The value counts are kept in a count-min sketch, so the memory
+ * doesn't grow with the data. The sketch never underestimates, i.e. a zero estimate means the value is not present.
+ */
+final class FilterStatistics {
+
+    static final int DEFAULT_WIDTH = 1 << 16;
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final AtomicIntegerArray sketch;
+    private final AtomicLong entries = new AtomicLong();
+    private final Map<String, Presence> presence = new ConcurrentHashMap<String, Presence>();
+
+    FilterStatistics() {
+        this(DEFAULT_WIDTH);
+    }
+
+    FilterStatistics(int width) {
+        this.width = width;
+        this.sketch = new AtomicIntegerArray(DEPTH * width);
+    }
+
+    void add(Entry entry) {
+        update(entry, 1);
+    }
+
+    void remove(Entry entry) {
+        update(entry, -1);
+    }
+
+    void clear() {
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.set(i, 0);
+        }
+        entries.set(0L);
+        presence.clear();
+    }
+
+    long getEntryCount() {
+        return entries.get();
+    }
+
+    /**
+     * Returns the number of entries which contain the given attribute.
+     */
+    long getPresenceCount(AttributeType attributeType) {
+        Presence counter = presence.get(attributeType.getOid());
+        return counter == null ? 0L : counter.count.sum();
+    }
+
+    /**
+     * Returns an upper bound of the number of entries with the given attribute value.
+     *
+     * @param normValue normalized value (see {@link PartitionSupport#normValue(Value)})
+     */
+    long estimate(AttributeType attributeType, String normValue) {
+        long hash = hash(attributeType.getOid(), normValue);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long result = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            result = Math.min(result, sketch.get(i * width + index(hash1, hash2, i)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns entry counts of all attributes present in the partitions (attribute name -&gt; count).
+     */
+    Map<String, Long> getPresenceCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Presence counter : presence.values()) {
+            long count = counter.count.sum();
+            if (count > 0) {
+                result.put(counter.name, count);
+            }
+        }
+        return result;
+    }
+
+    private void update(Entry entry, int delta) {
+        entries.addAndGet(delta);
+        for (Attribute attribute : entry) {
+            AttributeType attributeType = attribute.getAttributeType();
+            if (attributeType == null) {
+                continue;
+            }
+            Presence counter = presence.get(attributeType.getOid());
+            if (counter == null) {
+                counter = presence.computeIfAbsent(attributeType.getOid(), oid -> new Presence(attributeType.getName()));
+            }
+            counter.count.add(delta);
+            for (Value<?> value : attribute) {
+                long hash = hash(attributeType.getOid(), PartitionSupport.normValue(value));
+                int hash1 = (int) hash;
+                int hash2 = (int) (hash >>> 32);
+                for (int i = 0; i < DEPTH; i++) {
+                    sketch.addAndGet(i * width + index(hash1, hash2, i), delta);
+                }
+            }
+        }
+    }
+
+    private int index(int hash1, int hash2, int row) {
+        return ((hash1 + row * hash2) & Integer.MAX_VALUE) % width;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the attribute OID and the value.
+     */
+    private static long hash(String oid, String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < oid.length(); i++) {
+            hash = (hash ^ oid.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ 0) * 0x100000001b3L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class Presence {
+        final String name;
+        final LongAdder count = new LongAdder();
+
+        Presence(String name) {
+            this.name = name;
+        }
+    }
+}
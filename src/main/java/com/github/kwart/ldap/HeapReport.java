@@ -0,0 +1,55 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Live heap usage (measured after a full GC) and the value interning statistics.
+ */
+final class HeapReport {
+
+    private static final long MB = 1024L * 1024L;
+
+    private HeapReport() {
+    }
+
+    /**
+     * Runs GC and returns the report text.
+     *
+     * @param interner value interner or <code>null</code> if values are not interned
+     */
+    static String create(ValueInterner interner) {
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            memoryBean.gc();
+        }
+        long used = memoryBean.getHeapMemoryUsage().getUsed();
+        StringBuilder sb = new StringBuilder("Live heap: ").append(used / MB).append(" MB");
+        if (interner != null) {
+            sb.append("\nInterned values: ").append(interner.size()).append(" distinct, ").append(interner.getDeduplicated())
+                    .append(" deduplicated, ~").append(interner.getSavedBytes() / MB).append(" MB saved");
+        }
+        return sb.toString();
+    }
+}
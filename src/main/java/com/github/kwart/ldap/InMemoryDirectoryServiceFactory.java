@@ -22,7 +22,9 @@ package com.github.kwart.ldap;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.schema.LdapComparator;
@@ -49,7 +51,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sf.ehcache.CacheManager;
-import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.Configuration;
 
 /**
@@ -61,8 +62,13 @@ public class InMemoryDirectoryServiceFactory implements DirectoryServiceFactory
 
     private static Logger LOG = LoggerFactory.getLogger(InMemoryDirectoryServiceFactory.class);
 
+    private static final AtomicInteger CACHE_MANAGER_COUNTER = new AtomicInteger();
+
     private final DirectoryService directoryService;
     private final PartitionFactory partitionFactory;
+    private CacheConfig cacheConfig = new CacheConfig();
+    private CacheManager cacheManager;
+    private boolean sharedSchema;
 
     /**
      * Default constructor which creates {@link DefaultDirectoryService} instance and configures {@link AvlPartitionFactory} as
@@ -111,35 +117,31 @@ public class InMemoryDirectoryServiceFactory implements DirectoryServiceFactory
         }
         directoryService.setInstanceLayout(instanceLayout);
 
-        // EhCache in disabled-like-mode
-        Configuration ehCacheConfig = new Configuration();
-        CacheConfiguration defaultCache = new CacheConfiguration("default", 1).eternal(false).timeToIdleSeconds(30)
-                .timeToLiveSeconds(30).overflowToDisk(false);
-        ehCacheConfig.addDefaultCache(defaultCache);
-        CacheService cacheService = new CacheService(new CacheManager(ehCacheConfig));
+        // EhCache sized by the cache configuration, uniquely named so more directory services can run in one JVM
+        Configuration ehCacheConfig = cacheConfig.toEhCacheConfiguration();
+        ehCacheConfig.setName(name + "-" + CACHE_MANAGER_COUNTER.incrementAndGet());
+        cacheManager = new CacheManager(ehCacheConfig);
+        CacheService cacheService = new CacheService(cacheManager);
         directoryService.setCacheService(cacheService);
 
-        // Init the schema
+        // Init the schema - use the precompiled image if available
         // SchemaLoader loader = new SingleLdifSchemaLoader();
-        SchemaLoader loader = new JarLdifSchemaLoader();
-        SchemaManager schemaManager = new DefaultSchemaManager(loader);
-        schemaManager.loadAllEnabled();
-        ComparatorRegistry comparatorRegistry = schemaManager.getComparatorRegistry();
-        for (LdapComparator<?> comparator : comparatorRegistry) {
-            if (comparator instanceof NormalizingComparator) {
-                ((NormalizingComparator) comparator).setOnServer();
-            }
+        SchemaManager schemaManager;
+        InMemorySchemaPartition inMemorySchemaPartition;
+        if (sharedSchema) {
+            SharedSchema shared = SharedSchema.get();
+            schemaManager = shared.getSchemaManager();
+            inMemorySchemaPartition = new InMemorySchemaPartition(schemaManager, shared.getEntries());
+        } else {
+            SchemaImage schemaImage = SchemaImage.loadDefault();
+            schemaManager = createSchemaManager(schemaImage);
+            inMemorySchemaPartition = new InMemorySchemaPartition(schemaManager, schemaImage);
         }
         directoryService.setSchemaManager(schemaManager);
-        InMemorySchemaPartition inMemorySchemaPartition = new InMemorySchemaPartition(schemaManager);
 
         SchemaPartition schemaPartition = new SchemaPartition(schemaManager);
         schemaPartition.setWrappedPartition(inMemorySchemaPartition);
         directoryService.setSchemaPartition(schemaPartition);
-        List<Throwable> errors = schemaManager.getErrors();
-        if (errors.size() != 0) {
-            throw new Exception(I18n.err(I18n.ERR_317, Exceptions.printErrors(errors)));
-        }
 
         // Init system partition
         Partition systemPartition = partitionFactory.createPartition(directoryService.getSchemaManager(),
@@ -150,6 +152,31 @@ public class InMemoryDirectoryServiceFactory implements DirectoryServiceFactory
         directoryService.setSystemPartition(systemPartition);
 
         directoryService.startup();
+        if (sharedSchema) {
+            directoryService.addFirst(new ReadOnlySchemaInterceptor());
+        }
+    }
+
+    /**
+     * Creates and loads a schema manager for server side use.
+     *
+     * @param schemaImage precompiled schema, if <code>null</code> the schema LDIF files are read from the classpath
+     */
+    static SchemaManager createSchemaManager(SchemaImage schemaImage) throws Exception {
+        SchemaLoader loader = schemaImage != null ? new SchemaImageLoader(schemaImage) : new JarLdifSchemaLoader();
+        SchemaManager schemaManager = new DefaultSchemaManager(loader);
+        schemaManager.loadAllEnabled();
+        ComparatorRegistry comparatorRegistry = schemaManager.getComparatorRegistry();
+        for (LdapComparator<?> comparator : comparatorRegistry) {
+            if (comparator instanceof NormalizingComparator) {
+                ((NormalizingComparator) comparator).setOnServer();
+            }
+        }
+        List<Throwable> errors = schemaManager.getErrors();
+        if (errors.size() != 0) {
+            throw new Exception(I18n.err(I18n.ERR_317, Exceptions.printErrors(errors)));
+        }
+        return schemaManager;
     }
 
     /**
@@ -168,4 +195,29 @@ public class InMemoryDirectoryServiceFactory implements DirectoryServiceFactory
         return partitionFactory;
     }
 
+    /**
+     * Sets the cache configuration. It has to be called before {@link #init(String)}.
+     *
+     * @param cacheConfig must be not-<code>null</code>
+     */
+    public void setCacheConfig(CacheConfig cacheConfig) {
+        this.cacheConfig = cacheConfig;
+    }
+
+    /**
+     * Enables sharing of one read-only schema by all directory services in the JVM which use this option. The schema is built
+     * once, so next instances start faster and need less memory, but the schema can't be modified over LDAP. It has to be
+     * called before {@link #init(String)}.
+     */
+    public void setSharedSchema(boolean sharedSchema) {
+        this.sharedSchema = sharedSchema;
+    }
+
+    /**
+     * Returns statistics of the directory service caches.
+     */
+    public List<CacheStatistics> getCacheStatistics() {
+        return cacheManager != null ? CacheStatistics.collect(cacheManager) : new ArrayList<CacheStatistics>();
+    }
+
 }
@@ -20,22 +20,15 @@
 
 package com.github.kwart.ldap;
 
-import java.net.URL;
-import java.util.Map;
-import java.util.TreeSet;
+import java.util.List;
 import java.util.UUID;
-import java.util.regex.Pattern;
 
 import javax.naming.InvalidNameException;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
-import org.apache.directory.api.ldap.model.ldif.LdifEntry;
-import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
-import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
-import org.apache.directory.api.ldap.schema.extractor.impl.ResourceMap;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.partition.ldif.AbstractLdifPartition;
 import org.slf4j.Logger;
@@ -56,12 +49,40 @@ public class InMemorySchemaPartition extends AbstractLdifPartition {
      * instance is needed for all uses.
      */
 
+    private final SchemaImage schemaImage;
+    private final List<Entry> normalizedEntries;
+
     public InMemorySchemaPartition(SchemaManager schemaManager) {
+        this(schemaManager, (SchemaImage) null);
+    }
+
+    /**
+     * Creates partition which loads its content from the given schema image.
+     *
+     * @param schemaManager
+     * @param schemaImage schema image, if <code>null</code> the schema LDIF files are read from the classpath
+     */
+    public InMemorySchemaPartition(SchemaManager schemaManager, SchemaImage schemaImage) {
         super(schemaManager);
+        this.schemaImage = schemaImage;
+        this.normalizedEntries = null;
     }
 
     /**
-     * Partition initialization - loads schema entries from the files on classpath.
+     * Creates partition which stores copies of the given schema entries. The entries have to be normalized by the given schema
+     * manager and contain the mandatory operational attributes.
+     *
+     * @param schemaManager
+     * @param normalizedEntries schema entries (see {@link SharedSchema})
+     */
+    InMemorySchemaPartition(SchemaManager schemaManager, List<Entry> normalizedEntries) {
+        super(schemaManager);
+        this.schemaImage = null;
+        this.normalizedEntries = normalizedEntries;
+    }
+
+    /**
+     * Partition initialization - loads schema entries from the schema image or from the files on classpath.
      * 
      * @see org.apache.directory.server.core.partition.impl.avl.AvlPartition#doInit()
      */
@@ -74,26 +95,26 @@ public class InMemorySchemaPartition extends AbstractLdifPartition {
         suffixDn.apply(schemaManager);
         super.doInit();
 
+        if (normalizedEntries != null) {
+            for (Entry entry : normalizedEntries) {
+                super.add(new AddOperationContext(null, entry.clone()));
+            }
+            return;
+        }
+
         // load schema
-        final Map<String, Boolean> resMap = ResourceMap.getResources(Pattern.compile("schema[/\\Q\\\\E]ou=schema.*"));
-        for (String resourcePath : new TreeSet<String>(resMap.keySet())) {
-            if (resourcePath.endsWith(".ldif")) {
-                URL resource = DefaultSchemaLdifExtractor.getUniqueResource(resourcePath, "Schema LDIF file");
-                LdifReader reader = new LdifReader(resource.openStream());
-                LdifEntry ldifEntry = reader.next();
-                reader.close();
-
-                Entry entry = new DefaultEntry(schemaManager, ldifEntry.getEntry());
-                // add mandatory attributes
-                if (entry.get(SchemaConstants.ENTRY_CSN_AT) == null) {
-                    entry.add(SchemaConstants.ENTRY_CSN_AT, defaultCSNFactory.newInstance().toString());
-                }
-                if (entry.get(SchemaConstants.ENTRY_UUID_AT) == null) {
-                    entry.add(SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString());
-                }
-                AddOperationContext addContext = new AddOperationContext(null, entry);
-                super.add(addContext);
+        SchemaImage image = schemaImage != null ? schemaImage : SchemaImage.scanClasspath();
+        for (Entry imageEntry : image.getEntries()) {
+            Entry entry = new DefaultEntry(schemaManager, imageEntry);
+            // add mandatory attributes
+            if (entry.get(SchemaConstants.ENTRY_CSN_AT) == null) {
+                entry.add(SchemaConstants.ENTRY_CSN_AT, defaultCSNFactory.newInstance().toString());
+            }
+            if (entry.get(SchemaConstants.ENTRY_UUID_AT) == null) {
+                entry.add(SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString());
             }
+            AddOperationContext addContext = new AddOperationContext(null, entry);
+            super.add(addContext);
         }
     }
 
@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+/**
+ * Attribute indexes to be created in user partitions. An index is either global (used in all user partitions) or bound to a
+ * partition suffix. Equality, presence and substring filters on indexed attributes are evaluated as index lookups instead of
+ * scanning the partition. Substring (trigram) indexes are configured in the same way and they are maintained by the
+ * {@link SubstringIndexInterceptor}.
+ */
+public class IndexConfig {
+
+    /**
+     * Attributes indexed by default.
+     */
+    public static final List<String> DEFAULT_ATTRIBUTES = Collections
+            .unmodifiableList(Arrays.asList("objectClass", "uid", "cn", "mail", "member", "uniqueMember", "memberUid"));
+
+    private final Set<String> globalAttributes = new LinkedHashSet<String>();
+    private final List<PartitionIndex> partitionIndexes = new ArrayList<PartitionIndex>();
+    private final Set<String> globalSubstringAttributes = new LinkedHashSet<String>();
+    private final List<PartitionIndex> partitionSubstringIndexes = new ArrayList<PartitionIndex>();
+
+    /**
+     * Creates configuration with the {@link #DEFAULT_ATTRIBUTES default indexes}.
+     */
+    public IndexConfig() {
+        this(true);
+    }
+
+    public IndexConfig(boolean useDefaults) {
+        if (useDefaults) {
+            globalAttributes.addAll(DEFAULT_ATTRIBUTES);
+        }
+    }
+
+    /**
+     * Creates configuration from index specifications in the form <code>attribute[@suffixDn]</code> (e.g.
+     * <code>employeeNumber</code> or <code>mail@dc=ldap,dc=example</code>).
+     */
+    public static IndexConfig parse(List<String> specs, boolean useDefaults) {
+        return parse(specs, null, useDefaults);
+    }
+
+    /**
+     * Creates configuration from specifications of equality and substring indexes. Both use the form
+     * <code>attribute[@suffixDn]</code>.
+     */
+    public static IndexConfig parse(List<String> specs, List<String> substringSpecs, boolean useDefaults) {
+        IndexConfig config = new IndexConfig(useDefaults);
+        if (specs != null) {
+            for (String spec : specs) {
+                int pos = spec.indexOf('@');
+                if (pos < 0) {
+                    config.addIndex(spec.trim());
+                } else {
+                    config.addIndex(spec.substring(0, pos).trim(), spec.substring(pos + 1).trim());
+                }
+            }
+        }
+        if (substringSpecs != null) {
+            for (String spec : substringSpecs) {
+                int pos = spec.indexOf('@');
+                if (pos < 0) {
+                    config.addSubstringIndex(spec.trim());
+                } else {
+                    config.addSubstringIndex(spec.substring(0, pos).trim(), spec.substring(pos + 1).trim());
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Adds an index used in all user partitions.
+     */
+    public IndexConfig addIndex(String attributeId) {
+        globalAttributes.add(attributeId);
+        return this;
+    }
+
+    /**
+     * Adds an index used only in the partition with the given suffix.
+     */
+    public IndexConfig addIndex(String attributeId, String suffixDn) {
+        partitionIndexes.add(new PartitionIndex(attributeId, suffixDn));
+        return this;
+    }
+
+    /**
+     * Adds a substring index used in all user partitions.
+     */
+    public IndexConfig addSubstringIndex(String attributeId) {
+        globalSubstringAttributes.add(attributeId);
+        return this;
+    }
+
+    /**
+     * Adds a substring index used only in the partition with the given suffix.
+     */
+    public IndexConfig addSubstringIndex(String attributeId, String suffixDn) {
+        partitionSubstringIndexes.add(new PartitionIndex(attributeId, suffixDn));
+        return this;
+    }
+
+    /**
+     * Returns attribute IDs which should be indexed in the partition with given suffix.
+     */
+    public Set<String> getIndexedAttributes(SchemaManager schemaManager, Dn suffixDn) throws LdapInvalidDnException {
+        return getAttributes(globalAttributes, partitionIndexes, schemaManager, suffixDn);
+    }
+
+    /**
+     * Returns attribute IDs which should have a substring index in the partition with given suffix.
+     */
+    public Set<String> getSubstringIndexedAttributes(SchemaManager schemaManager, Dn suffixDn) throws LdapInvalidDnException {
+        return getAttributes(globalSubstringAttributes, partitionSubstringIndexes, schemaManager, suffixDn);
+    }
+
+    /**
+     * Returns <code>true</code> if at least one substring index is configured.
+     */
+    public boolean hasSubstringIndexes() {
+        return !globalSubstringAttributes.isEmpty() || !partitionSubstringIndexes.isEmpty();
+    }
+
+    private static Set<String> getAttributes(Set<String> global, List<PartitionIndex> partitionSpecific,
+            SchemaManager schemaManager, Dn suffixDn) throws LdapInvalidDnException {
+        Set<String> result = new LinkedHashSet<String>(global);
+        for (PartitionIndex index : partitionSpecific) {
+            if (suffixDn.equals(new Dn(schemaManager, index.suffixDn))) {
+                result.add(index.attributeId);
+            }
+        }
+        return result;
+    }
+
+    private static class PartitionIndex {
+        private final String attributeId;
+        private final String suffixDn;
+
+        PartitionIndex(String attributeId, String suffixDn) {
+            this.attributeId = attributeId;
+            this.suffixDn = suffixDn;
+        }
+    }
+}
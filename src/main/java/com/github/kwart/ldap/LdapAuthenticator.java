@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.FilterEncoder;
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.BindResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.NoVerificationTrustManager;
+
+/**
+ * Thread-safe search-then-bind authenticator. The user DN is searched over a pooled connection bound with the search
+ * account and the password is verified by a simple bind over a second pooled connection, so an authentication costs two
+ * LDAP operations and no new TCP (or TLS) handshakes once the pools are warm. Both pools grow lazily up to the configured
+ * size; callers wait when all connections are in use.
+ */
+public class LdapAuthenticator implements Closeable {
+
+    public static final int DEFAULT_POOL_SIZE = 8;
+    public static final String DEFAULT_BASE_DN = "dc=ldap,dc=example";
+    public static final String DEFAULT_FILTER = "(uid={0})";
+
+    private static final long CONNECTION_TIMEOUT_MILLIS = 30000L;
+
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+    private final String searchDn;
+    private final String searchPassword;
+
+    private String baseDn = DEFAULT_BASE_DN;
+    private String filter = DEFAULT_FILTER;
+    private ConnectionPool searchPool = new ConnectionPool(true, DEFAULT_POOL_SIZE);
+    private ConnectionPool bindPool = new ConnectionPool(false, DEFAULT_POOL_SIZE);
+
+    private volatile boolean closed;
+
+    public LdapAuthenticator(String url, String searchDn, String searchPassword) {
+        URI uri = URI.create(requireNonNull(url, "The LDAP URL has to be provided"));
+        ssl = "ldaps".equalsIgnoreCase(uri.getScheme());
+        if (!ssl && !"ldap".equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException("Unsupported URL scheme: " + url);
+        }
+        String uriHost = uri.getHost() != null ? uri.getHost() : "127.0.0.1";
+        host = uriHost.startsWith("[") ? uriHost.substring(1, uriHost.length() - 1) : uriHost;
+        port = uri.getPort() > 0 ? uri.getPort() : (ssl ? 636 : 389);
+        this.searchDn = requireNonNull(searchDn, "The search DN has to be provided");
+        this.searchPassword = requireNonNull(searchPassword, "The search password has to be provided");
+    }
+
+    public LdapAuthenticator setBaseDn(String baseDn) {
+        this.baseDn = requireNonNull(baseDn, "The base DN has to be provided");
+        return this;
+    }
+
+    /**
+     * Sets the user search filter. The {0} is replaced by the (escaped) username.
+     */
+    public LdapAuthenticator setFilter(String filter) {
+        this.filter = requireNonNull(filter, "The filter has to be provided");
+        return this;
+    }
+
+    /**
+     * Sets the maximal number of search connections and (separately) bind connections. It has to be called before the first
+     * authentication.
+     */
+    public LdapAuthenticator setPoolSize(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("The pool size has to be positive: " + poolSize);
+        }
+        searchPool = new ConnectionPool(true, poolSize);
+        bindPool = new ConnectionPool(false, poolSize);
+        return this;
+    }
+
+    /**
+     * Authenticates the user.
+     *
+     * @return DN of the authenticated user or {@code null} when the user doesn't exist, the username is ambiguous or the
+     *         password is wrong (empty passwords are always rejected, they would result in an unauthenticated bind)
+     * @throws LdapException when the server can't be reached or the search fails
+     */
+    public String authenticate(String username, String password) throws LdapException {
+        if (username == null || password == null || password.isEmpty()) {
+            return null;
+        }
+        String dn = searchUserDn(username);
+        return dn != null && bind(dn, password) ? dn : null;
+    }
+
+    /**
+     * Searches the DN of the given user.
+     *
+     * @return the DN or {@code null} if there is no such user or more users match the filter
+     */
+    public String searchUserDn(String username) throws LdapException {
+        LdapNetworkConnection connection = searchPool.acquire();
+        boolean reusable = false;
+        try {
+            EntryCursor cursor = connection.search(baseDn, FilterEncoder.format(filter, username), SearchScope.SUBTREE,
+                    "1.1");
+            String dn = null;
+            int count = 0;
+            try {
+                while (cursor.next()) {
+                    dn = cursor.get().getDn().getName();
+                    count++;
+                }
+            } finally {
+                cursor.close();
+            }
+            reusable = true;
+            return count == 1 ? dn : null;
+        } catch (LdapException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LdapException("User search failed: " + e.getMessage(), e);
+        } finally {
+            searchPool.release(connection, reusable);
+        }
+    }
+
+    /**
+     * Verifies the password with a simple bind of the given DN.
+     *
+     * @return {@code true} if the bind succeeded
+     */
+    public boolean bind(String dn, String password) throws LdapException {
+        if (password == null || password.isEmpty()) {
+            return false;
+        }
+        LdapNetworkConnection connection = bindPool.acquire();
+        boolean reusable = false;
+        try {
+            BindRequestImpl bindRequest = new BindRequestImpl();
+            bindRequest.setSimple(true);
+            bindRequest.setName(dn);
+            bindRequest.setCredentials(password);
+            BindResponse bindResponse = connection.bind(bindRequest);
+            reusable = bindResponse != null;
+            return reusable && bindResponse.getLdapResult().getResultCode() == ResultCodeEnum.SUCCESS;
+        } finally {
+            bindPool.release(connection, reusable);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        searchPool.close();
+        bindPool.close();
+    }
+
+    private LdapNetworkConnection createConnection(boolean search) throws LdapException {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost(host);
+        config.setLdapPort(port);
+        config.setUseSsl(ssl);
+        if (ssl) {
+            config.setTrustManagers(new NoVerificationTrustManager());
+        }
+        config.setTimeout(CONNECTION_TIMEOUT_MILLIS);
+        LdapNetworkConnection connection = new LdapNetworkConnection(config);
+        try {
+            connection.connect();
+            if (search) {
+                connection.bind(searchDn, searchPassword);
+            }
+        } catch (LdapException | RuntimeException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+        return connection;
+    }
+
+    private static void closeQuietly(LdapNetworkConnection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Bounded pool of connections. A connection is dropped instead of returned when its state is unknown after a failure.
+     */
+    private final class ConnectionPool {
+
+        private final boolean search;
+        private final Semaphore permits;
+        private final ConcurrentLinkedQueue<LdapNetworkConnection> idle = new ConcurrentLinkedQueue<LdapNetworkConnection>();
+
+        ConnectionPool(boolean search, int size) {
+            this.search = search;
+            this.permits = new Semaphore(size, true);
+        }
+
+        LdapNetworkConnection acquire() throws LdapException {
+            if (closed) {
+                throw new IllegalStateException("The authenticator is closed");
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LdapException("Interrupted while waiting for a connection", e);
+            }
+            try {
+                LdapNetworkConnection connection;
+                while ((connection = idle.poll()) != null && !connection.isConnected()) {
+                    closeQuietly(connection);
+                }
+                return connection != null ? connection : createConnection(search);
+            } catch (LdapException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        void release(LdapNetworkConnection connection, boolean reusable) {
+            if (reusable && !closed) {
+                idle.offer(connection);
+                if (closed) {
+                    close();
+                }
+            } else {
+                closeQuietly(connection);
+            }
+            permits.release();
+        }
+
+        void close() {
+            LdapNetworkConnection connection;
+            while ((connection = idle.poll()) != null) {
+                closeQuietly(connection);
+            }
+        }
+    }
+}
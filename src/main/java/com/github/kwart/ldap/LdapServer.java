@@ -22,21 +22,41 @@ package com.github.kwart.ldap;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import javax.net.ssl.KeyManagerFactory;
 
-import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
-import org.apache.directory.api.ldap.model.exception.LdapException;
-import org.apache.directory.api.ldap.model.ldif.ChangeType;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
-import org.apache.directory.api.ldap.model.ldif.LdifReader;
 import org.apache.directory.api.ldap.model.name.Dn;
-import org.apache.directory.api.util.IOUtils;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.DefaultDirectoryService;
 import org.apache.directory.server.core.api.DirectoryService;
-import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.authn.AuthenticationInterceptor;
+import org.apache.directory.server.core.authn.Authenticator;
+import org.apache.directory.server.core.authn.SimpleAuthenticator;
+import org.apache.directory.server.core.factory.PartitionFactory;
 import org.apache.directory.server.protocol.shared.transport.TcpTransport;
+import org.apache.directory.server.protocol.shared.transport.Transport;
+import org.apache.directory.server.xdbm.Store;
+import org.apache.mina.core.filterchain.IoFilterChainBuilder;
+import org.apache.mina.core.service.IoAcceptor;
+import org.apache.mina.core.service.IoHandler;
+
+import com.github.kwart.ldap.LdifImportPipeline.LdifSource;
 
 /**
  * Creates and starts LDAP server(s).
@@ -46,9 +66,25 @@ import org.apache.directory.server.protocol.shared.transport.TcpTransport;
 public class LdapServer {
 
     private static final String DEFAULT_LDIF_FILENAME = "ldap-example.ldif";
+    private static final int PARTITION_CACHE_SIZE = 1000;
 
+    private final InMemoryDirectoryServiceFactory dsFactory;
     private final DirectoryService directoryService;
+    private final PartitionFactory partitionFactory;
+    private final IndexConfig indexConfig;
+    private final MetricsInterceptor metrics;
+    private final MetricsHttpServer metricsHttpServer;
     private final org.apache.directory.server.ldap.LdapServer ldapServer;
+    private final boolean bulkImport;
+    private final int importThreads;
+    private final DirectoryBaseline baseline;
+    private final MemberOfInterceptor memberOf;
+    private final SubstringIndexInterceptor substringIndex;
+    private final SearchOptimizerInterceptor searchOptimizer;
+    private final CachingSimpleAuthenticator bindCache;
+    private final ExecutorService workerPool;
+    private final AdmissionControlFilter admissionControl;
+    private final TlsHandshakeCounter tlsHandshakes;
 
     // Public methods --------------------------------------------------------
 
@@ -89,14 +125,82 @@ public class LdapServer {
         requireNonNull(cliArguments, "The CLIArguments instance has to be provided");
         long startTime = System.currentTimeMillis();
 
-        InMemoryDirectoryServiceFactory dsFactory = new InMemoryDirectoryServiceFactory();
+        // invalid network settings are reported before the directory service starts
+        final TransportConfig transportConfig = TransportConfig.parse(cliArguments);
+        final TlsConfig tlsConfig = TlsConfig.parse(cliArguments);
+        tlsHandshakes = cliArguments.getSslPort() != null ? new TlsHandshakeCounter() : null;
+        if (cliArguments.getMaxConnections() > 0 || cliArguments.getMaxConnectionsPerIp() > 0
+                || cliArguments.getMaxInFlight() > 0) {
+            admissionControl = new AdmissionControlFilter(cliArguments.getMaxConnections(),
+                    cliArguments.getMaxConnectionsPerIp(), cliArguments.getMaxInFlight());
+        } else {
+            admissionControl = null;
+        }
+
+        dsFactory = createDirectoryServiceFactory(cliArguments);
+        dsFactory.setCacheConfig(CacheConfig.parse(cliArguments.getCacheSizes(), cliArguments.getCacheTtls(),
+                cliArguments.getCacheEvictionPolicy()));
+        dsFactory.setSharedSchema(cliArguments.isSharedSchema());
         dsFactory.init("ds");
 
         directoryService = dsFactory.getDirectoryService();
+        partitionFactory = dsFactory.getPartitionFactory();
+        indexConfig = IndexConfig.parse(cliArguments.getIndexes(), cliArguments.getSubstringIndexes(),
+                !cliArguments.isNoDefaultIndexes());
         System.out.println("Directory service started in " + (System.currentTimeMillis() - startTime) + "ms");
         directoryService.setAllowAnonymousAccess(cliArguments.isAllowAnonymous());
-//        directoryService.addLast(new CountLookupInterceptor());
-        importLdif(cliArguments.getLdifFiles());
+        bindCache = cliArguments.getBindCacheSize() > 0
+                ? installBindCache(cliArguments.getBindCacheSize(), cliArguments.getBindCacheTtl())
+                : null;
+        bulkImport = cliArguments.isBulkImport();
+        importThreads = cliArguments.getImportThreads();
+        final ValueInterner interner = cliArguments.isInternValues() ? new ValueInterner() : null;
+        if (interner != null) {
+            directoryService.addLast(new ValueInterningInterceptor(interner));
+        }
+        if (cliArguments.getSnapshotLoad() != null) {
+            DirectorySnapshot.load(directoryService, new File(cliArguments.getSnapshotLoad()), this::createPartition);
+            if (!cliArguments.getLdifFiles().isEmpty()) {
+                importLdif(cliArguments.getLdifFiles());
+            }
+        } else {
+            importLdif(cliArguments.getLdifFiles());
+        }
+        if (cliArguments.getGenerateUsers() > 0 || cliArguments.getGenerateGroups() > 0) {
+            new DirectoryGenerator(directoryService).setUsers(cliArguments.getGenerateUsers())
+                    .setGroups(cliArguments.getGenerateGroups()).setMembersPerGroup(cliArguments.getGenerateMembers())
+                    .setOuLevels(cliArguments.getGenerateOuLevels()).setOuFanout(cliArguments.getGenerateOuFanout())
+                    .setSeed(cliArguments.getGenerateSeed()).setThreads(importThreads).generate();
+        }
+        if (interner != null) {
+            interner.trim();
+        }
+        if (cliArguments.isSearchOptimizer()) {
+            searchOptimizer = new SearchOptimizerInterceptor();
+            directoryService.addLast(searchOptimizer);
+        } else {
+            searchOptimizer = null;
+        }
+        if (indexConfig.hasSubstringIndexes()) {
+            substringIndex = new SubstringIndexInterceptor(indexConfig);
+            directoryService.addLast(substringIndex);
+        } else {
+            substringIndex = null;
+        }
+        directoryService.addLast(new SubstringFilterInterceptor());
+        if (cliArguments.isMemberOf()) {
+            memberOf = new MemberOfInterceptor();
+            directoryService.addFirst(memberOf);
+        } else {
+            memberOf = null;
+        }
+        if (cliArguments.isHeapReport()) {
+            System.out.println(HeapReport.create(interner));
+        }
+        if (cliArguments.getSnapshotSave() != null) {
+            saveSnapshot(new File(cliArguments.getSnapshotSave()));
+        }
+        baseline = cliArguments.isResetBaseline() ? DirectoryBaseline.capture(directoryService) : null;
         String customPassword = cliArguments.getAdminPassword();
         if (customPassword != null) {
             Modification replacePwd = new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, "userPassword",
@@ -105,25 +209,87 @@ public class LdapServer {
             directoryService.getAdminSession().modify(adminDn, replacePwd);
         }
 
-        ldapServer = new org.apache.directory.server.ldap.LdapServer();
-        TcpTransport tcp = new TcpTransport(cliArguments.getBindAddress(), cliArguments.getPort());
-        if (cliArguments.getSslPort() != null) {
-            TcpTransport ldapsTcp = new TcpTransport(cliArguments.getBindAddress(), cliArguments.getSslPort());
-            ldapsTcp.setEnableSSL(true);
-            ldapsTcp.setEnabledProtocols(cliArguments.getSslEnabledProtocols());
-            ldapsTcp.setEnabledCiphers(cliArguments.getSslCipherSuite());
-            ldapsTcp.setNeedClientAuth(cliArguments.isSslNeedClientAuth());
-            ldapsTcp.setWantClientAuth(cliArguments.isSslWantClientAuth());
-
-            ldapServer.setKeystoreFile(cliArguments.getSslKeystoreFile());
-            ldapServer.setCertificatePassword(cliArguments.getSslKeystorePassword());
-            ldapServer.setTransports(tcp, ldapsTcp);
+        if (cliArguments.isMetrics() || cliArguments.getMetricsPort() != null) {
+            metrics = new MetricsInterceptor();
+            directoryService.addFirst(metrics);
         } else {
-            ldapServer.setTransports(tcp);
+            metrics = null;
         }
-        ldapServer.setDirectoryService(directoryService);
 
-        ldapServer.start();
+        final ExecutorService pool = transportConfig.createWorkerPool();
+        workerPool = pool;
+        final Set<IoFilterChainBuilder> configuredChains = Collections.newSetFromMap(new IdentityHashMap<>());
+        final org.apache.directory.server.ldap.LdapServer server = new org.apache.directory.server.ldap.LdapServer() {
+            /**
+             * The start calls this for each transport after its filter chain is created and before the port is bound, so
+             * no connection is accepted with the default ApacheDS filters.
+             */
+            @Override
+            public IoHandler getHandler() {
+                for (Transport transport : getTransports()) {
+                    IoAcceptor acceptor = transport.getAcceptor();
+                    if (acceptor != null && acceptor.getFilterChain().contains(TransportConfig.CODEC_FILTER)
+                            && configuredChains.add(acceptor.getFilterChainBuilder())) {
+                        configureTransport(transport, getKeyManagerFactory(), transportConfig, tlsConfig, pool);
+                    }
+                }
+                return super.getHandler();
+            }
+        };
+        ldapServer = server;
+        try {
+            TcpTransport tcp = new TcpTransport(cliArguments.getBindAddress(), cliArguments.getPort());
+            transportConfig.configure(tcp);
+            if (cliArguments.getSslPort() != null) {
+                TcpTransport ldapsTcp = new TcpTransport(cliArguments.getBindAddress(), cliArguments.getSslPort());
+                transportConfig.configure(ldapsTcp);
+                ldapsTcp.setEnableSSL(true);
+                ldapsTcp.setEnabledProtocols(cliArguments.getSslEnabledProtocols());
+                ldapsTcp.setEnabledCiphers(cliArguments.getSslCipherSuite());
+                ldapsTcp.setNeedClientAuth(cliArguments.isSslNeedClientAuth());
+                ldapsTcp.setWantClientAuth(cliArguments.isSslWantClientAuth());
+
+                server.setKeystoreFile(cliArguments.getSslKeystoreFile());
+                server.setCertificatePassword(cliArguments.getSslKeystorePassword());
+                server.setTransports(tcp, ldapsTcp);
+            } else {
+                server.setTransports(tcp);
+            }
+            server.setDirectoryService(directoryService);
+            if (baseline != null) {
+                server.addExtendedOperationHandler(new ResetExtendedOperationHandler(this));
+            }
+
+            if (transportConfig.getMaxPduSize() != null) {
+                server.setMaxPDUSize(transportConfig.getMaxPduSize());
+            }
+
+            server.start();
+            for (Transport transport : server.getTransports()) {
+                transportConfig.configureSendBuffer(transport);
+            }
+
+            if (cliArguments.getMetricsPort() != null) {
+                metricsHttpServer = new MetricsHttpServer(this, cliArguments.getBindAddress(), cliArguments.getMetricsPort());
+                metricsHttpServer.start();
+            } else {
+                metricsHttpServer = null;
+            }
+        } catch (Exception e) {
+            // don't leave the worker threads and the bound ports behind
+            try {
+                if (server.isStarted()) {
+                    server.stop();
+                }
+                if (pool != null) {
+                    pool.shutdownNow();
+                }
+                directoryService.shutdown();
+            } catch (Exception cleanupException) {
+                e.addSuppressed(cleanupException);
+            }
+            throw e;
+        }
 
         System.out.println("You can connect to the server now");
         final String host;
@@ -136,6 +302,10 @@ public class LdapServer {
         if (cliArguments.getSslPort() != null) {
             System.out.println("          ldaps://" + formatPossibleIpv6(host) + ":" + cliArguments.getSslPort());
         }
+        if (metricsHttpServer != null) {
+            System.out.println("Metrics:  http://" + formatPossibleIpv6(host) + ":" + cliArguments.getMetricsPort()
+                    + MetricsHttpServer.PROMETHEUS_PATH + " (JSON: " + MetricsHttpServer.JSON_PATH + ")");
+        }
         System.out.println("User DN:  uid=admin,ou=system");
         System.out.println("Password: " + (customPassword != null ? "***" : "secret"));
         System.out.println("LDAP server started in " + (System.currentTimeMillis() - startTime) + "ms");
@@ -147,56 +317,196 @@ public class LdapServer {
      * @throws Exception
      */
     public void stop() throws Exception {
+        if (metricsHttpServer != null) {
+            metricsHttpServer.stop();
+        }
         ldapServer.stop();
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
         directoryService.shutdown();
     }
 
     /**
-     * Imports given LDIF file to the directory using given directory service and schema manager.
+     * Returns the underlying directory service.
+     */
+    public DirectoryService getDirectoryService() {
+        return directoryService;
+    }
+
+    /**
+     * Returns the operation metrics.
      *
-     * @param ldifFiles
-     * @throws Exception
+     * @return metrics interceptor or <code>null</code> if the metrics are not enabled (<code>--metrics</code> argument)
      */
-    private void importLdif(List<String> ldifFiles) throws Exception {
-        if (ldifFiles == null || ldifFiles.isEmpty()) {
-            System.out.println("Importing default data\n");
-            importLdif(new LdifReader(LdapServer.class.getResourceAsStream("/" + DEFAULT_LDIF_FILENAME)));
-        } else {
-            for (String ldifFile : ldifFiles) {
-                System.out.println("Importing " + ldifFile + "\n");
-                importLdif(new LdifReader(ldifFile) {
-                    @Override
-                    protected LdifEntry parseEntry() throws LdapException {
-                        // Workaround for limitation in LdifReader, which fails
-                        // to parse LDIF files with multiple entries, when at
-                        // least one of them has a changetype entry
-                        this.containsChanges = false;
-                        this.containsEntries = false;
-                        return super.parseEntry();
-                    }
-                });
+    public MetricsInterceptor getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the HTTP server which publishes the metrics.
+     *
+     * @return the server or <code>null</code> if it's not enabled (<code>--metrics-port</code> argument)
+     */
+    public MetricsHttpServer getMetricsHttpServer() {
+        return metricsHttpServer;
+    }
+
+    /**
+     * Returns the group membership index.
+     *
+     * @return interceptor or <code>null</code> if the index is not enabled (<code>--member-of</code> argument)
+     */
+    public MemberOfInterceptor getMemberOf() {
+        return memberOf;
+    }
+
+    /**
+     * Returns the substring indexes.
+     *
+     * @return interceptor or <code>null</code> if no substring index is configured (<code>--substring-index</code> argument)
+     */
+    public SubstringIndexInterceptor getSubstringIndex() {
+        return substringIndex;
+    }
+
+    /**
+     * Returns the search optimizer with the partition statistics.
+     *
+     * @return interceptor or <code>null</code> if the optimizer is not enabled (<code>--search-optimizer</code> argument)
+     */
+    public SearchOptimizerInterceptor getSearchOptimizer() {
+        return searchOptimizer;
+    }
+
+    /**
+     * Returns the authenticator which caches verified simple bind credentials.
+     *
+     * @return authenticator or <code>null</code> if the cache is not enabled (<code>--bind-cache-size</code> argument)
+     */
+    public CachingSimpleAuthenticator getBindCache() {
+        return bindCache;
+    }
+
+    /**
+     * Returns the connection and operation limits.
+     *
+     * @return filter or <code>null</code> if no limit is configured (<code>--max-connections</code>,
+     *         <code>--max-connections-per-ip</code>, <code>--max-in-flight</code> arguments)
+     */
+    public AdmissionControlFilter getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * Returns the counters of full and resumed TLS handshakes.
+     *
+     * @return counter or <code>null</code> if the LDAPS transport is not enabled (<code>--ssl-port</code> argument)
+     */
+    public TlsHandshakeCounter getTlsHandshakes() {
+        return tlsHandshakes;
+    }
+
+    /**
+     * Returns number of open client connections (over all transports).
+     */
+    public int getConnectionCount() {
+        int count = 0;
+        for (Transport transport : ldapServer.getTransports()) {
+            if (transport.getAcceptor() != null) {
+                count += transport.getAcceptor().getManagedSessionCount();
             }
         }
+        return count;
     }
 
-    private void importLdif(LdifReader ldifReader) throws Exception {
-        try {
-            for (LdifEntry ldifEntry : ldifReader) {
-                checkPartition(ldifEntry);
-                System.out.print(ldifEntry.toString());
-                if (ldifEntry.getChangeType() == ChangeType.Modify) {
-                    directoryService.getAdminSession().modify(ldifEntry.getDn(), ldifEntry.getModifications());
-                } else if (ldifEntry.getChangeType() == ChangeType.None || ldifEntry.getChangeType() == ChangeType.Add ) {
-                    directoryService.getAdminSession()
-                            .add(new DefaultEntry(directoryService.
-                                    getSchemaManager(), ldifEntry.getEntry()));
-                } else {
-                    throw new IllegalStateException("Unknown change type: " + ldifEntry.getChangeType());
+    /**
+     * Returns number of entries in each user partition (partition ID -&gt; entry count).
+     */
+    public Map<String, Long> getPartitionEntryCounts() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Partition partition : directoryService.getPartitions()) {
+            if (BulkLoader.isUserPartition(partition) && partition instanceof Store) {
+                try {
+                    result.put(partition.getId(), ((Store) partition).count());
+                } catch (Exception e) {
+                    result.put(partition.getId(), -1L);
                 }
+            } else if (BulkLoader.isUserPartition(partition) && partition instanceof MvccPartition) {
+                result.put(partition.getId(), (long) ((MvccPartition) partition).count());
+            } else if (BulkLoader.isUserPartition(partition) && partition instanceof OffHeapPartition) {
+                result.put(partition.getId(), (long) ((OffHeapPartition) partition).count());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns statistics (size, hits, misses, evictions) of the directory service caches.
+     */
+    public List<CacheStatistics> getCacheStatistics() {
+        List<CacheStatistics> result = dsFactory.getCacheStatistics();
+        if (bindCache != null) {
+            result.add(bindCache.getStatistics());
+        }
+        return result;
+    }
+
+    /**
+     * Saves all user partitions to the given file. The file can be later used with the <code>--snapshot-load</code> argument.
+     *
+     * @param file target snapshot file
+     * @throws Exception
+     */
+    public void saveSnapshot(File file) throws Exception {
+        DirectorySnapshot.save(directoryService, file);
+    }
+
+    /**
+     * Rolls all user partitions back to the state right after the initial data import. It's a cheap alternative to a server
+     * restart between tests. Operations running during the reset may fail. Clients can trigger the reset with the
+     * {@link ResetExtendedOperationHandler#OID} extended operation.
+     *
+     * @throws IllegalStateException if the server was started without the <code>--reset-baseline</code> argument
+     */
+    public synchronized void reset() throws Exception {
+        if (baseline == null) {
+            throw new IllegalStateException("The reset baseline was not captured (use the --reset-baseline argument)");
+        }
+        final long start = System.currentTimeMillis();
+        long count = baseline.restore(directoryService, this::createPartition);
+        if (searchOptimizer != null) {
+            searchOptimizer.rebuild();
+        }
+        if (substringIndex != null) {
+            substringIndex.rebuild();
+        }
+        if (memberOf != null) {
+            memberOf.rebuild();
+        }
+        if (bindCache != null) {
+            bindCache.clear();
+        }
+        System.out.println("Directory reset to " + count + " baseline entries in " + (System.currentTimeMillis() - start)
+                + "ms");
+    }
+
+    /**
+     * Imports given LDIF files to the directory. The default LDIF is used if no file is provided.
+     *
+     * @param ldifFiles
+     * @throws Exception
+     */
+    void importLdif(List<String> ldifFiles) throws Exception {
+        List<LdifSource> sources = new ArrayList<LdifSource>();
+        if (ldifFiles == null || ldifFiles.isEmpty()) {
+            sources.add(LdifSource.fromResource("default data", "/" + DEFAULT_LDIF_FILENAME));
+        } else {
+            for (String ldifFile : ldifFiles) {
+                sources.add(LdifSource.fromFile(ldifFile));
             }
-        } finally {
-            IOUtils.closeQuietly(ldifReader);
         }
+        new LdifImportPipeline(directoryService, this::checkPartition, bulkImport, importThreads).importLdif(sources);
     }
 
     private void checkPartition(LdifEntry ldifEntry) throws Exception {
@@ -206,11 +516,79 @@ public class LdapServer {
             directoryService.getAdminSession().exists(parent);
         } catch (Exception e) {
             System.out.println("Creating new partition for DN=" + dn + "\n");
-            AvlPartition partition = new AvlPartition(directoryService.getSchemaManager());
-            partition.setId(dn.getName());
-            partition.setSuffixDn(dn);
-            directoryService.addPartition(partition);
+            createPartition(dn.getName(), dn);
+        }
+    }
+
+    /**
+     * Replaces the simple authenticator of the authentication interceptor with the caching one.
+     */
+    private CachingSimpleAuthenticator installBindCache(int maxSize, long ttlSeconds) {
+        AuthenticationInterceptor authnInterceptor = (AuthenticationInterceptor) directoryService
+                .getInterceptor(InterceptorEnum.AUTHENTICATION_INTERCEPTOR.getName());
+        List<Authenticator> authenticators = new ArrayList<Authenticator>();
+        Dn baseDn = null;
+        for (Authenticator authenticator : authnInterceptor.getAuthenticators()) {
+            if (authenticator instanceof SimpleAuthenticator) {
+                baseDn = ((SimpleAuthenticator) authenticator).getBaseDn();
+            } else {
+                authenticators.add(authenticator);
+            }
+        }
+        CachingSimpleAuthenticator result = new CachingSimpleAuthenticator(maxSize, ttlSeconds, baseDn);
+        authenticators.add(result);
+        authnInterceptor.setAuthenticators(authenticators.toArray(new Authenticator[authenticators.size()]));
+        return result;
+    }
+
+    /**
+     * Installs the request executor, socket options, TLS settings and admission control to a transport which isn't bound
+     * yet.
+     */
+    private void configureTransport(Transport transport, KeyManagerFactory keyManagerFactory,
+            TransportConfig transportConfig, TlsConfig tlsConfig, ExecutorService pool) {
+        transportConfig.configureSessions(transport, pool);
+        if (transport.isSSLEnabled()) {
+            try {
+                tlsConfig.install(transport, keyManagerFactory, tlsHandshakes);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Unable to apply the TLS settings to transport " + transport, e);
+            }
+        }
+        if (admissionControl != null) {
+            admissionControl.install(transport);
+        }
+    }
+
+    private static InMemoryDirectoryServiceFactory createDirectoryServiceFactory(CLIArguments cliArguments) throws Exception {
+        if (cliArguments.isMvccPartitions() && cliArguments.isOffHeapPartitions()) {
+            throw new IllegalArgumentException("The --mvcc-partitions and --off-heap-partitions can't be combined");
+        }
+        if (cliArguments.isMvccPartitions()) {
+            return new InMemoryDirectoryServiceFactory(new MvccDirectoryService(), new MvccPartitionFactory());
+        }
+        if (cliArguments.isOffHeapPartitions()) {
+            DirectoryService directoryService = new DefaultDirectoryService();
+            directoryService.setShutdownHookEnabled(false);
+            return new InMemoryDirectoryServiceFactory(directoryService, new OffHeapPartitionFactory());
+        }
+        return new InMemoryDirectoryServiceFactory();
+    }
+
+    private Partition createPartition(String id, Dn suffixDn) throws Exception {
+        SchemaManager schemaManager = directoryService.getSchemaManager();
+        Partition partition = partitionFactory.createPartition(schemaManager, directoryService.getDnFactory(), id,
+                suffixDn.getName(), PARTITION_CACHE_SIZE,
+                new File(directoryService.getInstanceLayout().getPartitionsDirectory(), id));
+        for (String attributeId : indexConfig.getIndexedAttributes(schemaManager, suffixDn)) {
+            if (schemaManager.getAttributeType(attributeId) != null) {
+                partitionFactory.addIndex(partition, attributeId, PARTITION_CACHE_SIZE);
+            } else if (!IndexConfig.DEFAULT_ATTRIBUTES.contains(attributeId)) {
+                System.out.println("Skipping index for unknown attribute " + attributeId);
+            }
         }
+        directoryService.addPartition(partition);
+        return partition;
     }
 
     private String formatPossibleIpv6(String host) {
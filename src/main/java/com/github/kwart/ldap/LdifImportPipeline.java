@@ -0,0 +1,400 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+
+/**
+ * Multi-stage LDIF import. A reader thread per LDIF source splits the input into chunks of records, the chunks are parsed and
+ * normalized in a pool of parser threads and a single writer (the calling thread) commits the results in the original order.
+ * Entries which come before their parent are held back until the parent is written. Failures of the reader and parser
+ * threads are thrown by {@link #importLdif(List)} unchanged.
+ */
+public class LdifImportPipeline {
+
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int RECORDS_PER_CHUNK = 500;
+
+    private final DirectoryService directoryService;
+    private final SchemaManager schemaManager;
+    private final PartitionChecker partitionChecker;
+    private final BulkLoader bulkLoader;
+    private final int threads;
+
+    private final Map<String, List<ParsedRecord>> waitingForParent = new HashMap<String, List<ParsedRecord>>();
+    private long count;
+
+    /**
+     * Constructor.
+     *
+     * @param directoryService target directory service
+     * @param partitionChecker called for each record before it's written, it can create missing partitions
+     * @param bulkImport if <code>true</code> the entries are written directly into partitions (see {@link BulkLoader})
+     * @param threads number of parser threads
+     */
+    public LdifImportPipeline(DirectoryService directoryService, PartitionChecker partitionChecker, boolean bulkImport,
+            int threads) {
+        this.directoryService = directoryService;
+        this.schemaManager = directoryService.getSchemaManager();
+        this.partitionChecker = partitionChecker;
+        this.bulkLoader = bulkImport ? new BulkLoader(directoryService) : null;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Imports given LDIF sources. The sources are parsed concurrently, but written one after another.
+     *
+     * @param sources LDIF sources
+     * @return number of imported records
+     * @throws Exception
+     */
+    public long importLdif(List<LdifSource> sources) throws Exception {
+        final long start = System.currentTimeMillis();
+        // not a ForkJoinPool, it would wrap checked exceptions of the parser tasks
+        final ExecutorService parserPool = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("ldif-parser"));
+        final ExecutorService readerPool = Executors.newCachedThreadPool(new DaemonThreadFactory("ldif-reader"));
+        try {
+            List<BlockingQueue<Future<List<ParsedRecord>>>> queues = new ArrayList<BlockingQueue<Future<List<ParsedRecord>>>>();
+            List<Future<?>> readers = new ArrayList<Future<?>>();
+            for (LdifSource source : sources) {
+                BlockingQueue<Future<List<ParsedRecord>>> queue = new ArrayBlockingQueue<Future<List<ParsedRecord>>>(
+                        threads * 2);
+                queues.add(queue);
+                readers.add(readerPool.submit(new ChunkReader(source, queue, parserPool)));
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                System.out.println("Importing " + sources.get(i).getName() + "\n");
+                BlockingQueue<Future<List<ParsedRecord>>> queue = queues.get(i);
+                while (true) {
+                    Future<List<ParsedRecord>> chunk = queue.take();
+                    List<ParsedRecord> records = getResult(chunk);
+                    if (records == null) {
+                        break;
+                    }
+                    for (ParsedRecord record : records) {
+                        write(record);
+                    }
+                }
+                getResult(readers.get(i));
+            }
+            if (!waitingForParent.isEmpty()) {
+                String parent = waitingForParent.keySet().iterator().next();
+                throw new LdapNoSuchObjectException("Parent entry " + parent + " doesn't exist (required by "
+                        + waitingForParent.get(parent).get(0).ldifEntry.getDn() + ")");
+            }
+        } finally {
+            readerPool.shutdownNow();
+            parserPool.shutdownNow();
+        }
+        long duration = Math.max(1L, System.currentTimeMillis() - start);
+        System.out.println("Imported " + count + " LDIF records in " + duration + "ms (" + (count * 1000L / duration)
+                + " records/s)\n");
+        return count;
+    }
+
+    private void write(ParsedRecord record) throws Exception {
+        LdifEntry ldifEntry = record.ldifEntry;
+        partitionChecker.checkPartition(ldifEntry);
+        if (bulkLoader == null) {
+            System.out.print(ldifEntry.toString());
+        }
+        if (ldifEntry.getChangeType() == ChangeType.Modify) {
+            directoryService.getAdminSession().modify(ldifEntry.getDn(), ldifEntry.getModifications());
+            count++;
+        } else if (ldifEntry.getChangeType() == ChangeType.None || ldifEntry.getChangeType() == ChangeType.Add) {
+            add(record);
+        } else {
+            throw new IllegalStateException("Unknown change type: " + ldifEntry.getChangeType());
+        }
+    }
+
+    private void add(ParsedRecord record) throws Exception {
+        if (record.entry == null) {
+            normalize(record);
+        }
+        try {
+            if (bulkLoader != null) {
+                Partition partition = directoryService.getPartitionNexus().getPartition(record.entry.getDn());
+                if (BulkLoader.isUserPartition(partition)) {
+                    if (record.prepareFailure != null) {
+                        throw record.prepareFailure;
+                    }
+                    bulkLoader.write(partition, record.prepared);
+                } else {
+                    directoryService.getAdminSession().add(record.entry);
+                }
+            } else {
+                directoryService.getAdminSession().add(record.entry);
+            }
+            count++;
+        } catch (LdapNoSuchObjectException e) {
+            String parent = record.entry.getDn().getParent().getNormName();
+            List<ParsedRecord> children = waitingForParent.get(parent);
+            if (children == null) {
+                children = new ArrayList<ParsedRecord>();
+                waitingForParent.put(parent, children);
+            }
+            children.add(record);
+            return;
+        }
+        List<ParsedRecord> children = waitingForParent.remove(record.entry.getDn().getNormName());
+        if (children != null) {
+            for (ParsedRecord child : children) {
+                add(child);
+            }
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Parses one chunk of LDIF text and normalizes the entries. Runs in the parser pool.
+     */
+    private List<ParsedRecord> parse(String chunk) throws LdapException, IOException {
+        LdifReader reader = new LenientLdifReader();
+        try {
+            List<LdifEntry> ldifEntries = reader.parseLdif(chunk);
+            List<ParsedRecord> records = new ArrayList<ParsedRecord>(ldifEntries.size());
+            for (LdifEntry ldifEntry : ldifEntries) {
+                ParsedRecord record = new ParsedRecord(ldifEntry);
+                if (ldifEntry.getChangeType() == ChangeType.None || ldifEntry.getChangeType() == ChangeType.Add) {
+                    try {
+                        normalize(record);
+                    } catch (LdapException e) {
+                        // the entry may depend on schema changes from preceding records, the writer will retry
+                        record.entry = null;
+                    }
+                }
+                records.add(record);
+            }
+            return records;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void normalize(ParsedRecord record) throws LdapException {
+        record.entry = new DefaultEntry(schemaManager, record.ldifEntry.getEntry());
+        if (bulkLoader != null) {
+            try {
+                // the LDIF entry isn't schema aware, so the syntax of its values is checked
+                record.prepared = bulkLoader.prepare(record.ldifEntry.getEntry());
+            } catch (LdapException e) {
+                // only relevant when the entry goes to a user partition
+                record.prepareFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Splits LDIF source into chunks of records and submits them to the parser pool.
+     */
+    private class ChunkReader implements Callable<Void> {
+
+        private final LdifSource source;
+        private final BlockingQueue<Future<List<ParsedRecord>>> queue;
+        private final ExecutorService parserPool;
+
+        ChunkReader(LdifSource source, BlockingQueue<Future<List<ParsedRecord>>> queue, ExecutorService parserPool) {
+            this.source = source;
+            this.queue = queue;
+            this.parserPool = parserPool;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(source.openStream(), StandardCharsets.UTF_8))) {
+                StringBuilder chunk = new StringBuilder();
+                int records = 0;
+                boolean inRecord = false;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        if (inRecord) {
+                            inRecord = false;
+                            if (++records >= RECORDS_PER_CHUNK) {
+                                submit(chunk.toString());
+                                chunk.setLength(0);
+                                records = 0;
+                                continue;
+                            }
+                        }
+                    } else {
+                        inRecord = true;
+                    }
+                    chunk.append(line).append('\n');
+                }
+                if (chunk.length() > 0) {
+                    submit(chunk.toString());
+                }
+            } finally {
+                // end of source marker
+                queue.put(parserPool.submit(new Callable<List<ParsedRecord>>() {
+                    @Override
+                    public List<ParsedRecord> call() {
+                        return null;
+                    }
+                }));
+            }
+            return null;
+        }
+
+        private void submit(final String chunk) throws InterruptedException {
+            queue.put(parserPool.submit(new Callable<List<ParsedRecord>>() {
+                @Override
+                public List<ParsedRecord> call() throws Exception {
+                    return parse(chunk);
+                }
+            }));
+        }
+    }
+
+    private static class ParsedRecord {
+        final LdifEntry ldifEntry;
+        Entry entry;
+        Entry prepared;
+        LdapException prepareFailure;
+
+        ParsedRecord(LdifEntry ldifEntry) {
+            this.ldifEntry = ldifEntry;
+        }
+    }
+
+    /**
+     * Callback which allows to create partitions for the imported entries.
+     */
+    public interface PartitionChecker {
+        void checkPartition(LdifEntry ldifEntry) throws Exception;
+    }
+
+    /**
+     * Named LDIF input.
+     */
+    public abstract static class LdifSource {
+
+        private final String name;
+
+        protected LdifSource(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public abstract InputStream openStream() throws IOException;
+
+        public static LdifSource fromFile(final String path) {
+            return new LdifSource(path) {
+                @Override
+                public InputStream openStream() throws IOException {
+                    return new FileInputStream(new File(path));
+                }
+            };
+        }
+
+        public static LdifSource fromResource(final String name, final String resourcePath) {
+            return new LdifSource(name) {
+                @Override
+                public InputStream openStream() throws IOException {
+                    InputStream is = LdifImportPipeline.class.getResourceAsStream(resourcePath);
+                    if (is == null) {
+                        throw new IOException("Resource not found: " + resourcePath);
+                    }
+                    return is;
+                }
+            };
+        }
+    }
+
+    /**
+     * LDIF reader which allows to mix entries and change records in one input.
+     */
+    static class LenientLdifReader extends LdifReader {
+
+        @Override
+        protected LdifEntry parseEntry() throws LdapException {
+            // Workaround for limitation in LdifReader, which fails
+            // to parse LDIF files with multiple entries, when at
+            // least one of them has a changetype entry
+            this.containsChanges = false;
+            this.containsEntries = false;
+            return super.parseEntry();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.FilterEncoder;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.NoVerificationTrustManager;
+
+/**
+ * Multi-threaded LDAP load generator. Each worker keeps its connections open for the whole test and runs a random mix of
+ * operations:
+ * <ul>
+ * <li>bind - simple bind of a user with known DN</li>
+ * <li>searchbind - the {@link AuthenticateWithSearch} flow: user search by uid and bind with the found DN</li>
+ * <li>search - user search by uid</li>
+ * </ul>
+ * With a target rate the latency is measured from the time when the operation should have started, so a slow server is not
+ * hidden by the generator waiting for it (coordinated omission).
+ */
+public class LoadGenerator {
+
+    public enum OperationType {
+        BIND, SEARCHBIND, SEARCH;
+    }
+
+    private static final long CONNECTION_TIMEOUT_MILLIS = 30000L;
+
+    private final LoadGeneratorArguments arguments;
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+    private final int[] mixWeights = new int[OperationType.values().length];
+    private final int mixTotal;
+    private final List<User> users = new ArrayList<User>();
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OperationType.values().length];
+    private final LongAdder[] errors = new LongAdder[OperationType.values().length];
+
+    private volatile boolean running;
+    private volatile boolean measuring;
+    private long measuredNanos;
+
+    /**
+     * The main.
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        final LoadGeneratorArguments arguments = new LoadGeneratorArguments();
+        final ExtCommander jCmd = new ExtCommander(arguments, args);
+        jCmd.setProgramName("java -cp ldap-server.jar " + LoadGenerator.class.getName());
+        jCmd.setUsageHead("LDAP load generator. It runs a mix of binds and searches against an LDAP server and reports"
+                + " throughput and latency percentiles.");
+        jCmd.setUsageTail("Examples:\n\n" //
+                + "$ java -cp ldap-server.jar " + LoadGenerator.class.getName() + " -c 16 -d 30\n" //
+                + " Runs the default operation mix as fast as possible with 16 workers for 30 seconds against ldap://127.0.0.1:10389\n\n" //
+                + "$ java -cp ldap-server.jar " + LoadGenerator.class.getName()
+                + " -u ldaps://127.0.0.1:10636 -r 5000 -m bind=1 -U jduke:theduke\n" //
+                + " Runs 5000 binds per second over LDAPs");
+        if (arguments.isHelp()) {
+            jCmd.usage();
+            return;
+        }
+        LoadGenerator loadGenerator = new LoadGenerator(arguments);
+        loadGenerator.run();
+        loadGenerator.printReport(System.out);
+    }
+
+    public LoadGenerator(LoadGeneratorArguments arguments) {
+        this.arguments = requireNonNull(arguments, "The LoadGeneratorArguments instance has to be provided");
+        URI uri = URI.create(arguments.getUrl());
+        ssl = "ldaps".equalsIgnoreCase(uri.getScheme());
+        if (!ssl && !"ldap".equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException("Unsupported URL scheme: " + arguments.getUrl());
+        }
+        String uriHost = uri.getHost() != null ? uri.getHost() : "127.0.0.1";
+        host = uriHost.startsWith("[") ? uriHost.substring(1, uriHost.length() - 1) : uriHost;
+        port = uri.getPort() > 0 ? uri.getPort() : (ssl ? 636 : 389);
+
+        int total = 0;
+        for (String weight : arguments.getMix().split(",")) {
+            String[] nameValue = weight.split("=");
+            if (nameValue.length != 2) {
+                throw new IllegalArgumentException("Wrong operation mix format: " + arguments.getMix());
+            }
+            int value = Integer.parseInt(nameValue[1].trim());
+            mixWeights[OperationType.valueOf(nameValue[0].trim().toUpperCase(Locale.ENGLISH)).ordinal()] = value;
+            total += value;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The operation mix doesn't contain any operation: " + arguments.getMix());
+        }
+        mixTotal = total;
+
+        List<String> userList = arguments.getUsers().isEmpty() ? Collections.singletonList("jduke:theduke")
+                : arguments.getUsers();
+        for (String user : userList) {
+            int pos = user.indexOf(':');
+            if (pos < 1) {
+                throw new IllegalArgumentException("Expected user format is uid:password: " + user);
+            }
+            users.add(new User(user.substring(0, pos), user.substring(pos + 1)));
+        }
+        for (OperationType type : OperationType.values()) {
+            latencies[type.ordinal()] = new LatencyHistogram();
+            errors[type.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * Runs the load test. The method returns after the warm-up and test duration elapse.
+     */
+    public void run() throws Exception {
+        resolveUserDns();
+        final int workerCount = arguments.getConnections();
+        final long intervalNanos = arguments.getRate() > 0 ? TimeUnit.SECONDS.toNanos(workerCount) / arguments.getRate()
+                : 0L;
+        running = true;
+        List<Worker> workers = new ArrayList<Worker>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < workerCount; i++) {
+            Worker worker = new Worker(start + i * intervalNanos / workerCount, intervalNanos);
+            worker.setName("ldap-load-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        System.out.println("Running " + workerCount + " workers against " + arguments.getUrl()
+                + (arguments.getRate() > 0 ? " with target rate " + arguments.getRate() + " ops/s" : ""));
+        if (arguments.getWarmup() > 0) {
+            TimeUnit.SECONDS.sleep(arguments.getWarmup());
+        }
+        final long measureStart = System.nanoTime();
+        measuring = true;
+        TimeUnit.SECONDS.sleep(arguments.getDuration());
+        measuring = false;
+        measuredNanos = System.nanoTime() - measureStart;
+        running = false;
+        for (Worker worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * Prints throughput and latencies of the measured period.
+     */
+    public void printReport(PrintStream out) {
+        double seconds = Math.max(1L, measuredNanos) / 1e9d;
+        long total = 0L;
+        out.println(String.format(Locale.ENGLISH, "%-11s %10s %8s %10s %9s %9s %9s %9s %9s", "operation", "count", "errors",
+                "ops/s", "p50[ms]", "p90[ms]", "p99[ms]", "p999[ms]", "max[ms]"));
+        for (OperationType type : OperationType.values()) {
+            LatencyHistogram latency = getLatency(type);
+            if (latency.getCount() == 0L) {
+                continue;
+            }
+            total += latency.getCount();
+            out.println(String.format(Locale.ENGLISH, "%-11s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f",
+                    type.name().toLowerCase(Locale.ENGLISH), latency.getCount(), getErrorCount(type),
+                    latency.getCount() / seconds, millis(latency.getPercentile(0.5)), millis(latency.getPercentile(0.9)),
+                    millis(latency.getPercentile(0.99)), millis(latency.getPercentile(0.999)), millis(latency.getMax())));
+        }
+        out.println(String.format(Locale.ENGLISH, "Total: %d operations in %.1fs (%.1f ops/s)", total, seconds,
+                total / seconds));
+    }
+
+    /**
+     * Returns latencies of the given operation type recorded in the measured period.
+     */
+    public LatencyHistogram getLatency(OperationType type) {
+        return latencies[type.ordinal()];
+    }
+
+    /**
+     * Returns number of failed operations of the given type in the measured period.
+     */
+    public long getErrorCount(OperationType type) {
+        return errors[type.ordinal()].sum();
+    }
+
+    private void resolveUserDns() throws Exception {
+        LdapNetworkConnection connection = createSearchConnection();
+        try {
+            for (User user : users) {
+                user.dn = searchUserDn(connection, user);
+                if (user.dn == null) {
+                    throw new IllegalStateException("User " + user.uid + " was not found under " + arguments.getBaseDn());
+                }
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private String searchUserDn(LdapNetworkConnection connection, User user) throws Exception {
+        EntryCursor cursor = connection.search(arguments.getBaseDn(), FilterEncoder.format(arguments.getFilter(), user.uid),
+                SearchScope.SUBTREE, "1.1");
+        try {
+            String dn = null;
+            while (cursor.next()) {
+                dn = cursor.get().getDn().getName();
+            }
+            return dn;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private LdapNetworkConnection createConnection() throws LdapException {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost(host);
+        config.setLdapPort(port);
+        config.setUseSsl(ssl);
+        if (ssl) {
+            config.setTrustManagers(new NoVerificationTrustManager());
+        }
+        config.setTimeout(CONNECTION_TIMEOUT_MILLIS);
+        LdapNetworkConnection connection = new LdapNetworkConnection(config);
+        connection.connect();
+        return connection;
+    }
+
+    private LdapNetworkConnection createSearchConnection() throws LdapException {
+        LdapNetworkConnection connection = createConnection();
+        connection.bind(arguments.getSearchDn(), arguments.getSearchPassword());
+        return connection;
+    }
+
+    private OperationType nextOperation(ThreadLocalRandom random) {
+        int value = random.nextInt(mixTotal);
+        for (OperationType type : OperationType.values()) {
+            value -= mixWeights[type.ordinal()];
+            if (value < 0) {
+                return type;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6d;
+    }
+
+    private static void closeQuietly(LdapNetworkConnection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static class User {
+        private final String uid;
+        private final String password;
+        private String dn;
+
+        User(String uid, String password) {
+            this.uid = uid;
+            this.password = password;
+        }
+    }
+
+    private class Worker extends Thread {
+
+        private final long intervalNanos;
+        private long nextStart;
+        private LdapNetworkConnection searchConnection;
+        private LdapNetworkConnection bindConnection;
+
+        Worker(long firstStart, long intervalNanos) {
+            this.nextStart = firstStart;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public void run() {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                while (running) {
+                    final long scheduled;
+                    if (intervalNanos > 0L) {
+                        scheduled = nextStart;
+                        nextStart += intervalNanos;
+                        long waitNanos;
+                        while ((waitNanos = scheduled - System.nanoTime()) > 0L && running) {
+                            LockSupport.parkNanos(waitNanos);
+                        }
+                    } else {
+                        scheduled = System.nanoTime();
+                    }
+                    OperationType type = nextOperation(random);
+                    User user = users.get(random.nextInt(users.size()));
+                    boolean failed = !execute(type, user);
+                    if (measuring) {
+                        latencies[type.ordinal()].record(System.nanoTime() - scheduled);
+                        if (failed) {
+                            errors[type.ordinal()].increment();
+                        }
+                    }
+                }
+            } finally {
+                closeQuietly(searchConnection);
+                closeQuietly(bindConnection);
+            }
+        }
+
+        private boolean execute(OperationType type, User user) {
+            try {
+                switch (type) {
+                    case BIND:
+                        bind(user.dn, user.password);
+                        return true;
+                    case SEARCHBIND:
+                        String dn = search(user);
+                        if (dn == null) {
+                            return false;
+                        }
+                        bind(dn, user.password);
+                        return true;
+                    case SEARCH:
+                        return search(user) != null;
+                    default:
+                        throw new IllegalStateException("Unsupported operation " + type);
+                }
+            } catch (Exception e) {
+                // the connection state is unknown after a failure, reconnect on the next operation
+                if (searchConnection != null && !searchConnection.isConnected()) {
+                    closeQuietly(searchConnection);
+                    searchConnection = null;
+                }
+                if (bindConnection != null && !bindConnection.isConnected()) {
+                    closeQuietly(bindConnection);
+                    bindConnection = null;
+                }
+                return false;
+            }
+        }
+
+        private void bind(String dn, String password) throws LdapException {
+            if (bindConnection == null) {
+                bindConnection = createConnection();
+            }
+            bindConnection.bind(dn, password);
+        }
+
+        private String search(User user) throws Exception {
+            if (searchConnection == null) {
+                searchConnection = createSearchConnection();
+            }
+            return searchUserDn(searchConnection, user);
+        }
+    }
+}
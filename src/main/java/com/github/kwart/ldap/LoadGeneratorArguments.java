@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Command line arguments for {@link LoadGenerator}.
+ */
+public class LoadGeneratorArguments {
+
+    @Parameter(names = { "--help", "-h" }, description = "shows this help and exits", help = true)
+    private boolean help;
+
+    @Parameter(names = { "--url", "-u" }, description = "takes [ldapURL] as argument - the tested server (ldap:// or ldaps://)")
+    private String url = "ldap://127.0.0.1:" + CLIArguments.DEFAULT_PORT;
+
+    @Parameter(names = { "--connections",
+            "-c" }, description = "takes [count] as argument and uses it as the number of concurrent workers. Each worker keeps one search connection and one user bind connection open for the whole test")
+    private int connections = 8;
+
+    @Parameter(names = { "--rate",
+            "-r" }, description = "takes [operationsPerSecond] as argument and uses it as the target rate for all workers together (0 means as fast as possible)")
+    private int rate;
+
+    @Parameter(names = { "--duration", "-d" }, description = "takes [seconds] as argument and uses it as the test duration")
+    private int duration = 60;
+
+    @Parameter(names = { "--warmup",
+            "-w" }, description = "takes [seconds] as argument and runs the load for the given time before the measurement starts")
+    private int warmup;
+
+    @Parameter(names = { "--mix",
+            "-m" }, description = "takes [bind=N,searchbind=N,search=N] as argument and uses the weights to choose the operations")
+    private String mix = "bind=40,searchbind=40,search=20";
+
+    @Parameter(names = { "--user",
+            "-U" }, description = "takes [uid:password] as argument and adds the user to the tested accounts. Can be used multiple times")
+    private List<String> users = new ArrayList<String>();
+
+    @Parameter(names = { "--base-dn", "-bd" }, description = "takes [baseDn] as argument and uses it as the user search base")
+    private String baseDn = "dc=ldap,dc=example";
+
+    @Parameter(names = { "--filter",
+            "-f" }, description = "takes [filterTemplate] as argument and uses it for user searches. The {0} is replaced by the user's uid")
+    private String filter = "(uid={0})";
+
+    @Parameter(names = { "--search-dn", "-sd" }, description = "takes [bindDn] as argument and uses it for search connections")
+    private String searchDn = "uid=admin,ou=system";
+
+    @Parameter(names = { "--search-password",
+            "-sw" }, description = "takes [password] as argument and uses it for search connections")
+    private String searchPassword = "secret";
+
+    public boolean isHelp() {
+        return help;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public String getMix() {
+        return mix;
+    }
+
+    public List<String> getUsers() {
+        return users;
+    }
+
+    public String getBaseDn() {
+        return baseDn;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public String getSearchDn() {
+        return searchDn;
+    }
+
+    public String getSearchPassword() {
+        return searchPassword;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.UsageEnum;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.filtering.EntryFilter;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.FilteringOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+
+/**
+ * ApacheDS Interceptor which maintains a {@link MembershipIndex} of <code>member</code> and <code>uniqueMember</code> values in
+ * user partitions and returns the virtual <code>memberOf</code> attribute (including nested groups) when it's requested. The
+ * index is updated by add, modify, delete, rename and move operations. Bulk loads and directory resets bypass the interceptor
+ * chain, so {@link #rebuild()} has to be called after them.
+ */
+public class MemberOfInterceptor extends BaseInterceptor {
+
+    public static final String NAME = "memberOfInterceptor";
+    public static final String MEMBER_OF_AT = "memberOf";
+
+    private static final String MEMBER_OF_OID = "1.2.840.113556.1.4.222";
+    private static final String MEMBER_OF_SCHEMA_DN = "m-oid=" + MEMBER_OF_OID + ",ou=attributeTypes,cn=other,ou=schema";
+
+    private final MembershipIndex index = new MembershipIndex();
+    private final EntryFilter memberOfFilter = new MemberOfFilter();
+
+    private AttributeType memberType;
+    private AttributeType uniqueMemberType;
+    private AttributeType memberOfType;
+
+    public MemberOfInterceptor() {
+        super(NAME);
+    }
+
+    @Override
+    public void init(DirectoryService directoryService) throws LdapException {
+        super.init(directoryService);
+        memberType = schemaManager.lookupAttributeTypeRegistry(SchemaConstants.MEMBER_AT);
+        uniqueMemberType = schemaManager.lookupAttributeTypeRegistry(SchemaConstants.UNIQUE_MEMBER_AT);
+        memberOfType = registerMemberOf();
+        try {
+            rebuild();
+        } catch (LdapException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LdapException("Building the membership index failed", e);
+        }
+    }
+
+    /**
+     * Recreates the membership index from the groups stored in the user partitions.
+     */
+    public void rebuild() throws Exception {
+        final long start = System.currentTimeMillis();
+        index.clear();
+        OrNode filter = new OrNode(new PresenceNode(memberType), new PresenceNode(uniqueMemberType));
+        for (Partition partition : directoryService.getPartitions()) {
+            if (!BulkLoader.isUserPartition(partition)) {
+                continue;
+            }
+            Cursor<Entry> cursor = directoryService.getAdminSession().search(partition.getSuffixDn(), SearchScope.SUBTREE,
+                    filter, AliasDerefMode.NEVER_DEREF_ALIASES, SchemaConstants.MEMBER_AT, SchemaConstants.UNIQUE_MEMBER_AT);
+            try {
+                while (cursor.next()) {
+                    Entry entry = cursor.get();
+                    updateGroup(entry.getDn(), entry);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        System.out.println("Membership index with " + index.getGroupCount() + " groups built in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Returns DNs of groups which contain the given entry as a <code>member</code> or <code>uniqueMember</code>.
+     *
+     * @param memberDn member DN
+     * @param nested flag which controls if groups containing the found groups are included too
+     */
+    public Set<String> getGroups(Dn memberDn, boolean nested) throws LdapInvalidDnException {
+        return index.getGroupNames(normalize(memberDn), nested);
+    }
+
+    /**
+     * Returns <code>true</code> if the virtual <code>memberOf</code> attribute is provided. It's not the case when the attribute
+     * can't be added to a read-only schema.
+     */
+    public boolean isMemberOfEnabled() {
+        return memberOfType != null;
+    }
+
+    @Override
+    public void add(AddOperationContext addContext) throws LdapException {
+        next(addContext);
+        Entry entry = addContext.getEntry();
+        if (entry.get(memberType) != null || entry.get(uniqueMemberType) != null) {
+            updateGroup(addContext.getDn(), entry);
+        }
+    }
+
+    @Override
+    public void modify(ModifyOperationContext modifyContext) throws LdapException {
+        next(modifyContext);
+        for (Modification modification : modifyContext.getModItems()) {
+            if (isMemberAttribute(modification.getAttribute())) {
+                Entry entry = modifyContext.getAlteredEntry();
+                if (entry == null) {
+                    entry = modifyContext.getSession().lookup(modifyContext.getDn(), SchemaConstants.MEMBER_AT,
+                            SchemaConstants.UNIQUE_MEMBER_AT);
+                }
+                updateGroup(modifyContext.getDn(), entry);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void delete(DeleteOperationContext deleteContext) throws LdapException {
+        next(deleteContext);
+        index.removeGroup(normalize(deleteContext.getDn()));
+    }
+
+    @Override
+    public void rename(RenameOperationContext renameContext) throws LdapException {
+        next(renameContext);
+        renameGroups(renameContext.getDn(), renameContext.getNewDn());
+    }
+
+    @Override
+    public void move(MoveOperationContext moveContext) throws LdapException {
+        next(moveContext);
+        renameGroups(moveContext.getDn(), moveContext.getNewDn());
+    }
+
+    @Override
+    public void moveAndRename(MoveAndRenameOperationContext moveAndRenameContext) throws LdapException {
+        next(moveAndRenameContext);
+        renameGroups(moveAndRenameContext.getDn(), moveAndRenameContext.getNewDn());
+    }
+
+    @Override
+    public Entry lookup(LookupOperationContext lookupContext) throws LdapException {
+        Entry entry = next(lookupContext);
+        if (entry != null && isMemberOfRequested(lookupContext)) {
+            addMemberOf(entry);
+        }
+        return entry;
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        EntryFilteringCursor cursor = next(searchContext);
+        if (isMemberOfRequested(searchContext)) {
+            cursor.addEntryFilter(memberOfFilter);
+        }
+        return cursor;
+    }
+
+    private AttributeType registerMemberOf() {
+        AttributeType attributeType = schemaManager.getAttributeType(MEMBER_OF_AT);
+        if (attributeType != null) {
+            return attributeType;
+        }
+        try {
+            directoryService.getAdminSession().add(new DefaultEntry(schemaManager, MEMBER_OF_SCHEMA_DN,
+                    "objectClass: top", "objectClass: metaTop", "objectClass: metaAttributeType", "m-oid: " + MEMBER_OF_OID,
+                    "m-name: " + MEMBER_OF_AT, "m-equality: distinguishedNameMatch",
+                    "m-syntax: " + SchemaConstants.DN_SYNTAX, "m-noUserModification: TRUE",
+                    "m-usage: directoryOperation"));
+            return schemaManager.lookupAttributeTypeRegistry(MEMBER_OF_AT);
+        } catch (LdapException e) {
+            System.out.println("The memberOf attribute can't be added to the schema, only the membership index is maintained: "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isMemberOfRequested(FilteringOperationContext context) {
+        if (memberOfType == null || context.isNoAttributes()) {
+            return false;
+        }
+        if (memberOfType.getUsage() == UsageEnum.USER_APPLICATIONS) {
+            return context.isAllUserAttributes() || context.contains(schemaManager, memberOfType);
+        }
+        return context.isAllOperationalAttributes() || context.contains(schemaManager, memberOfType);
+    }
+
+    private void addMemberOf(Entry entry) throws LdapException {
+        Set<String> groups = index.getGroupNames(normalize(entry.getDn()), true);
+        if (!groups.isEmpty()) {
+            entry.add(memberOfType, groups.toArray(new String[groups.size()]));
+        }
+    }
+
+    private boolean isMemberAttribute(Attribute attribute) {
+        if (attribute == null) {
+            return false;
+        }
+        AttributeType attributeType = attribute.getAttributeType();
+        if (attributeType == null) {
+            attributeType = schemaManager.getAttributeType(attribute.getUpId());
+        }
+        return memberType.equals(attributeType) || uniqueMemberType.equals(attributeType);
+    }
+
+    private void updateGroup(Dn groupDn, Entry entry) throws LdapException {
+        List<String> members = new ArrayList<String>();
+        addMembers(entry.get(memberType), false, members);
+        addMembers(entry.get(uniqueMemberType), true, members);
+        index.setMembers(normalize(groupDn), groupDn.getName(), members);
+    }
+
+    private void addMembers(Attribute attribute, boolean uniqueMember, List<String> members) {
+        if (attribute == null) {
+            return;
+        }
+        for (Value<?> value : attribute) {
+            String dn = value.getString();
+            // uniqueMember values may contain an optional UID suffix: dn#'0101'B
+            int uidStart = dn.lastIndexOf('#');
+            if (uniqueMember && uidStart > 0 && dn.endsWith("'B")) {
+                dn = dn.substring(0, uidStart);
+            }
+            try {
+                members.add(new Dn(schemaManager, dn).getNormName());
+            } catch (LdapInvalidDnException e) {
+                // not a DN, it can't match any entry
+            }
+        }
+    }
+
+    private void renameGroups(Dn oldDn, final Dn newDn) throws LdapException {
+        final Dn oldSchemaAwareDn = new Dn(schemaManager, oldDn.getName());
+        index.renameSubtree(normalize(oldDn), normalize(newDn), name -> {
+            try {
+                return newDn.add(new Dn(schemaManager, name).getDescendantOf(oldSchemaAwareDn)).getName();
+            } catch (LdapInvalidDnException e) {
+                return newDn.getName();
+            }
+        });
+    }
+
+    private String normalize(Dn dn) throws LdapInvalidDnException {
+        return dn.isSchemaAware() ? dn.getNormName() : new Dn(schemaManager, dn.getName()).getNormName();
+    }
+
+    private final class MemberOfFilter implements EntryFilter {
+
+        @Override
+        public boolean accept(SearchOperationContext searchContext, Entry entry) throws LdapException {
+            addMemberOf(entry);
+            return true;
+        }
+
+        @Override
+        public String toString(String tabs) {
+            return tabs + "MemberOfFilter";
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Group membership index keyed by normalized DNs. It keeps the members of each group and the reverse mapping (member -&gt;
+ * groups), so the groups of an entry are found without searching. Updates are serialized, reads don't lock.
+ */
+final class MembershipIndex {
+
+    private final Map<String, Group> groups = new ConcurrentHashMap<String, Group>();
+    private final Map<String, Set<String>> groupsByMember = new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * Sets the members of a group. An empty collection removes the group from the index.
+     *
+     * @param groupDn normalized group DN
+     * @param groupName user provided group DN (returned by {@link #getGroupNames(String, boolean)})
+     * @param members normalized member DNs
+     */
+    synchronized void setMembers(String groupDn, String groupName, Collection<String> members) {
+        removeGroup(groupDn);
+        if (members.isEmpty()) {
+            return;
+        }
+        Group group = new Group(groupName, Collections.unmodifiableSet(new HashSet<String>(members)));
+        groups.put(groupDn, group);
+        for (String member : group.members) {
+            Set<String> memberGroups = groupsByMember.get(member);
+            if (memberGroups == null) {
+                memberGroups = ConcurrentHashMap.newKeySet();
+                groupsByMember.put(member, memberGroups);
+            }
+            memberGroups.add(groupDn);
+        }
+    }
+
+    synchronized void removeGroup(String groupDn) {
+        Group group = groups.remove(groupDn);
+        if (group == null) {
+            return;
+        }
+        for (String member : group.members) {
+            Set<String> memberGroups = groupsByMember.get(member);
+            if (memberGroups != null) {
+                memberGroups.remove(groupDn);
+                if (memberGroups.isEmpty()) {
+                    groupsByMember.remove(member);
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-keys groups in the subtree of a renamed or moved entry.
+     *
+     * @param oldDn normalized DN of the subtree root before the change
+     * @param newDn normalized DN of the subtree root after the change
+     * @param nameMapper converts the user provided group DN to the new one
+     */
+    synchronized void renameSubtree(String oldDn, String newDn, UnaryOperator<String> nameMapper) {
+        if (oldDn.equals(newDn)) {
+            return;
+        }
+        List<String> renamed = new ArrayList<String>();
+        for (String groupDn : groups.keySet()) {
+            if (groupDn.equals(oldDn) || groupDn.endsWith("," + oldDn)) {
+                renamed.add(groupDn);
+            }
+        }
+        for (String groupDn : renamed) {
+            Group group = groups.get(groupDn);
+            String newGroupDn = groupDn.substring(0, groupDn.length() - oldDn.length()) + newDn;
+            removeGroup(groupDn);
+            setMembers(newGroupDn, nameMapper.apply(group.name), group.members);
+        }
+    }
+
+    synchronized void clear() {
+        groups.clear();
+        groupsByMember.clear();
+    }
+
+    /**
+     * Returns normalized DNs of groups which directly contain the given member.
+     */
+    Set<String> getGroups(String memberDn) {
+        Set<String> memberGroups = groupsByMember.get(memberDn);
+        return memberGroups == null ? Collections.<String> emptySet() : Collections.unmodifiableSet(memberGroups);
+    }
+
+    /**
+     * Returns user provided DNs of groups containing the given member. Nested groups (groups which are members of other groups)
+     * are resolved when the <code>nested</code> flag is set.
+     */
+    Set<String> getGroupNames(String memberDn, boolean nested) {
+        Set<String> visited = new HashSet<String>();
+        Set<String> result = new LinkedHashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>();
+        queue.add(memberDn);
+        while (!queue.isEmpty()) {
+            for (String groupDn : getGroups(queue.poll())) {
+                Group group = groups.get(groupDn);
+                if (group != null && visited.add(groupDn)) {
+                    result.add(group.name);
+                    if (nested) {
+                        queue.add(groupDn);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns normalized member DNs of the given group.
+     */
+    Set<String> getMembers(String groupDn) {
+        Group group = groups.get(groupDn);
+        return group == null ? Collections.<String> emptySet() : group.members;
+    }
+
+    int getGroupCount() {
+        return groups.size();
+    }
+
+    int getMemberCount() {
+        return groupsByMember.size();
+    }
+
+    private static final class Group {
+        final String name;
+        final Set<String> members;
+
+        Group(String name, Set<String> members) {
+            this.name = name;
+            this.members = members;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.github.kwart.ldap.MetricsInterceptor.Operation;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server (JDK <code>com.sun.net.httpserver</code>) which publishes server metrics. Paths:
+ * <ul>
+ * <li><code>/metrics</code> - Prometheus text format</li>
+ * <li><code>/metrics.json</code> - JSON; operation rates are computed for the last complete {@value #RATE_WINDOW_SECONDS} second
+ * window (for the time since the start until the first window completes)</li>
+ * </ul>
+ * Other paths get the 404 status.
+ */
+public class MetricsHttpServer {
+
+    public static final String PROMETHEUS_PATH = "/metrics";
+    public static final String JSON_PATH = "/metrics.json";
+    public static final int RATE_WINDOW_SECONDS = 10;
+
+    private static final double NANOS_PER_SECOND = 1000000000d;
+    private static final double NANOS_PER_MILLI = 1000000d;
+    private static final double[] QUANTILES = { 0.5d, 0.99d, 0.999d };
+    private static final String[] QUANTILE_NAMES = { "p50", "p99", "p999" };
+
+    private final LdapServer server;
+    private final HttpServer httpServer;
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService rateSampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-rates");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guarded by sampleRates()
+    private long windowStartNanos = startNanos;
+    private final long[] windowStartCounts = new long[Operation.values().length];
+    private volatile double[] windowRates;
+
+    public MetricsHttpServer(LdapServer server, String bindAddress, int port) throws IOException {
+        this.server = server;
+        httpServer = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        httpServer.createContext(PROMETHEUS_PATH, new MetricsHandler("text/plain; version=0.0.4; charset=utf-8") {
+            @Override
+            String render() {
+                return renderPrometheus();
+            }
+        });
+        httpServer.createContext(JSON_PATH, new MetricsHandler("application/json; charset=utf-8") {
+            @Override
+            String render() {
+                return renderJson();
+            }
+        });
+    }
+
+    public void start() {
+        rateSampler.scheduleAtFixedRate(this::sampleRates, RATE_WINDOW_SECONDS, RATE_WINDOW_SECONDS, TimeUnit.SECONDS);
+        httpServer.start();
+    }
+
+    public void stop() {
+        httpServer.stop(0);
+        rateSampler.shutdownNow();
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    String renderPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        MetricsInterceptor metrics = server.getMetrics();
+        if (metrics != null) {
+            header(sb, "ldap_operations_total", "counter", "Number of finished LDAP operations");
+            for (Operation operation : Operation.values()) {
+                sample(sb, "ldap_operations_total", "operation", name(operation), metrics.getCount(operation));
+            }
+            header(sb, "ldap_operation_errors_total", "counter", "Number of failed LDAP operations");
+            for (Operation operation : Operation.values()) {
+                sample(sb, "ldap_operation_errors_total", "operation", name(operation), metrics.getErrorCount(operation));
+            }
+            header(sb, "ldap_operation_latency_seconds", "summary", "Latency of LDAP operations");
+            for (Operation operation : Operation.values()) {
+                LatencyHistogram latency = metrics.getLatency(operation);
+                for (double quantile : QUANTILES) {
+                    sb.append("ldap_operation_latency_seconds{operation=\"").append(name(operation)).append("\",quantile=\"")
+                            .append(quantile).append("\"} ").append(latency.getPercentile(quantile) / NANOS_PER_SECOND)
+                            .append('\n');
+                }
+                long count = latency.getCount();
+                sample(sb, "ldap_operation_latency_seconds_sum", "operation", name(operation),
+                        latency.getMean() * count / NANOS_PER_SECOND);
+                sample(sb, "ldap_operation_latency_seconds_count", "operation", name(operation), count);
+            }
+        }
+        header(sb, "ldap_connections_active", "gauge", "Number of open client connections");
+        sb.append("ldap_connections_active ").append(server.getConnectionCount()).append('\n');
+        AdmissionControlFilter admissionControl = server.getAdmissionControl();
+        if (admissionControl != null) {
+            header(sb, "ldap_operations_in_flight", "gauge", "Number of LDAP operations queued or running");
+            sb.append("ldap_operations_in_flight ").append(admissionControl.getInFlightCount()).append('\n');
+            header(sb, "ldap_admission_rejected_total", "counter", "Number of rejected connections and operations");
+            sample(sb, "ldap_admission_rejected_total", "type", "connection", admissionControl.getRejectedConnections());
+            sample(sb, "ldap_admission_rejected_total", "type", "operation", admissionControl.getRejectedOperations());
+        }
+        TlsHandshakeCounter tlsHandshakes = server.getTlsHandshakes();
+        if (tlsHandshakes != null) {
+            header(sb, "ldap_tls_handshakes_total", "counter", "Number of completed TLS handshakes");
+            sample(sb, "ldap_tls_handshakes_total", "type", "full", tlsHandshakes.getFullHandshakes());
+            sample(sb, "ldap_tls_handshakes_total", "type", "resumed", tlsHandshakes.getResumedHandshakes());
+        }
+        header(sb, "ldap_partition_entries", "gauge", "Number of entries in user partitions");
+        for (Map.Entry<String, Long> entry : server.getPartitionEntryCounts().entrySet()) {
+            sample(sb, "ldap_partition_entries", "partition", entry.getKey(), entry.getValue());
+        }
+        SearchOptimizerInterceptor optimizer = server.getSearchOptimizer();
+        if (optimizer != null) {
+            header(sb, "ldap_optimizer_searches_total", "counter", "Number of searches processed by the search optimizer");
+            sample(sb, "ldap_optimizer_searches_total", "result", "all", optimizer.getSearches());
+            sample(sb, "ldap_optimizer_searches_total", "result", "reordered", optimizer.getReorderedSearches());
+            sample(sb, "ldap_optimizer_searches_total", "result", "impossible", optimizer.getImpossibleSearches());
+            header(sb, "ldap_optimizer_removed_branches_total", "counter", "Number of removed OR branches which can't match");
+            sb.append("ldap_optimizer_removed_branches_total ").append(optimizer.getRemovedBranches()).append('\n');
+            header(sb, "ldap_attribute_entries", "gauge", "Number of entries containing the attribute");
+            for (Map.Entry<String, Long> entry : optimizer.getAttributeCounts().entrySet()) {
+                sample(sb, "ldap_attribute_entries", "attribute", entry.getKey(), entry.getValue());
+            }
+        }
+        header(sb, "ldap_cache_size", "gauge", "Number of entries in the cache");
+        for (CacheStatistics stats : server.getCacheStatistics()) {
+            sample(sb, "ldap_cache_size", "cache", stats.getName(), stats.getSize());
+        }
+        header(sb, "ldap_cache_hits_total", "counter", "Number of cache hits");
+        for (CacheStatistics stats : server.getCacheStatistics()) {
+            sample(sb, "ldap_cache_hits_total", "cache", stats.getName(), stats.getHits());
+        }
+        header(sb, "ldap_cache_misses_total", "counter", "Number of cache misses");
+        for (CacheStatistics stats : server.getCacheStatistics()) {
+            sample(sb, "ldap_cache_misses_total", "cache", stats.getName(), stats.getMisses());
+        }
+        header(sb, "ldap_cache_hit_ratio", "gauge", "Ratio of cache hits to all cache reads");
+        for (CacheStatistics stats : server.getCacheStatistics()) {
+            sample(sb, "ldap_cache_hit_ratio", "cache", stats.getName(), stats.getHitRatio());
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        header(sb, "jvm_memory_bytes_used", "gauge", "Used JVM memory");
+        sample(sb, "jvm_memory_bytes_used", "area", "heap", heap.getUsed());
+        sample(sb, "jvm_memory_bytes_used", "area", "nonheap", nonHeap.getUsed());
+        header(sb, "jvm_memory_bytes_committed", "gauge", "Committed JVM memory");
+        sample(sb, "jvm_memory_bytes_committed", "area", "heap", heap.getCommitted());
+        sample(sb, "jvm_memory_bytes_committed", "area", "nonheap", nonHeap.getCommitted());
+        header(sb, "jvm_memory_bytes_max", "gauge", "Maximal JVM memory (-1 if undefined)");
+        sample(sb, "jvm_memory_bytes_max", "area", "heap", heap.getMax());
+        sample(sb, "jvm_memory_bytes_max", "area", "nonheap", nonHeap.getMax());
+        return sb.toString();
+    }
+
+    /**
+     * Computes operation rates of the window which just ended. Runs in the rate sampler thread.
+     */
+    synchronized void sampleRates() {
+        MetricsInterceptor metrics = server.getMetrics();
+        if (metrics == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final double windowSeconds = Math.max(1L, now - windowStartNanos) / NANOS_PER_SECOND;
+        double[] rates = new double[windowStartCounts.length];
+        for (Operation operation : Operation.values()) {
+            long count = metrics.getCount(operation);
+            rates[operation.ordinal()] = (count - windowStartCounts[operation.ordinal()]) / windowSeconds;
+            windowStartCounts[operation.ordinal()] = count;
+        }
+        windowStartNanos = now;
+        windowRates = rates;
+    }
+
+    String renderJson() {
+        final long now = System.nanoTime();
+        final double uptimeSeconds = Math.max(1L, now - startNanos) / NANOS_PER_SECOND;
+        final double[] rates = windowRates;
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("{\"uptimeSeconds\":").append((now - startNanos) / NANOS_PER_SECOND);
+        MetricsInterceptor metrics = server.getMetrics();
+        if (metrics != null) {
+            sb.append(",\"operations\":{");
+            for (Operation operation : Operation.values()) {
+                long count = metrics.getCount(operation);
+                LatencyHistogram latency = metrics.getLatency(operation);
+                if (operation.ordinal() > 0) {
+                    sb.append(',');
+                }
+                sb.append('"').append(name(operation)).append("\":{\"count\":").append(count).append(",\"errors\":")
+                        .append(metrics.getErrorCount(operation)).append(",\"ratePerSecond\":")
+                        .append(format(rates != null ? rates[operation.ordinal()] : count / uptimeSeconds))
+                        .append(",\"latencyMs\":{\"mean\":").append(format(latency.getMean() / NANOS_PER_MILLI));
+                for (int i = 0; i < QUANTILES.length; i++) {
+                    sb.append(",\"").append(QUANTILE_NAMES[i]).append("\":")
+                            .append(format(latency.getPercentile(QUANTILES[i]) / NANOS_PER_MILLI));
+                }
+                sb.append(",\"max\":").append(format(latency.getMax() / NANOS_PER_MILLI)).append("}}");
+            }
+            sb.append('}');
+        }
+        sb.append(",\"activeConnections\":").append(server.getConnectionCount());
+        AdmissionControlFilter admissionControl = server.getAdmissionControl();
+        if (admissionControl != null) {
+            sb.append(",\"admissionControl\":{\"inFlight\":").append(admissionControl.getInFlightCount())
+                    .append(",\"rejectedConnections\":").append(admissionControl.getRejectedConnections())
+                    .append(",\"rejectedOperations\":").append(admissionControl.getRejectedOperations()).append('}');
+        }
+        TlsHandshakeCounter tlsHandshakes = server.getTlsHandshakes();
+        if (tlsHandshakes != null) {
+            sb.append(",\"tlsHandshakes\":{\"full\":").append(tlsHandshakes.getFullHandshakes()).append(",\"resumed\":")
+                    .append(tlsHandshakes.getResumedHandshakes()).append('}');
+        }
+        sb.append(",\"partitions\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : server.getPartitionEntryCounts().entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append('"').append(escape(entry.getKey())).append("\":{\"entries\":").append(entry.getValue()).append('}');
+        }
+        sb.append('}');
+        SearchOptimizerInterceptor optimizer = server.getSearchOptimizer();
+        if (optimizer != null) {
+            sb.append(",\"searchOptimizer\":{\"searches\":").append(optimizer.getSearches()).append(",\"reordered\":")
+                    .append(optimizer.getReorderedSearches()).append(",\"impossible\":")
+                    .append(optimizer.getImpossibleSearches()).append(",\"removedBranches\":")
+                    .append(optimizer.getRemovedBranches()).append(",\"entries\":").append(optimizer.getEntryCount())
+                    .append(",\"attributes\":{");
+            first = true;
+            for (Map.Entry<String, Long> entry : optimizer.getAttributeCounts().entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append('"').append(escape(entry.getKey())).append("\":").append(entry.getValue());
+            }
+            sb.append("}}");
+        }
+        sb.append(",\"caches\":{");
+        first = true;
+        for (CacheStatistics stats : server.getCacheStatistics()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append('"').append(escape(stats.getName())).append("\":{\"size\":").append(stats.getSize())
+                    .append(",\"hits\":").append(stats.getHits()).append(",\"misses\":").append(stats.getMisses())
+                    .append(",\"evictions\":").append(stats.getEvictions()).append(",\"hitRatio\":")
+                    .append(format(stats.getHitRatio())).append('}');
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        sb.append("},\"jvm\":{\"heapUsed\":").append(heap.getUsed()).append(",\"heapCommitted\":")
+                .append(heap.getCommitted()).append(",\"heapMax\":").append(heap.getMax()).append(",\"nonHeapUsed\":")
+                .append(nonHeap.getUsed()).append("}}");
+        return sb.toString();
+    }
+
+    private static String name(Operation operation) {
+        return operation.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String label, String labelValue, Number value) {
+        sb.append(name).append('{').append(label).append("=\"").append(escape(labelValue)).append("\"} ").append(value)
+                .append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private abstract static class MetricsHandler implements HttpHandler {
+
+        private final String contentType;
+
+        MetricsHandler(String contentType) {
+            this.contentType = contentType;
+        }
+
+        abstract String render();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                // contexts match path prefixes
+                if (!exchange.getHttpContext().getPath().equals(exchange.getRequestURI().getPath())) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
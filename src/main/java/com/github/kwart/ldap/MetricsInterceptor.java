@@ -0,0 +1,235 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.CompareOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+
+/**
+ * ApacheDS Interceptor which counts operations and records their latencies. It should be the first interceptor in the chain,
+ * so the latency covers the whole interceptor chain and the partition. The search latency covers the filter evaluation and the
+ * cursor creation, not reading the results by the client.
+ */
+public class MetricsInterceptor extends BaseInterceptor {
+
+    public static final String NAME = "metricsInterceptor";
+
+    /**
+     * Measured operations. Move and rename operations are counted together as {@link #MODDN}.
+     */
+    public enum Operation {
+        BIND, SEARCH, LOOKUP, ADD, MODIFY, DELETE, COMPARE, MODDN;
+    }
+
+    private final OperationMetrics[] metrics;
+
+    public MetricsInterceptor() {
+        super(NAME);
+        metrics = new OperationMetrics[Operation.values().length];
+        for (Operation operation : Operation.values()) {
+            metrics[operation.ordinal()] = new OperationMetrics();
+        }
+    }
+
+    @Override
+    public void bind(BindOperationContext bindContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            next(bindContext);
+            failed = false;
+        } finally {
+            record(Operation.BIND, start, failed);
+        }
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            EntryFilteringCursor cursor = next(searchContext);
+            failed = false;
+            return cursor;
+        } finally {
+            record(Operation.SEARCH, start, failed);
+        }
+    }
+
+    @Override
+    public Entry lookup(LookupOperationContext lookupContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Entry entry = next(lookupContext);
+            failed = false;
+            return entry;
+        } finally {
+            record(Operation.LOOKUP, start, failed);
+        }
+    }
+
+    @Override
+    public void add(AddOperationContext addContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            next(addContext);
+            failed = false;
+        } finally {
+            record(Operation.ADD, start, failed);
+        }
+    }
+
+    @Override
+    public void modify(ModifyOperationContext modifyContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            next(modifyContext);
+            failed = false;
+        } finally {
+            record(Operation.MODIFY, start, failed);
+        }
+    }
+
+    @Override
+    public void delete(DeleteOperationContext deleteContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            next(deleteContext);
+            failed = false;
+        } finally {
+            record(Operation.DELETE, start, failed);
+        }
+    }
+
+    @Override
+    public boolean compare(CompareOperationContext compareContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean result = next(compareContext);
+            failed = false;
+            return result;
+        } finally {
+            record(Operation.COMPARE, start, failed);
+        }
+    }
+
+    @Override
+    public void move(MoveOperationContext moveContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            next(moveContext);
+            failed = false;
+        } finally {
+            record(Operation.MODDN, start, failed);
+        }
+    }
+
+    @Override
+    public void rename(RenameOperationContext renameContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            next(renameContext);
+            failed = false;
+        } finally {
+            record(Operation.MODDN, start, failed);
+        }
+    }
+
+    @Override
+    public void moveAndRename(MoveAndRenameOperationContext moveAndRenameContext) throws LdapException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            next(moveAndRenameContext);
+            failed = false;
+        } finally {
+            record(Operation.MODDN, start, failed);
+        }
+    }
+
+    /**
+     * Returns number of finished operations of given type (including the failed ones).
+     */
+    public long getCount(Operation operation) {
+        return metrics[operation.ordinal()].count.sum();
+    }
+
+    /**
+     * Returns number of operations of given type which ended with an exception.
+     */
+    public long getErrorCount(Operation operation) {
+        return metrics[operation.ordinal()].errors.sum();
+    }
+
+    /**
+     * Returns latency histogram of given operation type.
+     */
+    public LatencyHistogram getLatency(Operation operation) {
+        return metrics[operation.ordinal()].latency;
+    }
+
+    /**
+     * Clears all counters and histograms.
+     */
+    public void reset() {
+        for (OperationMetrics operationMetrics : metrics) {
+            operationMetrics.count.reset();
+            operationMetrics.errors.reset();
+            operationMetrics.latency.reset();
+        }
+    }
+
+    private void record(Operation operation, long start, boolean failed) {
+        OperationMetrics operationMetrics = metrics[operation.ordinal()];
+        operationMetrics.latency.record(System.nanoTime() - start);
+        operationMetrics.count.increment();
+        if (failed) {
+            operationMetrics.errors.increment();
+        }
+    }
+
+    private static class OperationMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.OperationManager;
+
+/**
+ * {@link DefaultDirectoryService} which uses {@link MvccOperationManager}, so reads from {@link MvccPartition} instances don't
+ * wait for the directory-wide lock.
+ */
+public class MvccDirectoryService extends DefaultDirectoryService {
+
+    private final OperationManager operationManager;
+
+    public MvccDirectoryService() throws Exception {
+        super();
+        operationManager = new MvccOperationManager(this);
+        setShutdownHookEnabled(false);
+    }
+
+    @Override
+    public OperationManager getOperationManager() {
+        // the super constructor may ask for the manager before this one is set
+        return operationManager != null ? operationManager : super.getOperationManager();
+    }
+}
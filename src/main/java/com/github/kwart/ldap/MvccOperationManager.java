@@ -0,0 +1,134 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.DefaultOperationManager;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.context.BindOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.CompareOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.PartitionNexus;
+
+/**
+ * Operation manager which doesn't take the directory-wide read lock for read operations targeting an {@link MvccPartition}.
+ * Such partitions publish consistent versions, so the readers don't have to wait for writers. Write operations and reads on
+ * other partitions are locked as in {@link DefaultOperationManager}.
+ */
+public class MvccOperationManager extends DefaultOperationManager {
+
+    private static final ThreadLocal<Boolean> LOCK_FREE = new ThreadLocal<Boolean>();
+
+    private final DirectoryService directoryService;
+
+    public MvccOperationManager(DirectoryService directoryService) {
+        super(directoryService);
+        this.directoryService = directoryService;
+    }
+
+    @Override
+    public void bind(BindOperationContext bindContext) throws LdapException {
+        Boolean previous = enter(bindContext.getDn());
+        try {
+            super.bind(bindContext);
+        } finally {
+            LOCK_FREE.set(previous);
+        }
+    }
+
+    @Override
+    public boolean compare(CompareOperationContext compareContext) throws LdapException {
+        Boolean previous = enter(compareContext.getDn());
+        try {
+            return super.compare(compareContext);
+        } finally {
+            LOCK_FREE.set(previous);
+        }
+    }
+
+    @Override
+    public boolean hasEntry(HasEntryOperationContext hasEntryContext) throws LdapException {
+        Boolean previous = enter(hasEntryContext.getDn());
+        try {
+            return super.hasEntry(hasEntryContext);
+        } finally {
+            LOCK_FREE.set(previous);
+        }
+    }
+
+    @Override
+    public Entry lookup(LookupOperationContext lookupContext) throws LdapException {
+        Boolean previous = enter(lookupContext.getDn());
+        try {
+            return super.lookup(lookupContext);
+        } finally {
+            LOCK_FREE.set(previous);
+        }
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        Boolean previous = enter(searchContext.getDn());
+        try {
+            return super.search(searchContext);
+        } finally {
+            LOCK_FREE.set(previous);
+        }
+    }
+
+    @Override
+    public void lockRead() {
+        if (LOCK_FREE.get() != Boolean.TRUE) {
+            super.lockRead();
+        }
+    }
+
+    @Override
+    public void unlockRead() {
+        if (LOCK_FREE.get() != Boolean.TRUE) {
+            super.unlockRead();
+        }
+    }
+
+    /**
+     * Marks the current thread lock-free when the DN belongs to an {@link MvccPartition}. Returns the previous mark.
+     */
+    private Boolean enter(Dn dn) {
+        Boolean previous = LOCK_FREE.get();
+        boolean lockFree = false;
+        if (dn != null && !dn.isEmpty()) {
+            PartitionNexus nexus = directoryService.getPartitionNexus();
+            try {
+                lockFree = nexus != null && nexus.getPartition(dn) instanceof MvccPartition;
+            } catch (LdapException e) {
+                // no partition - keep locking
+            }
+        }
+        LOCK_FREE.set(lockFree);
+        return previous;
+    }
+}
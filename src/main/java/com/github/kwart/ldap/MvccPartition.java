@@ -0,0 +1,487 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapContextNotEmptyException;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.entry.ServerEntryUtils;
+import org.apache.directory.server.core.api.event.ExpressionEvaluator;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.partition.AbstractPartition;
+import org.apache.directory.server.core.api.partition.Subordinates;
+
+/**
+ * In-memory partition with multi-version concurrency control. The whole partition content (entries and equality indexes) is an
+ * immutable {@link Version} built from {@link PersistentTreeMap}s. Readers take the current version and never lock, writers are
+ * serialized, build the next version by path copying and publish it with a single volatile write. Stored entries are never
+ * modified - operations return clones and updates replace the entries.
+ * <p>
+ * Entries are keyed by their normalized RDNs from the suffix down, so each subtree is a continuous key range. Equality filters
+ * on indexed attributes (also inside a top-level AND) are resolved from the index, other searches scan the scope. Aliases are
+ * not dereferenced.
+ * <p>
+ * The directory service read lock is skipped for operations on this partition only when {@link MvccDirectoryService} is used.
+ */
+public class MvccPartition extends AbstractPartition {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private final Set<String> indexedAttributeIds = new LinkedHashSet<String>();
+    private AttributeType[] indexedAttributes;
+    private ExpressionEvaluator evaluator;
+
+    private volatile Version version;
+
+    public MvccPartition(SchemaManager schemaManager, DnFactory dnFactory) {
+        this.schemaManager = schemaManager;
+        this.dnFactory = dnFactory;
+    }
+
+    /**
+     * Adds equality index for the given attribute. It has to be called before the partition is initialized.
+     */
+    public void addIndex(String attributeId) {
+        if (initialized) {
+            throw new IllegalStateException("Indexes can't be added to an initialized partition");
+        }
+        indexedAttributeIds.add(attributeId);
+    }
+
+    /**
+     * Returns number of entries in the partition.
+     */
+    public int count() {
+        Version current = version;
+        return current != null ? current.entries.size() : 0;
+    }
+
+    @Override
+    protected void doInit() throws Exception {
+        if (!suffixDn.isSchemaAware()) {
+            suffixDn.apply(schemaManager);
+        }
+        List<AttributeType> attributeTypes = new ArrayList<AttributeType>();
+        for (String attributeId : indexedAttributeIds) {
+            AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry(attributeId);
+            if (attributeType.getEquality() != null) {
+                attributeTypes.add(attributeType);
+            }
+        }
+        indexedAttributes = attributeTypes.toArray(new AttributeType[attributeTypes.size()]);
+        evaluator = new ExpressionEvaluator(schemaManager);
+        version = new Version(PersistentTreeMap.<Entry> empty(), emptyIndexes(indexedAttributes.length));
+        if (contextEntry != null) {
+            Entry entry = new DefaultEntry(schemaManager, contextEntry);
+            if (entry.get(SchemaConstants.ENTRY_CSN_AT) == null) {
+                entry.add(SchemaConstants.ENTRY_CSN_AT, new CsnFactory(0).newInstance().toString());
+            }
+            if (entry.get(SchemaConstants.ENTRY_UUID_AT) == null) {
+                entry.add(SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString());
+            }
+            add(new AddOperationContext(null, entry));
+        }
+    }
+
+    @Override
+    protected void doRepair() {
+    }
+
+    @Override
+    protected void doDestroy() {
+        version = null;
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void saveContextCsn() {
+    }
+
+    // Read operations - no locking ------------------------------------------
+
+    @Override
+    public Entry lookup(LookupOperationContext lookupContext) throws LdapException {
+        Entry entry = version.entries.get(key(lookupContext.getDn()));
+        if (entry == null) {
+            return null;
+        }
+        Entry result = new ClonedServerEntry(entry);
+        ServerEntryUtils.filterContents(schemaManager, lookupContext, result);
+        return result;
+    }
+
+    @Override
+    public boolean hasEntry(HasEntryOperationContext hasEntryContext) throws LdapException {
+        return version.entries.get(key(hasEntryContext.getDn())) != null;
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        final Version current = version;
+        final Dn baseDn = searchContext.getDn();
+        final String baseKey = key(baseDn);
+        final Entry baseEntry = current.entries.get(baseKey);
+        if (baseEntry == null) {
+            throw new LdapNoSuchObjectException("Entry " + baseDn + " doesn't exist");
+        }
+        final ExprNode filter = searchContext.getFilter();
+        final SearchScope scope = searchContext.getScope();
+        final List<Entry> result = new ArrayList<Entry>();
+        if (scope == SearchScope.OBJECT) {
+            if (PartitionSupport.evaluate(evaluator, filter, baseEntry)) {
+                result.add(baseEntry);
+            }
+        } else {
+            final int childDepth = baseEntry.getDn().size() + 1;
+            final String subtreePrefix = baseKey + SEPARATOR;
+            final LdapException[] error = new LdapException[1];
+            EqualityNode<?> indexed = PartitionSupport.findEquality(filter, attributeType -> indexOf(attributeType) >= 0);
+            if (indexed != null) {
+                final String valuePrefix = PartitionSupport.normValue(indexed.getValue()) + SEPARATOR;
+                current.indexes[indexOf(indexed.getAttributeType())].visitFrom(valuePrefix, (indexKey, entryKey) -> {
+                    if (!indexKey.startsWith(valuePrefix)) {
+                        return false;
+                    }
+                    if (entryKey.equals(baseKey) || entryKey.startsWith(subtreePrefix)) {
+                        error[0] = collect(current.entries.get(entryKey), scope, childDepth, filter, result);
+                    }
+                    return error[0] == null;
+                });
+            } else {
+                current.entries.visitFrom(baseKey, (entryKey, entry) -> {
+                    if (!entryKey.equals(baseKey) && !entryKey.startsWith(subtreePrefix)) {
+                        return false;
+                    }
+                    error[0] = collect(entry, scope, childDepth, filter, result);
+                    return error[0] == null;
+                });
+            }
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        return new EntryFilteringCursorImpl(new ListCursor<Entry>(result), searchContext, schemaManager);
+    }
+
+    @Override
+    public Subordinates getSubordinates(Entry entry) throws LdapException {
+        final String baseKey = key(entry.getDn());
+        final String subtreePrefix = baseKey + SEPARATOR;
+        final int childDepth = entry.getDn().size() + 1;
+        final long[] counts = new long[2];
+        version.entries.visitFrom(subtreePrefix, (entryKey, child) -> {
+            if (!entryKey.startsWith(subtreePrefix)) {
+                return false;
+            }
+            counts[1]++;
+            if (child.getDn().size() == childDepth) {
+                counts[0]++;
+            }
+            return true;
+        });
+        Subordinates subordinates = new Subordinates();
+        subordinates.setNbChildren(counts[0]);
+        subordinates.setNbSubordinates(counts[1]);
+        return subordinates;
+    }
+
+    // Write operations - serialized -----------------------------------------
+
+    @Override
+    public synchronized void add(AddOperationContext addContext) throws LdapException {
+        Entry entry = addContext.getEntry();
+        if (entry instanceof ClonedServerEntry) {
+            entry = ((ClonedServerEntry) entry).getClonedEntry();
+        }
+        Dn dn = entry.getDn();
+        String key = key(dn);
+        Writer writer = new Writer(version);
+        if (writer.entries.get(key) != null) {
+            throw new LdapEntryAlreadyExistsException("Entry " + dn + " already exists");
+        }
+        if (!dn.equals(suffixDn) && writer.entries.get(key(dn.getParent())) == null) {
+            throw new LdapNoSuchObjectException("Parent of entry " + dn + " doesn't exist");
+        }
+        writer.put(key, entry.clone());
+        version = writer.build();
+    }
+
+    @Override
+    public synchronized Entry delete(DeleteOperationContext deleteContext) throws LdapException {
+        Dn dn = deleteContext.getDn();
+        String key = key(dn);
+        Writer writer = new Writer(version);
+        Entry entry = writer.entries.get(key);
+        if (entry == null) {
+            throw new LdapNoSuchObjectException("Entry " + dn + " doesn't exist");
+        }
+        if (hasChildren(writer.entries, key)) {
+            throw new LdapContextNotEmptyException("Entry " + dn + " has children");
+        }
+        writer.remove(key, entry);
+        version = writer.build();
+        return entry;
+    }
+
+    @Override
+    public synchronized void modify(ModifyOperationContext modifyContext) throws LdapException {
+        Dn dn = modifyContext.getDn();
+        String key = key(dn);
+        Writer writer = new Writer(version);
+        Entry entry = writer.entries.get(key);
+        if (entry == null) {
+            throw new LdapNoSuchObjectException("Entry " + dn + " doesn't exist");
+        }
+        Entry modifiedEntry = entry.clone();
+        for (Modification modification : modifyContext.getModItems()) {
+            PartitionSupport.applyModification(schemaManager, modifiedEntry, modification);
+        }
+        writer.remove(key, entry);
+        writer.put(key, modifiedEntry);
+        version = writer.build();
+        modifyContext.setAlteredEntry(modifiedEntry.clone());
+    }
+
+    @Override
+    public void rename(RenameOperationContext renameContext) throws LdapException {
+        moveSubtree(renameContext.getDn(), renameContext.getNewDn(), renameContext.getModifiedEntry(),
+                renameContext.getNewRdn(), renameContext.getDeleteOldRdn());
+    }
+
+    @Override
+    public void move(MoveOperationContext moveContext) throws LdapException {
+        moveSubtree(moveContext.getDn(), moveContext.getNewDn(), moveContext.getModifiedEntry(), null, false);
+    }
+
+    @Override
+    public void moveAndRename(MoveAndRenameOperationContext moveAndRenameContext) throws LdapException {
+        moveSubtree(moveAndRenameContext.getDn(), moveAndRenameContext.getNewDn(), moveAndRenameContext.getModifiedEntry(),
+                moveAndRenameContext.getNewRdn(), moveAndRenameContext.getDeleteOldRdn());
+    }
+
+    @Override
+    public void unbind(UnbindOperationContext unbindContext) {
+    }
+
+    // Internals --------------------------------------------------------------
+
+    private synchronized void moveSubtree(Dn oldDn, Dn newDn, Entry modifiedEntry, Rdn newRdn, boolean deleteOldRdn)
+            throws LdapException {
+        if (!newDn.isSchemaAware()) {
+            newDn.apply(schemaManager);
+        }
+        final String oldKey = key(oldDn);
+        final String newKey = key(newDn);
+        final Writer writer = new Writer(version);
+        final Entry entry = writer.entries.get(oldKey);
+        if (entry == null) {
+            throw new LdapNoSuchObjectException("Entry " + oldDn + " doesn't exist");
+        }
+        if (writer.entries.get(newKey) != null) {
+            throw new LdapEntryAlreadyExistsException("Entry " + newDn + " already exists");
+        }
+        if (writer.entries.get(key(newDn.getParent())) == null) {
+            throw new LdapNoSuchObjectException("Parent of entry " + newDn + " doesn't exist");
+        }
+        final String subtreePrefix = oldKey + SEPARATOR;
+        final List<Entry> subtree = new ArrayList<Entry>();
+        writer.entries.visitFrom(subtreePrefix, (entryKey, child) -> {
+            if (!entryKey.startsWith(subtreePrefix)) {
+                return false;
+            }
+            subtree.add(child);
+            return true;
+        });
+
+        Entry movedEntry = (modifiedEntry != null ? modifiedEntry : entry).clone();
+        if (movedEntry instanceof ClonedServerEntry) {
+            movedEntry = ((ClonedServerEntry) movedEntry).getClonedEntry();
+        }
+        movedEntry.setDn(newDn);
+        if (newRdn != null) {
+            PartitionSupport.applyNewRdn(movedEntry, oldDn.getRdn(), newRdn, deleteOldRdn);
+        }
+        writer.remove(oldKey, entry);
+        writer.put(newKey, movedEntry);
+        for (Entry child : subtree) {
+            Dn childDn = new Dn(schemaManager, child.getDn().getDescendantOf(oldDn).getName() + "," + newDn.getName());
+            Entry movedChild = child.clone();
+            movedChild.setDn(childDn);
+            writer.remove(key(child.getDn()), child);
+            writer.put(key(childDn), movedChild);
+        }
+        version = writer.build();
+    }
+
+    private LdapException collect(Entry entry, SearchScope scope, int childDepth, ExprNode filter, List<Entry> result) {
+        if (entry == null || (scope == SearchScope.ONELEVEL && entry.getDn().size() != childDepth)) {
+            return null;
+        }
+        try {
+            if (PartitionSupport.evaluate(evaluator, filter, entry)) {
+                result.add(entry);
+            }
+            return null;
+        } catch (LdapException e) {
+            return e;
+        }
+    }
+
+    private int indexOf(AttributeType attributeType) {
+        if (attributeType != null) {
+            for (int i = 0; i < indexedAttributes.length; i++) {
+                if (indexedAttributes[i].equals(attributeType)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PersistentTreeMap<String>[] emptyIndexes(int count) {
+        PersistentTreeMap<String>[] indexes = (PersistentTreeMap<String>[]) new PersistentTreeMap<?>[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = PersistentTreeMap.empty();
+        }
+        return indexes;
+    }
+
+    private static boolean hasChildren(PersistentTreeMap<Entry> entries, String key) {
+        final String prefix = key + SEPARATOR;
+        final boolean[] found = new boolean[1];
+        entries.visitFrom(prefix, (entryKey, entry) -> {
+            found[0] = entryKey.startsWith(prefix);
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Returns key of the given DN - normalized RDNs from the top, separated by {@link #SEPARATOR}.
+     */
+    private String key(Dn dn) throws LdapException {
+        if (!dn.isSchemaAware()) {
+            dn.apply(schemaManager);
+        }
+        List<Rdn> rdns = dn.getRdns();
+        StringBuilder sb = new StringBuilder(dn.getNormName().length() + 8);
+        for (int i = rdns.size() - 1; i >= 0; i--) {
+            sb.append(rdns.get(i).getNormName());
+            if (i > 0) {
+                sb.append(SEPARATOR);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Immutable partition content.
+     */
+    private static final class Version {
+        final PersistentTreeMap<Entry> entries;
+        final PersistentTreeMap<String>[] indexes;
+
+        Version(PersistentTreeMap<Entry> entries, PersistentTreeMap<String>[] indexes) {
+            this.entries = entries;
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * Builds the next version. Index keys are <code>normalizedValue SEPARATOR entryKey</code>.
+     */
+    private final class Writer {
+        PersistentTreeMap<Entry> entries;
+        final PersistentTreeMap<String>[] indexes;
+
+        Writer(Version base) {
+            entries = base.entries;
+            indexes = base.indexes.clone();
+        }
+
+        void put(String key, Entry entry) {
+            entries = entries.put(key, entry);
+            for (int i = 0; i < indexedAttributes.length; i++) {
+                Attribute attribute = entry.get(indexedAttributes[i]);
+                if (attribute != null) {
+                    for (Value<?> value : attribute) {
+                        indexes[i] = indexes[i].put(PartitionSupport.normValue(value) + SEPARATOR + key, key);
+                    }
+                }
+            }
+        }
+
+        void remove(String key, Entry entry) {
+            entries = entries.remove(key);
+            for (int i = 0; i < indexedAttributes.length; i++) {
+                Attribute attribute = entry.get(indexedAttributes[i]);
+                if (attribute != null) {
+                    for (Value<?> value : attribute) {
+                        indexes[i] = indexes[i].remove(PartitionSupport.normValue(value) + SEPARATOR + key);
+                    }
+                }
+            }
+        }
+
+        Version build() {
+            return new Version(entries, indexes);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import java.io.File;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.factory.PartitionFactory;
+
+/**
+ * {@link PartitionFactory} which creates {@link MvccPartition} instances. The cache size and working directory are ignored, the
+ * partitions are memory-only.
+ */
+public class MvccPartitionFactory implements PartitionFactory {
+
+    @Override
+    public MvccPartition createPartition(SchemaManager schemaManager, DnFactory dnFactory, String id, String suffix,
+            int cacheSize, File workingDirectory) throws Exception {
+        MvccPartition partition = new MvccPartition(schemaManager, dnFactory);
+        partition.setId(id);
+        partition.setSuffixDn(new Dn(schemaManager, suffix));
+        return partition;
+    }
+
+    @Override
+    public void addIndex(Partition partition, String attributeId, int cacheSize) throws Exception {
+        if (!(partition instanceof MvccPartition)) {
+            throw new IllegalArgumentException("Partition must be an MvccPartition");
+        }
+        ((MvccPartition) partition).addIndex(attributeId);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Append-only store of byte records in direct (off-heap) buffers. A record is addressed by a <code>long</code> which holds the
+ * chunk index in the upper and the offset in the lower 32 bits. Removed records are only counted as garbage, the owner is
+ * responsible for copying the live records to a new arena when there is too much of it.
+ * <p>
+ * Appends have to be serialized by the caller. Reads may run concurrently with each other.
+ */
+final class OffHeapArena {
+
+    static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private final int chunkSize;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer current;
+    private long allocatedBytes;
+    private long usedBytes;
+    private long garbageBytes;
+
+    OffHeapArena(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Stores the record and returns its address.
+     */
+    long append(byte[] data) {
+        final int recordSize = data.length + 4;
+        if (current == null || current.remaining() < recordSize) {
+            current = ByteBuffer.allocateDirect(Math.max(chunkSize, recordSize));
+            ByteBuffer[] newChunks = new ByteBuffer[chunks.length + 1];
+            System.arraycopy(chunks, 0, newChunks, 0, chunks.length);
+            newChunks[chunks.length] = current;
+            chunks = newChunks;
+            allocatedBytes += current.capacity();
+        }
+        long address = ((long) (chunks.length - 1) << 32) | current.position();
+        current.putInt(data.length);
+        current.put(data);
+        usedBytes += recordSize;
+        return address;
+    }
+
+    /**
+     * Returns a new buffer positioned at the record start and limited to the record end.
+     */
+    ByteBuffer read(long address) {
+        ByteBuffer buffer = chunks[(int) (address >>> 32)].duplicate();
+        int offset = (int) address;
+        int length = buffer.getInt(offset);
+        buffer.limit(offset + 4 + length);
+        buffer.position(offset + 4);
+        return buffer;
+    }
+
+    /**
+     * Marks the record as garbage.
+     */
+    void release(long address) {
+        garbageBytes += chunks[(int) (address >>> 32)].getInt((int) address) + 4;
+    }
+
+    /**
+     * Copies the record to another arena and returns its new address.
+     */
+    long copyTo(OffHeapArena target, long address) {
+        ByteBuffer record = read(address);
+        byte[] data = new byte[record.remaining()];
+        record.get(data);
+        return target.append(data);
+    }
+
+    /**
+     * Returns size of the direct buffers.
+     */
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns number of bytes taken by live records.
+     */
+    long getLiveBytes() {
+        return usedBytes - garbageBytes;
+    }
+
+    long getGarbageBytes() {
+        return garbageBytes;
+    }
+}
@@ -0,0 +1,769 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.cursor.ListCursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapContextNotEmptyException;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DnFactory;
+import org.apache.directory.server.core.api.entry.ClonedServerEntry;
+import org.apache.directory.server.core.api.entry.ServerEntryUtils;
+import org.apache.directory.server.core.api.event.ExpressionEvaluator;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursorImpl;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.UnbindOperationContext;
+import org.apache.directory.server.core.api.partition.AbstractPartition;
+import org.apache.directory.server.core.api.partition.Subordinates;
+
+/**
+ * Partition which keeps the entries serialized ({@link EntryCodec}) in an {@link OffHeapArena}. The heap only holds primitive
+ * structures indexed by an <code>int</code> entry ID - record addresses, parent IDs, an open-addressing DN hash table, child
+ * lists and equality indexes which map 64-bit value hashes to posting lists of entry IDs. Entries are decoded when they are
+ * read, so lookups and searches pay for decoding instead of keeping millions of entry objects alive.
+ * <p>
+ * Writes are serialized. Reads may run concurrently with each other, but not with writes - the directory service read/write
+ * lock takes care of that. Aliases are not dereferenced.
+ */
+public class OffHeapPartition extends AbstractPartition {
+
+    private static final int NO_ID = 0;
+    private static final int REMOVED = -1;
+    private static final long FREE = -1L;
+
+    private final int chunkSize;
+    private final Set<String> indexedAttributeIds = new LinkedHashSet<String>();
+    private AttributeType[] indexedAttributes;
+    private PostingIndex[] indexes;
+    private ExpressionEvaluator evaluator;
+
+    private OffHeapArena arena;
+    private long[] addresses;
+    private int[] parentIds;
+    private int[] dnHashes;
+    private IntList[] children;
+    private final IntList freeIds = new IntList();
+    private int maxId;
+    private int count;
+
+    private int[] dnTable;
+    private int dnTableUsed;
+
+    private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream(512);
+
+    public OffHeapPartition(SchemaManager schemaManager, DnFactory dnFactory) {
+        this(schemaManager, dnFactory, OffHeapArena.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize size of the direct buffers allocated for the entries
+     */
+    public OffHeapPartition(SchemaManager schemaManager, DnFactory dnFactory, int chunkSize) {
+        this.schemaManager = schemaManager;
+        this.dnFactory = dnFactory;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Adds equality index for the given attribute. It has to be called before the partition is initialized.
+     */
+    public void addIndex(String attributeId) {
+        if (initialized) {
+            throw new IllegalStateException("Indexes can't be added to an initialized partition");
+        }
+        indexedAttributeIds.add(attributeId);
+    }
+
+    /**
+     * Returns number of entries in the partition.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns size of the off-heap memory taken by the stored entries (without the unused part of the buffers).
+     */
+    public long getOffHeapBytes() {
+        return arena != null ? arena.getLiveBytes() : 0L;
+    }
+
+    @Override
+    protected void doInit() throws Exception {
+        if (!suffixDn.isSchemaAware()) {
+            suffixDn.apply(schemaManager);
+        }
+        List<AttributeType> attributeTypes = new ArrayList<AttributeType>();
+        for (String attributeId : indexedAttributeIds) {
+            AttributeType attributeType = schemaManager.lookupAttributeTypeRegistry(attributeId);
+            if (attributeType.getEquality() != null) {
+                attributeTypes.add(attributeType);
+            }
+        }
+        indexedAttributes = attributeTypes.toArray(new AttributeType[attributeTypes.size()]);
+        indexes = new PostingIndex[indexedAttributes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = new PostingIndex();
+        }
+        evaluator = new ExpressionEvaluator(schemaManager);
+        arena = new OffHeapArena(chunkSize);
+        addresses = new long[1024];
+        Arrays.fill(addresses, FREE);
+        parentIds = new int[addresses.length];
+        dnHashes = new int[addresses.length];
+        children = new IntList[addresses.length];
+        dnTable = new int[2048];
+        if (contextEntry != null) {
+            Entry entry = new DefaultEntry(schemaManager, contextEntry);
+            if (entry.get(SchemaConstants.ENTRY_CSN_AT) == null) {
+                entry.add(SchemaConstants.ENTRY_CSN_AT, new CsnFactory(0).newInstance().toString());
+            }
+            if (entry.get(SchemaConstants.ENTRY_UUID_AT) == null) {
+                entry.add(SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString());
+            }
+            add(new AddOperationContext(null, entry));
+        }
+    }
+
+    @Override
+    protected void doRepair() {
+    }
+
+    @Override
+    protected synchronized void doDestroy() {
+        arena = null;
+        addresses = null;
+        parentIds = null;
+        dnHashes = null;
+        children = null;
+        dnTable = null;
+        indexes = null;
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void saveContextCsn() {
+    }
+
+    // Read operations --------------------------------------------------------
+
+    @Override
+    public Entry lookup(LookupOperationContext lookupContext) throws LdapException {
+        int id = findId(normName(lookupContext.getDn()));
+        if (id == NO_ID) {
+            return null;
+        }
+        Entry result = new ClonedServerEntry(decode(id));
+        ServerEntryUtils.filterContents(schemaManager, lookupContext, result);
+        return result;
+    }
+
+    @Override
+    public boolean hasEntry(HasEntryOperationContext hasEntryContext) throws LdapException {
+        return findId(normName(hasEntryContext.getDn())) != NO_ID;
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        Dn baseDn = searchContext.getDn();
+        int baseId = findId(normName(baseDn));
+        if (baseId == NO_ID) {
+            throw new LdapNoSuchObjectException("Entry " + baseDn + " doesn't exist");
+        }
+        ExprNode filter = searchContext.getFilter();
+        SearchScope scope = searchContext.getScope();
+        List<Entry> result = new ArrayList<Entry>();
+        EqualityNode<?> indexed = scope == SearchScope.OBJECT ? null
+                : PartitionSupport.findEquality(filter, attributeType -> indexOf(attributeType) >= 0);
+        if (scope == SearchScope.OBJECT) {
+            collect(baseId, filter, result);
+        } else if (indexed != null) {
+            IntList candidates = indexes[indexOf(indexed.getAttributeType())]
+                    .get(valueHash(PartitionSupport.normValue(indexed.getValue())));
+            if (candidates != null) {
+                for (int i = 0; i < candidates.size(); i++) {
+                    int id = candidates.get(i);
+                    if (scope == SearchScope.ONELEVEL ? parentIds[id] == baseId : isInSubtree(id, baseId)) {
+                        collect(id, filter, result);
+                    }
+                }
+            }
+        } else if (scope == SearchScope.ONELEVEL) {
+            IntList childIds = children[baseId];
+            for (int i = 0; childIds != null && i < childIds.size(); i++) {
+                collect(childIds.get(i), filter, result);
+            }
+        } else {
+            IntList stack = new IntList();
+            stack.add(baseId);
+            while (stack.size() > 0) {
+                int id = stack.pop();
+                collect(id, filter, result);
+                IntList childIds = children[id];
+                for (int i = 0; childIds != null && i < childIds.size(); i++) {
+                    stack.add(childIds.get(i));
+                }
+            }
+        }
+        return new EntryFilteringCursorImpl(new ListCursor<Entry>(result), searchContext, schemaManager);
+    }
+
+    @Override
+    public Subordinates getSubordinates(Entry entry) throws LdapException {
+        int id = findId(normName(entry.getDn()));
+        Subordinates subordinates = new Subordinates();
+        if (id != NO_ID) {
+            subordinates.setNbChildren(children[id] != null ? children[id].size() : 0);
+            subordinates.setNbSubordinates(subtree(id).size() - 1);
+        }
+        return subordinates;
+    }
+
+    // Write operations -------------------------------------------------------
+
+    @Override
+    public synchronized void add(AddOperationContext addContext) throws LdapException {
+        Entry entry = addContext.getEntry();
+        if (entry instanceof ClonedServerEntry) {
+            entry = ((ClonedServerEntry) entry).getClonedEntry();
+        }
+        Dn dn = entry.getDn();
+        String normDn = normName(dn);
+        if (findId(normDn) != NO_ID) {
+            throw new LdapEntryAlreadyExistsException("Entry " + dn + " already exists");
+        }
+        int parentId = NO_ID;
+        if (!dn.equals(suffixDn)) {
+            parentId = findId(normName(dn.getParent()));
+            if (parentId == NO_ID) {
+                throw new LdapNoSuchObjectException("Parent of entry " + dn + " doesn't exist");
+            }
+        }
+        ensureDnTableCapacity();
+        int id = allocateId();
+        store(id, normDn, entry);
+        parentIds[id] = parentId;
+        if (parentId != NO_ID) {
+            childList(parentId).add(id);
+        }
+        updateIndexes(id, null, entry);
+        count++;
+    }
+
+    @Override
+    public synchronized Entry delete(DeleteOperationContext deleteContext) throws LdapException {
+        Dn dn = deleteContext.getDn();
+        int id = findId(normName(dn));
+        if (id == NO_ID) {
+            throw new LdapNoSuchObjectException("Entry " + dn + " doesn't exist");
+        }
+        if (children[id] != null && children[id].size() > 0) {
+            throw new LdapContextNotEmptyException("Entry " + dn + " has children");
+        }
+        Entry entry = decode(id);
+        updateIndexes(id, entry, null);
+        removeDn(id);
+        arena.release(addresses[id]);
+        if (parentIds[id] != NO_ID) {
+            children[parentIds[id]].removeValue(id);
+        }
+        addresses[id] = FREE;
+        children[id] = null;
+        freeIds.add(id);
+        count--;
+        compactIfNeeded();
+        return entry;
+    }
+
+    @Override
+    public synchronized void modify(ModifyOperationContext modifyContext) throws LdapException {
+        Dn dn = modifyContext.getDn();
+        String normDn = normName(dn);
+        int id = findId(normDn);
+        if (id == NO_ID) {
+            throw new LdapNoSuchObjectException("Entry " + dn + " doesn't exist");
+        }
+        Entry entry = decode(id);
+        Entry modifiedEntry = entry.clone();
+        for (Modification modification : modifyContext.getModItems()) {
+            PartitionSupport.applyModification(schemaManager, modifiedEntry, modification);
+        }
+        arena.release(addresses[id]);
+        addresses[id] = arena.append(encode(normDn, modifiedEntry));
+        updateIndexes(id, entry, modifiedEntry);
+        modifyContext.setAlteredEntry(modifiedEntry);
+        compactIfNeeded();
+    }
+
+    @Override
+    public void rename(RenameOperationContext renameContext) throws LdapException {
+        moveSubtree(renameContext.getDn(), renameContext.getNewDn(), renameContext.getModifiedEntry(),
+                renameContext.getNewRdn(), renameContext.getDeleteOldRdn());
+    }
+
+    @Override
+    public void move(MoveOperationContext moveContext) throws LdapException {
+        moveSubtree(moveContext.getDn(), moveContext.getNewDn(), moveContext.getModifiedEntry(), null, false);
+    }
+
+    @Override
+    public void moveAndRename(MoveAndRenameOperationContext moveAndRenameContext) throws LdapException {
+        moveSubtree(moveAndRenameContext.getDn(), moveAndRenameContext.getNewDn(), moveAndRenameContext.getModifiedEntry(),
+                moveAndRenameContext.getNewRdn(), moveAndRenameContext.getDeleteOldRdn());
+    }
+
+    @Override
+    public void unbind(UnbindOperationContext unbindContext) {
+    }
+
+    // Internals --------------------------------------------------------------
+
+    private synchronized void moveSubtree(Dn oldDn, Dn newDn, Entry modifiedEntry, Rdn newRdn, boolean deleteOldRdn)
+            throws LdapException {
+        int id = findId(normName(oldDn));
+        if (id == NO_ID) {
+            throw new LdapNoSuchObjectException("Entry " + oldDn + " doesn't exist");
+        }
+        String newNormDn = normName(newDn);
+        if (findId(newNormDn) != NO_ID) {
+            throw new LdapEntryAlreadyExistsException("Entry " + newDn + " already exists");
+        }
+        int newParentId = findId(normName(newDn.getParent()));
+        if (newParentId == NO_ID) {
+            throw new LdapNoSuchObjectException("Parent of entry " + newDn + " doesn't exist");
+        }
+        if (isInSubtree(newParentId, id)) {
+            throw new LdapUnwillingToPerformException(ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "Entry " + oldDn + " can't be moved under itself");
+        }
+        IntList subtree = subtree(id);
+
+        Entry entry = decode(id);
+        Entry movedEntry = modifiedEntry != null ? modifiedEntry.clone() : entry.clone();
+        if (movedEntry instanceof ClonedServerEntry) {
+            movedEntry = ((ClonedServerEntry) movedEntry).getClonedEntry();
+        }
+        movedEntry.setDn(newDn);
+        if (newRdn != null) {
+            PartitionSupport.applyNewRdn(movedEntry, oldDn.getRdn(), newRdn, deleteOldRdn);
+        }
+        rewrite(id, newNormDn, movedEntry);
+        updateIndexes(id, entry, movedEntry);
+        children[parentIds[id]].removeValue(id);
+        childList(newParentId).add(id);
+        parentIds[id] = newParentId;
+
+        for (int i = 1; i < subtree.size(); i++) {
+            int childId = subtree.get(i);
+            Entry child = decode(childId);
+            Dn childDn = new Dn(schemaManager, child.getDn().getDescendantOf(oldDn).getName() + "," + newDn.getName());
+            child.setDn(childDn);
+            rewrite(childId, childDn.getNormName(), child);
+        }
+        compactIfNeeded();
+    }
+
+    private void collect(int id, ExprNode filter, List<Entry> result) throws LdapException {
+        Entry entry = decode(id);
+        if (PartitionSupport.evaluate(evaluator, filter, entry)) {
+            result.add(entry);
+        }
+    }
+
+    private boolean isInSubtree(int id, int baseId) {
+        while (id != NO_ID) {
+            if (id == baseId) {
+                return true;
+            }
+            id = parentIds[id];
+        }
+        return false;
+    }
+
+    /**
+     * Returns IDs of the entry and all its descendants, the entry first.
+     */
+    private IntList subtree(int id) {
+        IntList result = new IntList();
+        result.add(id);
+        for (int i = 0; i < result.size(); i++) {
+            IntList childIds = children[result.get(i)];
+            for (int j = 0; childIds != null && j < childIds.size(); j++) {
+                result.add(childIds.get(j));
+            }
+        }
+        return result;
+    }
+
+    private IntList childList(int id) {
+        if (children[id] == null) {
+            children[id] = new IntList();
+        }
+        return children[id];
+    }
+
+    private int indexOf(AttributeType attributeType) {
+        for (int i = 0; i < indexedAttributes.length; i++) {
+            if (indexedAttributes[i].equals(attributeType)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves index postings of the entry from the old to the new values. Either of the entries may be <code>null</code>.
+     */
+    private void updateIndexes(int id, Entry oldEntry, Entry newEntry) {
+        for (int i = 0; i < indexedAttributes.length; i++) {
+            long[] oldHashes = valueHashes(oldEntry, indexedAttributes[i]);
+            long[] newHashes = valueHashes(newEntry, indexedAttributes[i]);
+            for (long hash : oldHashes) {
+                if (Arrays.binarySearch(newHashes, hash) < 0) {
+                    indexes[i].remove(hash, id);
+                }
+            }
+            for (long hash : newHashes) {
+                if (Arrays.binarySearch(oldHashes, hash) < 0) {
+                    indexes[i].add(hash, id);
+                }
+            }
+        }
+    }
+
+    private static long[] valueHashes(Entry entry, AttributeType attributeType) {
+        Attribute attribute = entry != null ? entry.get(attributeType) : null;
+        if (attribute == null) {
+            return new long[0];
+        }
+        long[] hashes = new long[attribute.size()];
+        int i = 0;
+        for (Value<?> value : attribute) {
+            hashes[i++] = valueHash(PartitionSupport.normValue(value));
+        }
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    private String normName(Dn dn) throws LdapException {
+        if (!dn.isSchemaAware()) {
+            dn.apply(schemaManager);
+        }
+        return dn.getNormName();
+    }
+
+    private Entry decode(int id) throws LdapException {
+        ByteBuffer record = arena.read(addresses[id]);
+        EntryCodec.readString(record);
+        return EntryCodec.readEntry(record, schemaManager);
+    }
+
+    private String storedNormDn(int id) {
+        return EntryCodec.readString(arena.read(addresses[id]));
+    }
+
+    /**
+     * Encodes the record - the normalized DN followed by the entry.
+     */
+    private byte[] encode(String normDn, Entry entry) throws LdapException {
+        encodeBuffer.reset();
+        try {
+            DataOutputStream out = new DataOutputStream(encodeBuffer);
+            EntryCodec.writeString(out, normDn);
+            EntryCodec.writeEntry(out, entry);
+            out.flush();
+        } catch (IOException e) {
+            throw new LdapException("Unable to encode entry " + entry.getDn(), e);
+        }
+        return encodeBuffer.toByteArray();
+    }
+
+    private void store(int id, String normDn, Entry entry) throws LdapException {
+        addresses[id] = arena.append(encode(normDn, entry));
+        dnHashes[id] = dnHash(normDn);
+        insertDn(id);
+    }
+
+    /**
+     * Replaces the stored record of the entry including its DN.
+     */
+    private void rewrite(int id, String normDn, Entry entry) throws LdapException {
+        ensureDnTableCapacity();
+        removeDn(id);
+        arena.release(addresses[id]);
+        store(id, normDn, entry);
+    }
+
+    private int allocateId() {
+        if (freeIds.size() > 0) {
+            return freeIds.pop();
+        }
+        int id = ++maxId;
+        if (id == addresses.length) {
+            int capacity = addresses.length * 2;
+            addresses = Arrays.copyOf(addresses, capacity);
+            Arrays.fill(addresses, id, capacity, FREE);
+            parentIds = Arrays.copyOf(parentIds, capacity);
+            dnHashes = Arrays.copyOf(dnHashes, capacity);
+            children = Arrays.copyOf(children, capacity);
+        }
+        return id;
+    }
+
+    /**
+     * Copies live records to a new arena when more than a half of the allocated memory is garbage.
+     */
+    private void compactIfNeeded() {
+        if (arena.getGarbageBytes() < chunkSize || arena.getGarbageBytes() < arena.getAllocatedBytes() / 2) {
+            return;
+        }
+        OffHeapArena compacted = new OffHeapArena(chunkSize);
+        for (int id = 1; id <= maxId; id++) {
+            if (addresses[id] != FREE) {
+                addresses[id] = arena.copyTo(compacted, addresses[id]);
+            }
+        }
+        arena = compacted;
+    }
+
+    // DN hash table ----------------------------------------------------------
+
+    private int findId(String normDn) {
+        int hash = dnHash(normDn);
+        int mask = dnTable.length - 1;
+        for (int i = hash & mask;; i = (i + 1) & mask) {
+            int id = dnTable[i];
+            if (id == NO_ID) {
+                return NO_ID;
+            }
+            if (id != REMOVED && dnHashes[id] == hash && normDn.equals(storedNormDn(id))) {
+                return id;
+            }
+        }
+    }
+
+    private void insertDn(int id) {
+        int mask = dnTable.length - 1;
+        int i = dnHashes[id] & mask;
+        while (dnTable[i] > 0) {
+            i = (i + 1) & mask;
+        }
+        if (dnTable[i] == NO_ID) {
+            dnTableUsed++;
+        }
+        dnTable[i] = id;
+    }
+
+    private void removeDn(int id) {
+        int mask = dnTable.length - 1;
+        int i = dnHashes[id] & mask;
+        while (dnTable[i] != id) {
+            i = (i + 1) & mask;
+        }
+        dnTable[i] = REMOVED;
+    }
+
+    /**
+     * Makes sure one more DN fits to the table (load factor including removed slots at most 0.5).
+     */
+    private void ensureDnTableCapacity() {
+        if ((dnTableUsed + 1) * 2 <= dnTable.length) {
+            return;
+        }
+        int capacity = dnTable.length;
+        while (capacity < (count + 1) * 4) {
+            capacity *= 2;
+        }
+        dnTable = new int[capacity];
+        dnTableUsed = 0;
+        for (int id = 1; id <= maxId; id++) {
+            if (addresses[id] != FREE) {
+                insertDn(id);
+            }
+        }
+    }
+
+    private static int dnHash(String normDn) {
+        int h = normDn.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the normalized value.
+     */
+    private static long valueHash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Growable list of primitive ints.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        /**
+         * Removes the value, the last element takes its place.
+         */
+        void removeValue(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open-addressing map from 64-bit value hashes to posting lists of entry IDs. Hash collisions only add candidates, search
+     * results are always checked by the filter.
+     */
+    private static final class PostingIndex {
+        private long[] keys = new long[64];
+        private IntList[] lists = new IntList[64];
+        private int size;
+
+        IntList get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask);; i = (i + 1) & mask) {
+                if (lists[i] == null) {
+                    return null;
+                }
+                if (keys[i] == key) {
+                    return lists[i];
+                }
+            }
+        }
+
+        void add(long key, int id) {
+            IntList list = get(key);
+            if (list == null) {
+                if ((size + 1) * 2 > keys.length) {
+                    resize();
+                }
+                int mask = keys.length - 1;
+                int i = slot(key, mask);
+                while (lists[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                list = lists[i] = new IntList();
+                size++;
+            }
+            list.add(id);
+        }
+
+        void remove(long key, int id) {
+            IntList list = get(key);
+            if (list != null) {
+                list.removeValue(id);
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            IntList[] oldLists = lists;
+            keys = new long[oldKeys.length * 2];
+            lists = new IntList[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldLists[j] != null) {
+                    int i = slot(oldKeys[j], mask);
+                    while (lists[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    lists[i] = oldLists[j];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
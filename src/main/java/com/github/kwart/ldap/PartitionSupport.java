@@ -0,0 +1,173 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import java.util.function.Predicate;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.NotNode;
+import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.name.Ava;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.api.event.ExpressionEvaluator;
+
+/**
+ * Entry and filter helpers shared by the custom partition implementations ({@link MvccPartition}, {@link OffHeapPartition}).
+ */
+final class PartitionSupport {
+
+    private PartitionSupport() {
+    }
+
+    /**
+     * Applies a single modification to the entry.
+     */
+    static void applyModification(SchemaManager schemaManager, Entry entry, Modification modification) throws LdapException {
+        Attribute attribute = modification.getAttribute();
+        AttributeType attributeType = attribute.getAttributeType() != null ? attribute.getAttributeType()
+                : schemaManager.lookupAttributeTypeRegistry(attribute.getId());
+        Value<?>[] values = new Value<?>[attribute.size()];
+        int i = 0;
+        for (Value<?> value : attribute) {
+            values[i++] = value;
+        }
+        switch (modification.getOperation()) {
+            case ADD_ATTRIBUTE:
+                entry.add(attributeType, values);
+                break;
+            case REPLACE_ATTRIBUTE:
+                if (values.length == 0) {
+                    entry.removeAttributes(attributeType);
+                } else {
+                    entry.put(attributeType, values);
+                }
+                break;
+            case REMOVE_ATTRIBUTE:
+                if (values.length == 0) {
+                    entry.removeAttributes(attributeType);
+                } else {
+                    entry.remove(attributeType, values);
+                    Attribute remaining = entry.get(attributeType);
+                    if (remaining != null && remaining.size() == 0) {
+                        entry.removeAttributes(attributeType);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported modification " + modification.getOperation());
+        }
+    }
+
+    /**
+     * Updates the RDN attribute values of a renamed entry.
+     */
+    static void applyNewRdn(Entry entry, Rdn oldRdn, Rdn newRdn, boolean deleteOldRdn) throws LdapException {
+        if (deleteOldRdn) {
+            for (Ava ava : oldRdn) {
+                if (!containsAva(newRdn, ava)) {
+                    entry.remove(ava.getType(), ava.getValue());
+                }
+            }
+        }
+        for (Ava ava : newRdn) {
+            if (!entry.contains(ava.getType(), ava.getValue())) {
+                entry.add(ava.getType(), ava.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns an equality node which can be resolved from an index - either the filter itself or a child of the top-level AND.
+     */
+    static EqualityNode<?> findEquality(ExprNode filter, Predicate<AttributeType> indexed) {
+        if (filter instanceof EqualityNode) {
+            EqualityNode<?> node = (EqualityNode<?>) filter;
+            return node.getAttributeType() != null && indexed.test(node.getAttributeType()) ? node : null;
+        }
+        if (filter instanceof AndNode) {
+            for (ExprNode child : ((AndNode) filter).getChildren()) {
+                if (child instanceof EqualityNode) {
+                    AttributeType attributeType = ((EqualityNode<?>) child).getAttributeType();
+                    if (attributeType != null && indexed.test(attributeType)) {
+                        return (EqualityNode<?>) child;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates the filter against the entry. The core rewrites <code>(objectClass=*)</code> to an {@link ObjectClassNode}
+     * which the event {@link ExpressionEvaluator} doesn't support, so the branches are walked here.
+     */
+    static boolean evaluate(ExpressionEvaluator evaluator, ExprNode filter, Entry entry) throws LdapException {
+        if (filter instanceof ObjectClassNode) {
+            return true;
+        }
+        if (filter instanceof AndNode) {
+            for (ExprNode child : ((AndNode) filter).getChildren()) {
+                if (!evaluate(evaluator, child, entry)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (filter instanceof OrNode) {
+            for (ExprNode child : ((OrNode) filter).getChildren()) {
+                if (evaluate(evaluator, child, entry)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (filter instanceof NotNode) {
+            return !evaluate(evaluator, ((NotNode) filter).getFirstChild(), entry);
+        }
+        return evaluator.evaluate(filter, entry.getDn(), entry);
+    }
+
+    static String normValue(Value<?> value) {
+        Object normValue = value.getNormValue();
+        return normValue instanceof byte[] ? Strings.dumpBytes((byte[]) normValue) : String.valueOf(normValue);
+    }
+
+    private static boolean containsAva(Rdn rdn, Ava ava) {
+        for (Ava rdnAva : rdn) {
+            if (rdnAva.equals(ava)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
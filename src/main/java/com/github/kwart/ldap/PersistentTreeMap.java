@@ -0,0 +1,185 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+/**
+ * Immutable sorted map with String keys (persistent AVL tree). Updates return a new map which shares all untouched nodes with
+ * the original one, so an update costs <code>O(log n)</code> new nodes and the old version stays valid for its readers.
+ *
+ * @param <V> value type
+ */
+final class PersistentTreeMap<V> {
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentTreeMap EMPTY = new PersistentTreeMap<Object>(null);
+
+    private final Node<V> root;
+
+    private PersistentTreeMap(Node<V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentTreeMap<V> empty() {
+        return EMPTY;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    V get(String key) {
+        Node<V> node = root;
+        while (node != null) {
+            int c = key.compareTo(node.key);
+            if (c == 0) {
+                return node.value;
+            }
+            node = c < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    PersistentTreeMap<V> put(String key, V value) {
+        return new PersistentTreeMap<V>(put(root, key, value));
+    }
+
+    PersistentTreeMap<V> remove(String key) {
+        Node<V> newRoot = remove(root, key);
+        return newRoot == root ? this : new PersistentTreeMap<V>(newRoot);
+    }
+
+    /**
+     * Visits entries in the key order, starting with the first key greater than or equal to the given one, until the visitor
+     * returns <code>false</code>.
+     */
+    void visitFrom(String fromKey, Visitor<V> visitor) {
+        visit(root, fromKey, visitor);
+    }
+
+    interface Visitor<V> {
+        boolean visit(String key, V value);
+    }
+
+    private static <V> boolean visit(Node<V> node, String fromKey, Visitor<V> visitor) {
+        if (node == null) {
+            return true;
+        }
+        int c = fromKey == null ? -1 : fromKey.compareTo(node.key);
+        if (c > 0) {
+            return visit(node.right, fromKey, visitor);
+        }
+        if (c < 0 && !visit(node.left, fromKey, visitor)) {
+            return false;
+        }
+        return visitor.visit(node.key, node.value) && visit(node.right, null, visitor);
+    }
+
+    private static <V> Node<V> put(Node<V> node, String key, V value) {
+        if (node == null) {
+            return new Node<V>(key, value, null, null);
+        }
+        int c = key.compareTo(node.key);
+        if (c == 0) {
+            return new Node<V>(key, value, node.left, node.right);
+        }
+        return c < 0 ? balance(node.key, node.value, put(node.left, key, value), node.right)
+                : balance(node.key, node.value, node.left, put(node.right, key, value));
+    }
+
+    private static <V> Node<V> remove(Node<V> node, String key) {
+        if (node == null) {
+            return null;
+        }
+        int c = key.compareTo(node.key);
+        if (c < 0) {
+            Node<V> left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (c > 0) {
+            Node<V> right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<V> min = node.right;
+        while (min.left != null) {
+            min = min.left;
+        }
+        return balance(min.key, min.value, node.left, removeMin(node.right));
+    }
+
+    private static <V> Node<V> removeMin(Node<V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, removeMin(node.left), node.right);
+    }
+
+    private static <V> Node<V> balance(String key, V value, Node<V> left, Node<V> right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<V>(left.key, left.value, left.left, new Node<V>(key, value, left.right, right));
+            }
+            return new Node<V>(left.right.key, left.right.value, new Node<V>(left.key, left.value, left.left, left.right.left),
+                    new Node<V>(key, value, left.right.right, right));
+        }
+        if (diff < -1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<V>(right.key, right.value, new Node<V>(key, value, left, right.left), right.right);
+            }
+            return new Node<V>(right.left.key, right.left.value, new Node<V>(key, value, left, right.left.left),
+                    new Node<V>(right.key, right.value, right.left.right, right.right));
+        }
+        return new Node<V>(key, value, left, right);
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node<V> {
+        final String key;
+        final V value;
+        final Node<V> left;
+        final Node<V> right;
+        final int height;
+        final int size;
+
+        Node(String key, V value, Node<V> left, Node<V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+}
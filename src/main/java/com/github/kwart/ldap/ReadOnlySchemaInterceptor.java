@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.constants.ServerDNConstants;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+
+/**
+ * ApacheDS Interceptor which rejects all changes of the schema (entries under <code>ou=schema</code> and the
+ * <code>cn=schema</code> subentry). It's used when the schema manager is shared by more directory services.
+ */
+public class ReadOnlySchemaInterceptor extends BaseInterceptor {
+
+    public static final String NAME = "readOnlySchemaInterceptor";
+
+    private Dn schemaDn;
+    private Dn subschemaDn;
+
+    public ReadOnlySchemaInterceptor() {
+        super(NAME);
+    }
+
+    @Override
+    public void init(DirectoryService directoryService) throws LdapException {
+        super.init(directoryService);
+        schemaDn = new Dn(schemaManager, SchemaConstants.OU_SCHEMA);
+        subschemaDn = new Dn(schemaManager, ServerDNConstants.CN_SCHEMA_DN);
+    }
+
+    @Override
+    public void add(AddOperationContext addContext) throws LdapException {
+        check(addContext.getDn());
+        next(addContext);
+    }
+
+    @Override
+    public void modify(ModifyOperationContext modifyContext) throws LdapException {
+        check(modifyContext.getDn());
+        next(modifyContext);
+    }
+
+    @Override
+    public void delete(DeleteOperationContext deleteContext) throws LdapException {
+        check(deleteContext.getDn());
+        next(deleteContext);
+    }
+
+    @Override
+    public void move(MoveOperationContext moveContext) throws LdapException {
+        check(moveContext.getDn());
+        check(moveContext.getNewDn());
+        next(moveContext);
+    }
+
+    @Override
+    public void rename(RenameOperationContext renameContext) throws LdapException {
+        check(renameContext.getDn());
+        next(renameContext);
+    }
+
+    @Override
+    public void moveAndRename(MoveAndRenameOperationContext moveAndRenameContext) throws LdapException {
+        check(moveAndRenameContext.getDn());
+        check(moveAndRenameContext.getNewDn());
+        next(moveAndRenameContext);
+    }
+
+    private void check(Dn dn) throws LdapException {
+        if (dn != null && (dn.isDescendantOf(schemaDn) || dn.equals(schemaDn) || dn.equals(subschemaDn))) {
+            throw new LdapUnwillingToPerformException(ResultCodeEnum.UNWILLING_TO_PERFORM,
+                    "The schema is shared with other directory services and it's read-only");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ExtendedResponseImpl;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapSession;
+
+/**
+ * Extended operation which calls {@link LdapServer#reset()}. The request has no value and only administrators are allowed
+ * to use it, e.g.
+ *
+ * <pre>
+ * ldapexop -x -H ldap://127.0.0.1:10389 -D uid=admin,ou=system -w secret 2.25.221118852567468551507583486922078531704
+ * </pre>
+ */
+public class ResetExtendedOperationHandler implements ExtendedOperationHandler<ExtendedRequest, ExtendedResponse> {
+
+    /**
+     * OID of the reset request (UUID based OID, see ITU-T X.667).
+     */
+    public static final String OID = "2.25.221118852567468551507583486922078531704";
+
+    private final LdapServer server;
+
+    public ResetExtendedOperationHandler(LdapServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public String getOid() {
+        return OID;
+    }
+
+    @Override
+    public Set<String> getExtensionOids() {
+        return Collections.singleton(OID);
+    }
+
+    @Override
+    public void handleExtendedOperation(LdapSession session, ExtendedRequest req) throws Exception {
+        ExtendedResponse response = new ExtendedResponseImpl(req.getMessageId());
+        response.setResponseName(OID);
+        if (session.getCoreSession() == null || !session.getCoreSession().isAnAdministrator()) {
+            response.getLdapResult().setResultCode(ResultCodeEnum.INSUFFICIENT_ACCESS_RIGHTS);
+            response.getLdapResult().setDiagnosticMessage("Only administrators can reset the directory");
+        } else {
+            try {
+                server.reset();
+                response.getLdapResult().setResultCode(ResultCodeEnum.SUCCESS);
+            } catch (Exception e) {
+                response.getLdapResult().setResultCode(ResultCodeEnum.OTHER);
+                response.getLdapResult().setDiagnosticMessage("Reset failed: " + e.getMessage());
+            }
+        }
+        session.getIoSession().write(response);
+    }
+
+    @Override
+    public void setLdapServer(org.apache.directory.server.ldap.LdapServer ldapServer) {
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.ResourceMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled schema: all the schema LDIF files from the classpath stored in a single binary resource. The image is generated
+ * during the build by {@link SchemaImageGenerator}. Each record holds the resource path of the original LDIF file (relative to
+ * the <code>schema</code> directory, e.g. <code>ou=schema/cn=core/ou=attributetypes/m-oid=2.5.4.3.ldif</code>) and the entry.
+ */
+public final class SchemaImage {
+
+    public static final String RESOURCE_NAME = "ldap-server-schema.bin";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaImage.class);
+
+    private static final int MAGIC = 0x4c534348;
+    private static final int FORMAT_VERSION = 1;
+
+    private static volatile byte[] defaultImage;
+
+    private final List<String> paths;
+    private final List<Entry> entries;
+
+    private SchemaImage(List<String> paths, List<Entry> entries) {
+        this.paths = Collections.unmodifiableList(paths);
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Loads the image bundled with the server. The resource bytes are cached, but the entries are decoded again for each call,
+     * so the caller is free to modify them.
+     *
+     * @return schema image or <code>null</code> if the image resource is not on the classpath
+     */
+    public static SchemaImage loadDefault() throws IOException, LdapException {
+        byte[] image = defaultImage;
+        if (image == null) {
+            try (InputStream is = SchemaImage.class.getResourceAsStream("/" + RESOURCE_NAME)) {
+                if (is == null) {
+                    LOG.debug("Schema image {} not found on the classpath", RESOURCE_NAME);
+                    return null;
+                }
+                image = readFully(is);
+            }
+            defaultImage = image;
+        }
+        return read(ByteBuffer.wrap(image));
+    }
+
+    /**
+     * Reads the schema LDIF files from the classpath (the slow way).
+     */
+    public static SchemaImage scanClasspath() throws IOException, LdapException {
+        final Map<String, Boolean> resMap = ResourceMap.getResources(Pattern.compile("schema[/\\Q\\\\E]ou=schema.*"));
+        List<String> paths = new ArrayList<String>();
+        List<Entry> entries = new ArrayList<Entry>();
+        for (String resourcePath : new TreeSet<String>(resMap.keySet())) {
+            if (resourcePath.endsWith(".ldif")) {
+                URL resource = DefaultSchemaLdifExtractor.getUniqueResource(resourcePath, "Schema LDIF file");
+                LdifReader reader = new LdifReader(resource.openStream());
+                LdifEntry ldifEntry = reader.next();
+                reader.close();
+                paths.add(resourcePath.replace('\\', '/').substring("schema/".length()));
+                entries.add(ldifEntry.getEntry());
+            }
+        }
+        return new SchemaImage(paths, entries);
+    }
+
+    static SchemaImage read(ByteBuffer buffer) throws IOException, LdapException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported schema image format");
+        }
+        int count = buffer.getInt();
+        List<String> paths = new ArrayList<String>(count);
+        List<Entry> entries = new ArrayList<Entry>(count);
+        for (int i = 0; i < count; i++) {
+            paths.add(EntryCodec.readString(buffer));
+            entries.add(EntryCodec.readEntry(buffer, null));
+        }
+        return new SchemaImage(paths, entries);
+    }
+
+    public void write(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            EntryCodec.writeString(out, paths.get(i));
+            EntryCodec.writeEntry(out, entries.get(i));
+        }
+        out.flush();
+    }
+
+    /**
+     * Resource paths of the entries (relative to the <code>schema</code> directory), in the same order as {@link #getEntries()}.
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Schema entries (not schema aware) in the order of their resource paths, so parents always come before children.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(512 * 1024);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
+}
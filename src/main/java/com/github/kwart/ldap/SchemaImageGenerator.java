@@ -0,0 +1,68 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+
+/**
+ * Build-time tool which generates the {@link SchemaImage} resource from the schema LDIF files on the classpath. The image is
+ * verified by loading a {@link SchemaManager} from it before it's written.
+ *
+ * @see SchemaImage#RESOURCE_NAME
+ */
+public class SchemaImageGenerator {
+
+    /**
+     * The main.
+     *
+     * @param args target file
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args == null || args.length != 1) {
+            System.err.println("Usage:");
+            System.err.println("\tjava " + SchemaImageGenerator.class.getName() + " <targetFile>");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        SchemaImage image = SchemaImage.scanClasspath();
+        SchemaManager schemaManager = new DefaultSchemaManager(new SchemaImageLoader(image));
+        if (!schemaManager.loadAllEnabled()) {
+            throw new IllegalStateException("Schema can't be loaded from the image: " + schemaManager.getErrors());
+        }
+        File target = new File(args[0]);
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IllegalStateException("Unable to create directory " + parent);
+        }
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(target))) {
+            image.write(os);
+        }
+        System.out.println("Schema image with " + image.getEntries().size() + " entries written to " + target + " in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.registries.AbstractSchemaLoader;
+import org.apache.directory.api.ldap.model.schema.registries.Schema;
+
+/**
+ * Schema loader which serves the schema entries from a {@link SchemaImage} instead of scanning the classpath (as the
+ * {@link org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader} does).
+ */
+public class SchemaImageLoader extends AbstractSchemaLoader {
+
+    private static final String ATTRIBUTE_TYPES = "ou=attributetypes";
+    private static final String COMPARATORS = "ou=comparators";
+    private static final String DIT_CONTENT_RULES = "ou=ditcontentrules";
+    private static final String DIT_STRUCTURE_RULES = "ou=ditstructurerules";
+    private static final String MATCHING_RULES = "ou=matchingrules";
+    private static final String MATCHING_RULE_USE = "ou=matchingruleuse";
+    private static final String NAME_FORMS = "ou=nameforms";
+    private static final String NORMALIZERS = "ou=normalizers";
+    private static final String OBJECT_CLASSES = "ou=objectclasses";
+    private static final String SYNTAXES = "ou=syntaxes";
+    private static final String SYNTAX_CHECKERS = "ou=syntaxcheckers";
+
+    /**
+     * schema name (lower case) -&gt; schema object type container (e.g. "ou=attributetypes") -&gt; entries
+     */
+    private final Map<String, Map<String, List<Entry>>> schemaObjects = new HashMap<String, Map<String, List<Entry>>>();
+
+    public SchemaImageLoader(SchemaImage image) throws Exception {
+        List<String> paths = image.getPaths();
+        List<Entry> entries = image.getEntries();
+        for (int i = 0; i < paths.size(); i++) {
+            // e.g. ou=schema/cn=core.ldif or ou=schema/cn=core/ou=attributetypes/m-oid=2.5.4.3.ldif
+            String[] path = paths.get(i).split("/");
+            if (path.length == 2) {
+                // skip entries which don't describe a schema (e.g. ou=schema/ou=schemamodifications.ldif)
+                if (!entries.get(i).hasObjectClass(SchemaConstants.META_SCHEMA_OC)) {
+                    continue;
+                }
+                Schema schema = getSchema(entries.get(i));
+                if (schema != null) {
+                    schemaMap.put(schema.getSchemaName(), schema);
+                }
+            } else if (path.length == 4) {
+                String schemaName = path[1].substring(path[1].indexOf('=') + 1).toLowerCase();
+                Map<String, List<Entry>> types = schemaObjects.get(schemaName);
+                if (types == null) {
+                    types = new HashMap<String, List<Entry>>();
+                    schemaObjects.put(schemaName, types);
+                }
+                String type = path[2].toLowerCase();
+                List<Entry> list = types.get(type);
+                if (list == null) {
+                    list = new ArrayList<Entry>();
+                    types.put(type, list);
+                }
+                list.add(entries.get(i));
+            }
+        }
+    }
+
+    @Override
+    public List<Entry> loadAttributeTypes(Schema... schemas) {
+        return getEntries(ATTRIBUTE_TYPES, schemas);
+    }
+
+    @Override
+    public List<Entry> loadComparators(Schema... schemas) {
+        return getEntries(COMPARATORS, schemas);
+    }
+
+    @Override
+    public List<Entry> loadDitContentRules(Schema... schemas) {
+        return getEntries(DIT_CONTENT_RULES, schemas);
+    }
+
+    @Override
+    public List<Entry> loadDitStructureRules(Schema... schemas) {
+        return getEntries(DIT_STRUCTURE_RULES, schemas);
+    }
+
+    @Override
+    public List<Entry> loadMatchingRules(Schema... schemas) {
+        return getEntries(MATCHING_RULES, schemas);
+    }
+
+    @Override
+    public List<Entry> loadMatchingRuleUses(Schema... schemas) {
+        return getEntries(MATCHING_RULE_USE, schemas);
+    }
+
+    @Override
+    public List<Entry> loadNameForms(Schema... schemas) {
+        return getEntries(NAME_FORMS, schemas);
+    }
+
+    @Override
+    public List<Entry> loadNormalizers(Schema... schemas) {
+        return getEntries(NORMALIZERS, schemas);
+    }
+
+    @Override
+    public List<Entry> loadObjectClasses(Schema... schemas) {
+        return getEntries(OBJECT_CLASSES, schemas);
+    }
+
+    @Override
+    public List<Entry> loadSyntaxes(Schema... schemas) {
+        return getEntries(SYNTAXES, schemas);
+    }
+
+    @Override
+    public List<Entry> loadSyntaxCheckers(Schema... schemas) {
+        return getEntries(SYNTAX_CHECKERS, schemas);
+    }
+
+    private List<Entry> getEntries(String type, Schema... schemas) {
+        if (schemas == null) {
+            return new ArrayList<Entry>();
+        }
+        List<Entry> result = new ArrayList<Entry>();
+        for (Schema schema : schemas) {
+            Map<String, List<Entry>> types = schemaObjects.get(schema.getSchemaName().toLowerCase());
+            if (types != null && types.containsKey(type)) {
+                result.addAll(types.get(type));
+            }
+        }
+        return result;
+    }
+}
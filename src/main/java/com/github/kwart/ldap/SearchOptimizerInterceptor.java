@@ -0,0 +1,462 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.filter.SimpleNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Ava;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.UsageEnum;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+
+/**
+ * ApacheDS Interceptor which rewrites search filters using {@link FilterStatistics} of the user partitions:
+ * <ul>
+ * <li>AND children are sorted by the estimated number of matching entries, so the most selective indexed equality is used as
+ * the candidate source and cheap negative checks come first</li>
+ * <li>AND branches which can't match (a missing attribute or value) make the whole AND impossible</li>
+ * <li>OR branches which can't match are removed</li>
+ * </ul>
+ * Searches which can't match anything get a filter resolvable by an empty index lookup. Searches outside the user partitions
+ * are not changed. The statistics are updated by write operations; bulk loads and directory resets bypass the interceptor
+ * chain, so {@link #rebuild()} has to be called after them.
+ * The interceptor has to be placed after the normalization interceptor.
+ */
+public class SearchOptimizerInterceptor extends BaseInterceptor {
+
+    public static final String NAME = "searchOptimizerInterceptor";
+
+    /**
+     * Equality matching rules whose normalized values are equal exactly when the values match. Only values of attributes with
+     * these rules are proven missing by the statistics.
+     */
+    private static final Set<String> EXACT_MATCHING_RULES = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("caseIgnoreMatch", "caseExactMatch", "caseIgnoreIA5Match", "caseExactIA5Match",
+                    "distinguishedNameMatch", "numericStringMatch", "uuidMatch")));
+
+    private static final String IMPOSSIBLE_OBJECT_CLASS = "0.0";
+
+    private final FilterStatistics statistics = new FilterStatistics();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder reorderedSearches = new LongAdder();
+    private final LongAdder impossibleSearches = new LongAdder();
+    private final LongAdder removedBranches = new LongAdder();
+
+    private AttributeType objectClassType;
+
+    public SearchOptimizerInterceptor() {
+        super(NAME);
+    }
+
+    @Override
+    public void init(DirectoryService directoryService) throws LdapException {
+        super.init(directoryService);
+        objectClassType = schemaManager.lookupAttributeTypeRegistry(SchemaConstants.OBJECT_CLASS_AT);
+        try {
+            rebuild();
+        } catch (LdapException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LdapException("Collecting the search statistics failed", e);
+        }
+    }
+
+    /**
+     * Recollects the statistics from the user partitions.
+     */
+    public void rebuild() throws Exception {
+        final long start = System.currentTimeMillis();
+        statistics.clear();
+        for (Partition partition : directoryService.getPartitions()) {
+            if (!BulkLoader.isUserPartition(partition)) {
+                continue;
+            }
+            Cursor<Entry> cursor = directoryService.getAdminSession().search(partition.getSuffixDn(), SearchScope.SUBTREE,
+                    new PresenceNode(objectClassType), AliasDerefMode.NEVER_DEREF_ALIASES, SchemaConstants.ALL_USER_ATTRIBUTES);
+            try {
+                while (cursor.next()) {
+                    statistics.add(cursor.get());
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        System.out.println("Search statistics of " + statistics.getEntryCount() + " entries collected in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Returns the number of entries in user partitions.
+     */
+    public long getEntryCount() {
+        return statistics.getEntryCount();
+    }
+
+    /**
+     * Returns the number of entries containing each attribute (attribute name -&gt; count).
+     */
+    public Map<String, Long> getAttributeCounts() {
+        return statistics.getPresenceCounts();
+    }
+
+    /**
+     * Returns the number of searches seen by the optimizer.
+     */
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    /**
+     * Returns the number of searches whose filter was reordered or simplified.
+     */
+    public long getReorderedSearches() {
+        return reorderedSearches.sum();
+    }
+
+    /**
+     * Returns the number of searches which were proven to match no entry.
+     */
+    public long getImpossibleSearches() {
+        return impossibleSearches.sum();
+    }
+
+    /**
+     * Returns the number of removed OR branches which can't match any entry.
+     */
+    public long getRemovedBranches() {
+        return removedBranches.sum();
+    }
+
+    @Override
+    public void add(AddOperationContext addContext) throws LdapException {
+        Entry pending = isUserPartition(addContext.getDn()) ? addContext.getEntry().clone() : null;
+        addPending(pending);
+        try {
+            next(addContext);
+            addStatistics(addContext.getDn());
+        } finally {
+            removePending(pending);
+        }
+    }
+
+    @Override
+    public void modify(ModifyOperationContext modifyContext) throws LdapException {
+        Entry oldEntry = read(modifyContext.getDn());
+        Entry pending = null;
+        if (oldEntry != null) {
+            pending = new DefaultEntry(schemaManager);
+            for (Modification modification : modifyContext.getModItems()) {
+                if (modification.getOperation() != ModificationOperation.REMOVE_ATTRIBUTE) {
+                    Attribute attribute = modification.getAttribute();
+                    for (Value<?> value : attribute) {
+                        pending.add(attribute.getAttributeType(), value);
+                    }
+                }
+            }
+        }
+        addPending(pending);
+        try {
+            next(modifyContext);
+            addStatistics(modifyContext.getDn());
+            if (oldEntry != null) {
+                statistics.remove(oldEntry);
+            }
+        } finally {
+            removePending(pending);
+        }
+    }
+
+    @Override
+    public void delete(DeleteOperationContext deleteContext) throws LdapException {
+        Entry oldEntry = read(deleteContext.getDn());
+        next(deleteContext);
+        if (oldEntry != null) {
+            statistics.remove(oldEntry);
+        }
+    }
+
+    @Override
+    public void rename(RenameOperationContext renameContext) throws LdapException {
+        Entry oldEntry = read(renameContext.getDn());
+        Entry pending = oldEntry != null ? rdnEntry(renameContext.getNewRdn()) : null;
+        addPending(pending);
+        try {
+            next(renameContext);
+            addStatistics(renameContext.getNewDn());
+            if (oldEntry != null) {
+                statistics.remove(oldEntry);
+            }
+        } finally {
+            removePending(pending);
+        }
+    }
+
+    @Override
+    public void moveAndRename(MoveAndRenameOperationContext moveAndRenameContext) throws LdapException {
+        Entry oldEntry = read(moveAndRenameContext.getDn());
+        Entry pending = oldEntry != null ? rdnEntry(moveAndRenameContext.getNewRdn()) : null;
+        addPending(pending);
+        try {
+            next(moveAndRenameContext);
+            addStatistics(moveAndRenameContext.getNewDn());
+            if (oldEntry != null) {
+                statistics.remove(oldEntry);
+            }
+        } finally {
+            removePending(pending);
+        }
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        // the statistics only describe the user partitions
+        if (!isUserPartition(searchContext.getDn())) {
+            return next(searchContext);
+        }
+        searches.increment();
+        Plan plan = optimize(searchContext.getFilter());
+        if (plan.impossible) {
+            impossibleSearches.increment();
+            searchContext.setFilter(
+                    new EqualityNode<String>(objectClassType, new StringValue(objectClassType, IMPOSSIBLE_OBJECT_CLASS)));
+        } else if (plan.node != searchContext.getFilter()) {
+            reorderedSearches.increment();
+            searchContext.setFilter(plan.node);
+        }
+        return next(searchContext);
+    }
+
+    private Plan optimize(ExprNode node) {
+        if (node instanceof AndNode) {
+            List<ExprNode> children = ((AndNode) node).getChildren();
+            List<Plan> plans = new ArrayList<Plan>(children.size());
+            boolean changed = false;
+            for (ExprNode child : children) {
+                Plan plan = optimize(child);
+                if (plan.impossible) {
+                    return Plan.IMPOSSIBLE;
+                }
+                changed |= plan.node != child;
+                plans.add(plan);
+            }
+            List<Plan> sorted = new ArrayList<Plan>(plans);
+            sorted.sort((p1, p2) -> Long.compare(p1.estimate, p2.estimate));
+            changed |= !sorted.equals(plans);
+            long estimate = sorted.isEmpty() ? statistics.getEntryCount() : sorted.get(0).estimate;
+            return new Plan(changed ? new AndNode(nodes(sorted)) : node, estimate);
+        }
+        if (node instanceof OrNode) {
+            List<ExprNode> children = ((OrNode) node).getChildren();
+            List<Plan> plans = new ArrayList<Plan>(children.size());
+            boolean changed = false;
+            long estimate = 0L;
+            for (ExprNode child : children) {
+                Plan plan = optimize(child);
+                if (plan.impossible) {
+                    removedBranches.increment();
+                    changed = true;
+                    continue;
+                }
+                changed |= plan.node != child;
+                plans.add(plan);
+                estimate += plan.estimate;
+            }
+            if (plans.isEmpty()) {
+                return children.isEmpty() ? new Plan(node, 0L) : Plan.IMPOSSIBLE;
+            }
+            if (plans.size() == 1 && changed) {
+                return plans.get(0);
+            }
+            return new Plan(changed ? new OrNode(nodes(plans)) : node, Math.min(estimate, statistics.getEntryCount()));
+        }
+        if (node instanceof PresenceNode) {
+            return estimatePresence(node, ((PresenceNode) node).getAttributeType());
+        }
+        if (node instanceof EqualityNode) {
+            EqualityNode<?> equality = (EqualityNode<?>) node;
+            AttributeType attributeType = equality.getAttributeType();
+            if (isCounted(attributeType) && equality.getValue() != null && attributeType.getEquality() != null) {
+                long estimate = statistics.estimate(attributeType, PartitionSupport.normValue(equality.getValue()));
+                if (estimate == 0L && EXACT_MATCHING_RULES.contains(attributeType.getEquality().getName())) {
+                    return Plan.IMPOSSIBLE;
+                }
+                return new Plan(node, Math.max(estimate, 1L));
+            }
+            return estimatePresence(node, attributeType);
+        }
+        if (node instanceof SimpleNode || node instanceof SubstringNode) {
+            // >=, <=, ~= and substrings can match only entries with the attribute
+            return estimatePresence(node, node instanceof SubstringNode ? ((SubstringNode) node).getAttributeType()
+                    : ((SimpleNode<?>) node).getAttributeType());
+        }
+        return new Plan(node, statistics.getEntryCount());
+    }
+
+    private Plan estimatePresence(ExprNode node, AttributeType attributeType) {
+        if (!isCounted(attributeType)) {
+            return new Plan(node, statistics.getEntryCount());
+        }
+        long count = statistics.getPresenceCount(attributeType);
+        return count == 0L ? Plan.IMPOSSIBLE : new Plan(node, count);
+    }
+
+    /**
+     * Only user attributes without subtypes are counted exactly, filters on other attributes can match values which are not in
+     * the statistics.
+     */
+    private boolean isCounted(AttributeType attributeType) {
+        if (attributeType == null || attributeType.getUsage() != UsageEnum.USER_APPLICATIONS
+                || attributeType.equals(objectClassType)) {
+            return false;
+        }
+        try {
+            return !schemaManager.getAttributeTypeRegistry().hasDescendants(attributeType.getOid());
+        } catch (LdapException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Counts values which a write operation may store before the operation is executed. Searches don't wait for writes in
+     * the lock-free partitions, so the statistics have to include the new values before they are committed and keep the old
+     * ones until the stored entry is counted; otherwise a search could see a zero estimate of an existing value and be
+     * rewritten to the impossible filter.
+     */
+    private void addPending(Entry pending) {
+        if (pending != null) {
+            statistics.add(pending);
+        }
+    }
+
+    private void removePending(Entry pending) {
+        if (pending != null) {
+            statistics.remove(pending);
+        }
+    }
+
+    private Entry rdnEntry(Rdn rdn) throws LdapException {
+        Entry entry = new DefaultEntry(schemaManager);
+        for (Ava ava : rdn) {
+            entry.add(ava.getType(), ava.getValue());
+        }
+        return entry;
+    }
+
+    private void addStatistics(Dn dn) throws LdapException {
+        Entry entry = read(dn);
+        if (entry != null) {
+            statistics.add(entry);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the DN belongs to a user partition. The root DSE (which spans all the partitions) doesn't.
+     */
+    private boolean isUserPartition(Dn dn) {
+        if (dn == null || dn.isEmpty()) {
+            return false;
+        }
+        try {
+            return BulkLoader.isUserPartition(directoryService.getPartitionNexus().getPartition(dn));
+        } catch (LdapException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads user attributes of a stored entry from user partitions, the interceptor chain is not involved.
+     */
+    private Entry read(Dn dn) throws LdapException {
+        if (!isUserPartition(dn)) {
+            return null;
+        }
+        return directoryService.getPartitionNexus().lookup(new LookupOperationContext(directoryService.getAdminSession(), dn,
+                SchemaConstants.ALL_USER_ATTRIBUTES));
+    }
+
+    private static List<ExprNode> nodes(List<Plan> plans) {
+        List<ExprNode> result = new ArrayList<ExprNode>(plans.size());
+        for (Plan plan : plans) {
+            result.add(plan.node);
+        }
+        return result;
+    }
+
+    /**
+     * Optimized filter node with the estimated number of matching entries.
+     */
+    private static final class Plan {
+
+        static final Plan IMPOSSIBLE = new Plan(null, 0L, true);
+
+        final ExprNode node;
+        final long estimate;
+        final boolean impossible;
+
+        Plan(ExprNode node, long estimate) {
+            this(node, estimate, false);
+        }
+
+        private Plan(ExprNode node, long estimate, boolean impossible) {
+            this.node = node;
+            this.estimate = estimate;
+            this.impossible = impossible;
+        }
+    }
+}
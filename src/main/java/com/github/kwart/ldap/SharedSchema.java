@@ -0,0 +1,87 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.csn.CsnFactory;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+/**
+ * Schema manager and normalized schema entries built once per JVM and shared by directory services created with
+ * {@link InMemoryDirectoryServiceFactory#setSharedSchema(boolean)}. The shared schema must not be changed, the directory
+ * services protect it with {@link ReadOnlySchemaInterceptor}.
+ */
+final class SharedSchema {
+
+    private static SharedSchema instance;
+
+    private final SchemaManager schemaManager;
+    private final List<Entry> entries;
+
+    private SharedSchema(SchemaManager schemaManager, List<Entry> entries) {
+        this.schemaManager = schemaManager;
+        this.entries = entries;
+    }
+
+    static synchronized SharedSchema get() throws Exception {
+        if (instance == null) {
+            final long start = System.currentTimeMillis();
+            SchemaImage schemaImage = SchemaImage.loadDefault();
+            if (schemaImage == null) {
+                schemaImage = SchemaImage.scanClasspath();
+            }
+            SchemaManager schemaManager = InMemoryDirectoryServiceFactory.createSchemaManager(schemaImage);
+            CsnFactory csnFactory = new CsnFactory(0);
+            List<Entry> entries = new ArrayList<Entry>(schemaImage.getEntries().size());
+            for (Entry imageEntry : schemaImage.getEntries()) {
+                Entry entry = new DefaultEntry(schemaManager, imageEntry);
+                if (entry.get(SchemaConstants.ENTRY_CSN_AT) == null) {
+                    entry.add(SchemaConstants.ENTRY_CSN_AT, csnFactory.newInstance().toString());
+                }
+                if (entry.get(SchemaConstants.ENTRY_UUID_AT) == null) {
+                    entry.add(SchemaConstants.ENTRY_UUID_AT, UUID.randomUUID().toString());
+                }
+                entries.add(entry);
+            }
+            instance = new SharedSchema(schemaManager, Collections.unmodifiableList(entries));
+            System.out.println("Shared schema created in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return instance;
+    }
+
+    SchemaManager getSchemaManager() {
+        return schemaManager;
+    }
+
+    /**
+     * Returns normalized entries of the schema partition. Callers have to clone the entries before storing them.
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+}
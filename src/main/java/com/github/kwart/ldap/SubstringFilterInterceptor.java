@@ -0,0 +1,73 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.BranchNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+
+/**
+ * ApacheDS Interceptor which works around the indexed substring search of the default partitions. When the filter has an
+ * initial part (e.g. <code>(cn=jam*son)</code>), the partition scans the attribute index from the initial and stops at the
+ * first key which doesn't match the whole filter, so matching entries behind it are lost. The interceptor turns such filters
+ * into <code>(&amp;(cn=jam*)(cn=jam*son))</code>. The initial-only filter is used for the index scan and the original one is
+ * evaluated on the candidates. It has to be the last interceptor in the chain.
+ */
+public class SubstringFilterInterceptor extends BaseInterceptor {
+
+    public static final String NAME = "substringFilterInterceptor";
+
+    public SubstringFilterInterceptor() {
+        super(NAME);
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        searchContext.setFilter(rewrite(searchContext.getFilter()));
+        return next(searchContext);
+    }
+
+    static ExprNode rewrite(ExprNode node) {
+        if (node instanceof BranchNode) {
+            List<ExprNode> children = ((BranchNode) node).getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                children.set(i, rewrite(children.get(i)));
+            }
+        } else if (node instanceof SubstringNode) {
+            SubstringNode substringNode = (SubstringNode) node;
+            List<String> any = substringNode.getAny();
+            if (substringNode.getAttributeType() != null && substringNode.getInitial() != null
+                    && (substringNode.getFinal() != null || (any != null && !any.isEmpty()))) {
+                // the initial-only node goes first, so it's picked for the index scan when the counts are equal
+                return new AndNode(new SubstringNode(substringNode.getAttributeType(), substringNode.getInitial(), null),
+                        substringNode);
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.EqualityNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.xdbm.Store;
+
+/**
+ * ApacheDS Interceptor which keeps {@link TrigramIndex trigram indexes} configured by {@link IndexConfig} and uses them to
+ * narrow searches with substring filters (e.g. <code>(|(cn=*smi*)(mail=*smi*))</code>). The candidates found in the index are
+ * added to the search filter as an <code>entryUUID</code> disjunction, so the partition evaluates the original filter only on
+ * them instead of scanning all the entries. It has to be placed after the normalization interceptor.
+ * <p>
+ * Only the default (AVL) partitions are indexed, their <code>entryUUID</code> system index makes the candidate lookup cheap.
+ * Bulk loads and directory resets bypass the interceptor chain, so {@link #rebuild()} has to be called after them.
+ */
+public class SubstringIndexInterceptor extends BaseInterceptor {
+
+    public static final String NAME = "substringIndexInterceptor";
+
+    /**
+     * Maximal number of candidates which are added to the search filter. Searches with more candidates are not changed.
+     */
+    public static final int DEFAULT_MAX_CANDIDATES = 1000;
+
+    private static final String NO_ENTRY_UUID = "00000000-0000-0000-0000-000000000000";
+
+    private final IndexConfig indexConfig;
+    private final int maxCandidates;
+    private final Map<String, TrigramIndex> indexes = new ConcurrentHashMap<String, TrigramIndex>();
+    private final LongAdder narrowedSearches = new LongAdder();
+
+    private AttributeType entryUuidType;
+
+    public SubstringIndexInterceptor(IndexConfig indexConfig) {
+        this(indexConfig, DEFAULT_MAX_CANDIDATES);
+    }
+
+    public SubstringIndexInterceptor(IndexConfig indexConfig, int maxCandidates) {
+        super(NAME);
+        this.indexConfig = indexConfig;
+        this.maxCandidates = maxCandidates;
+    }
+
+    @Override
+    public void init(DirectoryService directoryService) throws LdapException {
+        super.init(directoryService);
+        entryUuidType = schemaManager.lookupAttributeTypeRegistry(SchemaConstants.ENTRY_UUID_AT);
+        try {
+            rebuild();
+        } catch (LdapException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new LdapException("Building the substring indexes failed", e);
+        }
+    }
+
+    /**
+     * Recreates the substring indexes from the user partitions.
+     */
+    public void rebuild() throws Exception {
+        indexes.clear();
+        for (Partition partition : directoryService.getPartitions()) {
+            if (!BulkLoader.isUserPartition(partition)) {
+                continue;
+            }
+            List<AttributeType> attributeTypes = new ArrayList<AttributeType>();
+            for (String attributeId : indexConfig.getSubstringIndexedAttributes(schemaManager, partition.getSuffixDn())) {
+                AttributeType attributeType = schemaManager.getAttributeType(attributeId);
+                if (attributeType == null) {
+                    System.out.println("Skipping substring index for unknown attribute " + attributeId);
+                } else if (!attributeTypes.contains(attributeType)) {
+                    attributeTypes.add(attributeType);
+                }
+            }
+            if (attributeTypes.isEmpty()) {
+                continue;
+            }
+            if (!(partition instanceof Store)) {
+                System.out.println("Substring indexes are not supported in partition " + partition.getId());
+                continue;
+            }
+            final long start = System.currentTimeMillis();
+            TrigramIndex index = new TrigramIndex(attributeTypes);
+            Cursor<Entry> cursor = directoryService.getAdminSession().search(partition.getSuffixDn(), SearchScope.SUBTREE,
+                    new PresenceNode(schemaManager.getAttributeType(SchemaConstants.OBJECT_CLASS_AT)),
+                    AliasDerefMode.NEVER_DEREF_ALIASES, getAttributeIds(index));
+            try {
+                while (cursor.next()) {
+                    index.update(cursor.get());
+                }
+            } finally {
+                cursor.close();
+            }
+            indexes.put(partition.getId(), index);
+            System.out.println("Substring index of " + index.size() + " entries (" + index.getTrigramCount()
+                    + " trigrams) in partition " + partition.getId() + " built in " + (System.currentTimeMillis() - start)
+                    + "ms");
+        }
+    }
+
+    /**
+     * Returns the number of searches which were narrowed by a substring index.
+     */
+    public long getNarrowedSearches() {
+        return narrowedSearches.sum();
+    }
+
+    @Override
+    public void add(AddOperationContext addContext) throws LdapException {
+        next(addContext);
+        TrigramIndex index = getIndex(addContext.getDn());
+        if (index != null) {
+            index.update(lookup(addContext.getDn(), index));
+        }
+    }
+
+    @Override
+    public void modify(ModifyOperationContext modifyContext) throws LdapException {
+        next(modifyContext);
+        TrigramIndex index = getIndex(modifyContext.getDn());
+        if (index == null) {
+            return;
+        }
+        for (Modification modification : modifyContext.getModItems()) {
+            Attribute attribute = modification.getAttribute();
+            if (attribute != null && index.isIndexed(attribute.getAttributeType())) {
+                Entry entry = modifyContext.getAlteredEntry();
+                index.update(entry != null && entry.get(entryUuidType) != null ? entry
+                        : lookup(modifyContext.getDn(), index));
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void delete(DeleteOperationContext deleteContext) throws LdapException {
+        TrigramIndex index = getIndex(deleteContext.getDn());
+        Entry entry = null;
+        if (index != null) {
+            entry = deleteContext.getEntry();
+            if (entry == null || entry.get(entryUuidType) == null) {
+                entry = lookup(deleteContext.getDn(), index);
+            }
+        }
+        next(deleteContext);
+        if (entry != null && entry.get(entryUuidType) != null) {
+            index.remove(entry.get(entryUuidType).getString());
+        }
+    }
+
+    @Override
+    public void rename(RenameOperationContext renameContext) throws LdapException {
+        next(renameContext);
+        // the RDN value may be indexed
+        TrigramIndex index = getIndex(renameContext.getNewDn());
+        if (index != null) {
+            index.update(lookup(renameContext.getNewDn(), index));
+        }
+    }
+
+    @Override
+    public void moveAndRename(MoveAndRenameOperationContext moveAndRenameContext) throws LdapException {
+        next(moveAndRenameContext);
+        TrigramIndex index = getIndex(moveAndRenameContext.getNewDn());
+        if (index != null) {
+            index.update(lookup(moveAndRenameContext.getNewDn(), index));
+        }
+    }
+
+    @Override
+    public EntryFilteringCursor search(SearchOperationContext searchContext) throws LdapException {
+        TrigramIndex index = getIndex(searchContext.getDn());
+        if (index != null) {
+            int[] candidates = index.getCandidates(searchContext.getFilter());
+            if (candidates != null && candidates.length <= maxCandidates) {
+                searchContext.setFilter(new AndNode(searchContext.getFilter(), createCandidateFilter(index, candidates)));
+                narrowedSearches.increment();
+            }
+        }
+        return next(searchContext);
+    }
+
+    private ExprNode createCandidateFilter(TrigramIndex index, int[] candidates) throws LdapException {
+        if (candidates.length == 0) {
+            return new EqualityNode<String>(entryUuidType, new StringValue(entryUuidType, NO_ENTRY_UUID));
+        }
+        if (candidates.length == 1) {
+            return new EqualityNode<String>(entryUuidType, new StringValue(entryUuidType, index.getUuid(candidates[0])));
+        }
+        List<ExprNode> children = new ArrayList<ExprNode>(candidates.length);
+        for (int id : candidates) {
+            children.add(new EqualityNode<String>(entryUuidType, new StringValue(entryUuidType, index.getUuid(id))));
+        }
+        return new OrNode(children);
+    }
+
+    private TrigramIndex getIndex(Dn dn) {
+        if (indexes.isEmpty() || dn == null || dn.isEmpty()) {
+            return null;
+        }
+        try {
+            return indexes.get(directoryService.getPartitionNexus().getPartition(dn).getId());
+        } catch (LdapException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the stored entry directly from the partitions, the interceptor chain is not involved.
+     */
+    private Entry lookup(Dn dn, TrigramIndex index) throws LdapException {
+        return directoryService.getPartitionNexus()
+                .lookup(new LookupOperationContext(directoryService.getAdminSession(), dn, getAttributeIds(index)));
+    }
+
+    private static String[] getAttributeIds(TrigramIndex index) {
+        List<AttributeType> attributeTypes = index.getAttributeTypes();
+        String[] result = new String[attributeTypes.size() + 1];
+        for (int i = 0; i < attributeTypes.size(); i++) {
+            result[i] = attributeTypes.get(i).getOid();
+        }
+        result[attributeTypes.size()] = SchemaConstants.ENTRY_UUID_AT;
+        return result;
+    }
+}
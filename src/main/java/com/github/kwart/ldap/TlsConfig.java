@@ -0,0 +1,332 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.apache.directory.server.protocol.shared.transport.Transport;
+import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
+import org.apache.mina.filter.ssl.SslFilter;
+
+/**
+ * TLS settings of the LDAPS transport. The SSL filter created by ApacheDS is replaced with one which uses a server SSL
+ * context with a configurable session cache (resumed handshakes skip the expensive key exchange), enables TLS 1.2 by
+ * default and orders the cipher suites from the fastest ones (AEAD with ECDHE key exchange). The server cipher suite order is
+ * enforced.
+ */
+public class TlsConfig {
+
+    /**
+     * Name of the ApacheDS filter which handles TLS on the LDAPS transport.
+     */
+    static final String SSL_FILTER = "sslFilter";
+
+    /**
+     * Protocols enabled when no protocol is configured explicitly (the ones supported by the JVM). TLS 1.3 has to be
+     * enabled explicitly: the MINA 2.0 SSL handler doesn't handle its post-handshake messages and the RSA key generated by
+     * ApacheDS is too short for the RSA-PSS signatures TLS 1.3 requires.
+     */
+    public static final List<String> DEFAULT_PROTOCOLS = Arrays.asList("TLSv1.2");
+
+    private static final String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+    private List<String> enabledProtocols;
+    private List<String> enabledCipherSuites;
+    private boolean needClientAuth;
+    private boolean wantClientAuth;
+    private Integer sessionCacheSize;
+    private Integer sessionTimeout;
+    private Boolean sessionTickets;
+
+    /**
+     * Creates configuration from CLI values.
+     */
+    public static TlsConfig parse(CLIArguments cliArguments) {
+        return new TlsConfig().setEnabledProtocols(cliArguments.getSslEnabledProtocols())
+                .setEnabledCipherSuites(cliArguments.getSslCipherSuite()).setNeedClientAuth(cliArguments.isSslNeedClientAuth())
+                .setWantClientAuth(cliArguments.isSslWantClientAuth())
+                .setSessionCacheSize(cliArguments.getSslSessionCacheSize())
+                .setSessionTimeout(cliArguments.getSslSessionTimeout()).setSessionTickets(cliArguments.getSslSessionTickets());
+    }
+
+    /**
+     * Sets enabled protocols. The {@link #DEFAULT_PROTOCOLS} are used if the list is empty.
+     */
+    public TlsConfig setEnabledProtocols(List<String> enabledProtocols) {
+        this.enabledProtocols = enabledProtocols;
+        return this;
+    }
+
+    /**
+     * Sets enabled cipher suites in the order of preference. The JVM defaults ordered by {@link #orderCipherSuites(String[])}
+     * are used if the list is empty.
+     */
+    public TlsConfig setEnabledCipherSuites(List<String> enabledCipherSuites) {
+        this.enabledCipherSuites = enabledCipherSuites;
+        return this;
+    }
+
+    public TlsConfig setNeedClientAuth(boolean needClientAuth) {
+        this.needClientAuth = needClientAuth;
+        return this;
+    }
+
+    public TlsConfig setWantClientAuth(boolean wantClientAuth) {
+        this.wantClientAuth = wantClientAuth;
+        return this;
+    }
+
+    /**
+     * Sets maximal number of TLS sessions kept for resumption (0 means unlimited).
+     */
+    public TlsConfig setSessionCacheSize(Integer sessionCacheSize) {
+        if (sessionCacheSize != null && sessionCacheSize < 0) {
+            throw new IllegalArgumentException("TLS session cache size can't be negative: " + sessionCacheSize);
+        }
+        this.sessionCacheSize = sessionCacheSize;
+        return this;
+    }
+
+    /**
+     * Sets time (in seconds) for which a TLS session can be resumed (0 means no limit).
+     */
+    public TlsConfig setSessionTimeout(Integer sessionTimeout) {
+        if (sessionTimeout != null && sessionTimeout < 0) {
+            throw new IllegalArgumentException("TLS session timeout can't be negative: " + sessionTimeout);
+        }
+        this.sessionTimeout = sessionTimeout;
+        return this;
+    }
+
+    /**
+     * Enables or disables stateless resumption with session tickets (Java 13+). The JVM reads the setting once, so it has
+     * to be applied before the first TLS connection in the JVM.
+     */
+    public TlsConfig setSessionTickets(Boolean sessionTickets) {
+        this.sessionTickets = sessionTickets;
+        return this;
+    }
+
+    /**
+     * Replaces the SSL filter of a started LDAPS transport and adds the handshake counter after it.
+     *
+     * @param keyManagerFactory key managers with the server certificate (the ones loaded by ApacheDS)
+     * @param counter handshake counter or <code>null</code>
+     */
+    public void install(Transport transport, KeyManagerFactory keyManagerFactory, TlsHandshakeCounter counter)
+            throws GeneralSecurityException {
+        if (transport.getAcceptor() == null) {
+            return;
+        }
+        DefaultIoFilterChainBuilder chain = transport.getAcceptor().getFilterChain();
+        if (!chain.contains(SSL_FILTER)) {
+            System.out.println("The TLS settings can't be applied, SSL filter not found in transport " + transport);
+            return;
+        }
+        SSLContext sslContext = createSslContext(keyManagerFactory.getKeyManagers());
+        SslFilter sslFilter = new SslFilter(sslContext);
+        sslFilter.setEnabledProtocols(getProtocols(sslContext));
+        sslFilter.setEnabledCipherSuites(getCipherSuites(sslContext));
+        sslFilter.setNeedClientAuth(needClientAuth);
+        sslFilter.setWantClientAuth(wantClientAuth);
+        chain.replace(SSL_FILTER, sslFilter);
+        if (counter != null) {
+            chain.addAfter(SSL_FILTER, TlsHandshakeCounter.NAME, counter);
+        }
+    }
+
+    SSLContext createSslContext(KeyManager[] keyManagers) throws GeneralSecurityException {
+        if (sessionTickets != null) {
+            System.setProperty(SESSION_TICKETS_PROPERTY, sessionTickets.toString());
+        }
+        SSLContext delegate = SSLContext.getInstance("TLS");
+        // client certificates are not verified, the same as in ApacheDS
+        delegate.init(keyManagers, new TrustManager[] { new AcceptAllTrustManager() }, new SecureRandom());
+        SSLSessionContext sessionContext = delegate.getServerSessionContext();
+        if (sessionCacheSize != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout != null) {
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+        return new ServerOrderSslContext(delegate);
+    }
+
+    String[] getProtocols(SSLContext sslContext) {
+        if (enabledProtocols != null && !enabledProtocols.isEmpty()) {
+            return enabledProtocols.toArray(new String[enabledProtocols.size()]);
+        }
+        List<String> supported = Arrays.asList(sslContext.getSupportedSSLParameters().getProtocols());
+        List<String> result = new ArrayList<String>();
+        for (String protocol : DEFAULT_PROTOCOLS) {
+            if (supported.contains(protocol)) {
+                result.add(protocol);
+            }
+        }
+        return result.isEmpty() ? sslContext.getDefaultSSLParameters().getProtocols() : result.toArray(new String[result.size()]);
+    }
+
+    String[] getCipherSuites(SSLContext sslContext) {
+        if (enabledCipherSuites != null && !enabledCipherSuites.isEmpty()) {
+            return enabledCipherSuites.toArray(new String[enabledCipherSuites.size()]);
+        }
+        return orderCipherSuites(sslContext.getDefaultSSLParameters().getCipherSuites());
+    }
+
+    /**
+     * Orders the cipher suites from the cheapest ones: TLS 1.3 suites, ECDHE with AES-GCM or ChaCha20-Poly1305, other ECDHE
+     * suites and then the rest. AES-128 goes before AES-256 in each group. The order is otherwise kept.
+     */
+    static String[] orderCipherSuites(String[] cipherSuites) {
+        List<String> result = new ArrayList<String>(Arrays.asList(cipherSuites));
+        Collections.sort(result, Comparator.comparingInt(TlsConfig::cipherSuiteRank));
+        return result.toArray(new String[result.size()]);
+    }
+
+    private static int cipherSuiteRank(String cipherSuite) {
+        int rank;
+        if (cipherSuite.startsWith("TLS_AES_") || cipherSuite.startsWith("TLS_CHACHA20_")) {
+            rank = 0;
+        } else if (cipherSuite.startsWith("TLS_ECDHE_") && (cipherSuite.contains("_GCM_") || cipherSuite.contains("_CHACHA20_"))) {
+            rank = 2;
+        } else if (cipherSuite.startsWith("TLS_ECDHE_")) {
+            rank = 4;
+        } else {
+            rank = 6;
+        }
+        return cipherSuite.contains("_AES_256_") ? rank + 1 : rank;
+    }
+
+    /**
+     * SSL context which creates engines enforcing the server cipher suite order.
+     */
+    private static final class ServerOrderSslContext extends SSLContext {
+
+        ServerOrderSslContext(SSLContext delegate) {
+            super(new ServerOrderSslContextSpi(delegate), delegate.getProvider(), delegate.getProtocol());
+        }
+    }
+
+    private static final class ServerOrderSslContextSpi extends SSLContextSpi {
+
+        private final SSLContext delegate;
+
+        ServerOrderSslContextSpi(SSLContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom random)
+                throws KeyManagementException {
+            delegate.init(keyManagers, trustManagers, random);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return useServerOrder(delegate.createSSLEngine());
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            return useServerOrder(delegate.createSSLEngine(host, port));
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        private static SSLEngine useServerOrder(SSLEngine engine) {
+            SSLParameters parameters = engine.getSSLParameters();
+            parameters.setUseCipherSuitesOrder(true);
+            engine.setSSLParameters(parameters);
+            return engine;
+        }
+    }
+
+    private static final class AcceptAllTrustManager extends X509ExtendedTrustManager {
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+    }
+}
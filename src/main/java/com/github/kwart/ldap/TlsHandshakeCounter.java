@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSession;
+
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.ssl.SslFilter;
+
+/**
+ * MINA filter placed right after the SSL filter which counts completed TLS handshakes. A handshake is counted as resumed
+ * when the negotiated TLS session is older than the connection, i.e. it was taken from the session cache (or a session
+ * ticket) instead of being created by a full handshake.
+ */
+public class TlsHandshakeCounter extends IoFilterAdapter {
+
+    public static final String NAME = "tlsHandshakeCounter";
+
+    private static final AttributeKey COUNTED = new AttributeKey(TlsHandshakeCounter.class, "counted");
+
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception {
+        if (!session.containsAttribute(COUNTED)) {
+            SSLSession sslSession = (SSLSession) session.getAttribute(SslFilter.SSL_SESSION);
+            if (sslSession != null) {
+                session.setAttribute(COUNTED, Boolean.TRUE);
+                if (sslSession.getCreationTime() < session.getCreationTime()) {
+                    resumedHandshakes.increment();
+                } else {
+                    fullHandshakes.increment();
+                }
+            }
+        }
+        nextFilter.messageReceived(session, message);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.server.protocol.shared.transport.TcpTransport;
+import org.apache.directory.server.protocol.shared.transport.Transport;
+import org.apache.mina.core.filterchain.DefaultIoFilterChainBuilder;
+import org.apache.mina.core.service.IoAcceptor;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.transport.socket.SocketSessionConfig;
+
+/**
+ * Network settings shared by the LDAP and LDAPS transports. Unset values (<code>null</code>) keep the ApacheDS and MINA
+ * defaults.
+ */
+public class TransportConfig {
+
+    /**
+     * Name of the ApacheDS filter which hands decoded requests over to the request processing threads.
+     */
+    static final String EXECUTOR_FILTER = "executor";
+
+    /**
+     * Name of the ApacheDS LDAP codec filter, it's added to the transport filter chain by the server start.
+     */
+    static final String CODEC_FILTER = "codec";
+
+    /**
+     * Number of requests which can wait in the worker pool queue per worker thread. When the queue is full, the I/O thread
+     * processes the request itself, so it stops reading from its connections until the workers catch up.
+     */
+    static final int WORKER_QUEUE_PER_THREAD = 64;
+
+    private Integer ioThreads;
+    private Integer workerThreads;
+    private Integer backlog;
+    private Integer receiveBufferSize;
+    private Integer sendBufferSize;
+    private Boolean tcpNoDelay;
+    private Integer maxPduSize;
+    private boolean virtualThreads;
+
+    /**
+     * Creates configuration from CLI values.
+     */
+    public static TransportConfig parse(CLIArguments cliArguments) {
+        return new TransportConfig().setIoThreads(cliArguments.getIoThreads())
+                .setWorkerThreads(cliArguments.getWorkerThreads()).setBacklog(cliArguments.getBacklog())
+                .setReceiveBufferSize(cliArguments.getSocketReceiveBuffer())
+                .setSendBufferSize(cliArguments.getSocketSendBuffer()).setTcpNoDelay(cliArguments.getTcpNoDelay())
+                .setMaxPduSize(cliArguments.getMaxPduSize()).setVirtualThreads(cliArguments.isVirtualThreads()).validate();
+    }
+
+    /**
+     * Sets number of MINA I/O processors (selector threads) of each transport.
+     */
+    public TransportConfig setIoThreads(Integer ioThreads) {
+        this.ioThreads = checkPositive("I/O threads", ioThreads);
+        return this;
+    }
+
+    /**
+     * Sets number of threads which process the LDAP requests (shared by all transports). ApacheDS uses the number of I/O
+     * threads by default.
+     */
+    public TransportConfig setWorkerThreads(Integer workerThreads) {
+        this.workerThreads = checkPositive("Worker threads", workerThreads);
+        return this;
+    }
+
+    /**
+     * Sets length of the accept queue of the listening sockets.
+     */
+    public TransportConfig setBacklog(Integer backlog) {
+        this.backlog = checkPositive("Backlog", backlog);
+        return this;
+    }
+
+    public TransportConfig setReceiveBufferSize(Integer receiveBufferSize) {
+        this.receiveBufferSize = checkPositive("Socket receive buffer size", receiveBufferSize);
+        return this;
+    }
+
+    public TransportConfig setSendBufferSize(Integer sendBufferSize) {
+        this.sendBufferSize = checkPositive("Socket send buffer size", sendBufferSize);
+        return this;
+    }
+
+    public TransportConfig setTcpNoDelay(Boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * Sets maximal size (in bytes) of a received LDAP message. Larger requests are rejected.
+     */
+    public TransportConfig setMaxPduSize(Integer maxPduSize) {
+        this.maxPduSize = checkPositive("Maximal PDU size", maxPduSize);
+        return this;
+    }
+
+    /**
+     * Enables processing of each LDAP request in a new virtual thread (Java 21+).
+     */
+    public TransportConfig setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Checks the combination of the settings, so invalid values are reported before the directory service starts.
+     *
+     * @throws IllegalArgumentException if virtual threads are combined with worker threads
+     * @throws IllegalStateException if virtual threads are requested and the Java runtime doesn't support them
+     */
+    public TransportConfig validate() {
+        if (virtualThreads) {
+            if (workerThreads != null) {
+                throw new IllegalArgumentException("The --virtual-threads and --worker-threads can't be combined");
+            }
+            getVirtualThreadExecutorFactory();
+        }
+        return this;
+    }
+
+    public Integer getMaxPduSize() {
+        return maxPduSize;
+    }
+
+    /**
+     * Applies the settings which have to be known before the transport is started.
+     */
+    public void configure(TcpTransport transport) {
+        if (ioThreads != null) {
+            transport.setNbThreads(ioThreads);
+        }
+        if (backlog != null) {
+            transport.setBackLog(backlog);
+        }
+    }
+
+    /**
+     * Applies the socket options and the request executor to a transport which has its filter chain created but isn't
+     * bound yet. ApacheDS sets the send buffer size to 64 KiB right before the bind, so the configured send buffer size
+     * has to be applied once more by {@link #configureSendBuffer(Transport)} after the start.
+     *
+     * @param executor executor for the request processing or <code>null</code> to keep the ApacheDS one
+     */
+    public void configureSessions(Transport transport, Executor executor) {
+        IoAcceptor acceptor = transport.getAcceptor();
+        if (acceptor == null) {
+            return;
+        }
+        if (acceptor.getSessionConfig() instanceof SocketSessionConfig) {
+            SocketSessionConfig sessionConfig = (SocketSessionConfig) acceptor.getSessionConfig();
+            if (receiveBufferSize != null) {
+                sessionConfig.setReceiveBufferSize(receiveBufferSize);
+            }
+            if (sendBufferSize != null) {
+                sessionConfig.setSendBufferSize(sendBufferSize);
+            }
+            if (tcpNoDelay != null) {
+                sessionConfig.setTcpNoDelay(tcpNoDelay);
+            }
+        }
+        if (executor != null) {
+            DefaultIoFilterChainBuilder chain = acceptor.getFilterChain();
+            ExecutorFilter filter = new ExecutorFilter(executor, IoEventType.MESSAGE_RECEIVED);
+            if (chain.contains(EXECUTOR_FILTER)) {
+                chain.replace(EXECUTOR_FILTER, filter);
+            } else {
+                chain.addLast(EXECUTOR_FILTER, filter);
+            }
+        }
+    }
+
+    /**
+     * Re-applies the configured send buffer size to a started transport. Connections accepted between the bind and this
+     * call use the 64 KiB send buffer set by ApacheDS.
+     */
+    public void configureSendBuffer(Transport transport) {
+        IoAcceptor acceptor = transport.getAcceptor();
+        if (sendBufferSize != null && acceptor != null && acceptor.getSessionConfig() instanceof SocketSessionConfig) {
+            ((SocketSessionConfig) acceptor.getSessionConfig()).setSendBufferSize(sendBufferSize);
+        }
+    }
+
+    /**
+     * Creates the request processing pool if the number of worker threads or virtual threads are configured. The worker
+     * thread pool has a bounded queue (see {@link #WORKER_QUEUE_PER_THREAD}), the virtual threads are only limited by
+     * the <code>--max-in-flight</code> admission control.
+     *
+     * @return executor or <code>null</code>
+     * @throws IllegalStateException if virtual threads are requested and the Java runtime doesn't support them
+     */
+    public ExecutorService createWorkerPool() {
+        validate();
+        if (virtualThreads) {
+            return createVirtualThreadExecutor();
+        }
+        if (workerThreads == null) {
+            return null;
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "ldap-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(workerThreads * WORKER_QUEUE_PER_THREAD), threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Calls <code>Executors.newVirtualThreadPerTaskExecutor()</code>. Reflection keeps the code compatible with Java 8.
+     */
+    static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) getVirtualThreadExecutorFactory().invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create the virtual thread executor", e);
+        }
+    }
+
+    private static Method getVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(
+                    "Virtual threads are not supported by Java " + System.getProperty("java.version") + ", Java 21+ is required");
+        }
+    }
+
+    private static Integer checkPositive(String name, Integer value) {
+        if (value != null && value < 1) {
+            throw new IllegalArgumentException(name + " has to be a positive number: " + value);
+        }
+        return value;
+    }
+}
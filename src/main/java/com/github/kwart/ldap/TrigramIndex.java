@@ -0,0 +1,321 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.filter.SubstringNode;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+
+/**
+ * Trigram index of attribute values in one partition. Each entry (identified by its <code>entryUUID</code>) gets an int ID and
+ * every three consecutive characters of its normalized values point to a sorted posting list of IDs. Substring filters are
+ * answered by intersecting the posting lists of all trigrams in the filter. The result is only a candidate set, the partition
+ * still evaluates the filter on the candidates.
+ */
+final class TrigramIndex {
+
+    private static final long[] NO_KEYS = new long[0];
+
+    private final List<AttributeType> attributeTypes;
+    private final Map<String, Integer> idsByUuid = new HashMap<String, Integer>();
+    private final Map<Long, Postings> postings = new HashMap<Long, Postings>();
+    private final Deque<Integer> freeIds = new ArrayDeque<Integer>();
+    private String[] uuids = new String[64];
+    private long[][] keys = new long[64][];
+    private int nextId;
+
+    TrigramIndex(List<AttributeType> attributeTypes) {
+        this.attributeTypes = new ArrayList<AttributeType>(attributeTypes);
+    }
+
+    List<AttributeType> getAttributeTypes() {
+        return attributeTypes;
+    }
+
+    boolean isIndexed(AttributeType attributeType) {
+        return attributeTypes.contains(attributeType);
+    }
+
+    /**
+     * Number of indexed entries.
+     */
+    int size() {
+        return idsByUuid.size();
+    }
+
+    /**
+     * Number of distinct trigrams.
+     */
+    int getTrigramCount() {
+        return postings.size();
+    }
+
+    String getUuid(int id) {
+        return uuids[id];
+    }
+
+    /**
+     * Indexes the entry or replaces its previous values. Entries without <code>entryUUID</code> are ignored.
+     */
+    void update(Entry entry) throws LdapException {
+        Attribute uuidAttribute = entry != null ? entry.get(SchemaConstants.ENTRY_UUID_AT) : null;
+        if (uuidAttribute == null) {
+            return;
+        }
+        String uuid = uuidAttribute.getString();
+        remove(uuid);
+        long[] entryKeys = createKeys(entry);
+        if (entryKeys.length == 0) {
+            return;
+        }
+        int id = freeIds.isEmpty() ? nextId++ : freeIds.pop();
+        if (id == uuids.length) {
+            uuids = Arrays.copyOf(uuids, id * 2);
+            keys = Arrays.copyOf(keys, id * 2);
+        }
+        uuids[id] = uuid;
+        keys[id] = entryKeys;
+        idsByUuid.put(uuid, id);
+        for (long key : entryKeys) {
+            Postings list = postings.get(key);
+            if (list == null) {
+                list = new Postings();
+                postings.put(key, list);
+            }
+            list.add(id);
+        }
+    }
+
+    void remove(String uuid) {
+        Integer id = idsByUuid.remove(uuid);
+        if (id == null) {
+            return;
+        }
+        for (long key : keys[id]) {
+            Postings list = postings.get(key);
+            if (list != null && list.remove(id) && list.size == 0) {
+                postings.remove(key);
+            }
+        }
+        uuids[id] = null;
+        keys[id] = null;
+        freeIds.push(id);
+    }
+
+    /**
+     * Returns sorted IDs of entries which can match the filter, or <code>null</code> if the filter can't be narrowed by this
+     * index (e.g. it contains no substring of an indexed attribute with at least 3 characters).
+     */
+    int[] getCandidates(ExprNode filter) {
+        if (filter instanceof SubstringNode) {
+            return getCandidates((SubstringNode) filter);
+        }
+        if (filter instanceof AndNode) {
+            int[] result = null;
+            for (ExprNode child : ((AndNode) filter).getChildren()) {
+                int[] candidates = getCandidates(child);
+                if (candidates != null) {
+                    result = result == null ? candidates : intersect(result, candidates, candidates.length);
+                    if (result.length == 0) {
+                        return result;
+                    }
+                }
+            }
+            return result;
+        }
+        if (filter instanceof OrNode) {
+            int[] result = new int[0];
+            for (ExprNode child : ((OrNode) filter).getChildren()) {
+                int[] candidates = getCandidates(child);
+                if (candidates == null) {
+                    return null;
+                }
+                result = union(result, candidates);
+            }
+            return result;
+        }
+        return null;
+    }
+
+    private int[] getCandidates(SubstringNode node) {
+        int attributeIndex = attributeTypes.indexOf(node.getAttributeType());
+        if (attributeIndex < 0) {
+            return null;
+        }
+        Set<Long> filterKeys = new LinkedHashSet<Long>();
+        addKeys(attributeIndex, node.getInitial(), filterKeys);
+        if (node.getAny() != null) {
+            for (String any : node.getAny()) {
+                addKeys(attributeIndex, any, filterKeys);
+            }
+        }
+        addKeys(attributeIndex, node.getFinal(), filterKeys);
+        if (filterKeys.isEmpty()) {
+            return null;
+        }
+        // start with the shortest posting list
+        List<Postings> lists = new ArrayList<Postings>(filterKeys.size());
+        for (Long key : filterKeys) {
+            Postings list = postings.get(key);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort((l1, l2) -> Integer.compare(l1.size, l2.size));
+        int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i).ids, lists.get(i).size);
+        }
+        return result;
+    }
+
+    private long[] createKeys(Entry entry) throws LdapException {
+        Set<Long> entryKeys = null;
+        for (int i = 0; i < attributeTypes.size(); i++) {
+            Attribute attribute = entry.get(attributeTypes.get(i));
+            if (attribute == null) {
+                continue;
+            }
+            for (Value<?> value : attribute) {
+                if (entryKeys == null) {
+                    entryKeys = new LinkedHashSet<Long>();
+                }
+                addKeys(i, normalize(attributeTypes.get(i), value.getString()), entryKeys);
+            }
+        }
+        if (entryKeys == null || entryKeys.isEmpty()) {
+            return NO_KEYS;
+        }
+        long[] result = new long[entryKeys.size()];
+        int i = 0;
+        for (Long key : entryKeys) {
+            result[i++] = key;
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes the value in the same way as the filter normalization does with substring assertions.
+     */
+    private static String normalize(AttributeType attributeType, String value) throws LdapException {
+        MatchingRule matchingRule = attributeType.getSubstring() != null ? attributeType.getSubstring()
+                : attributeType.getEquality();
+        Normalizer normalizer = matchingRule != null ? matchingRule.getNormalizer() : null;
+        return normalizer != null ? normalizer.normalize(value) : value;
+    }
+
+    private static void addKeys(int attributeIndex, String value, Set<Long> result) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            result.add(((long) attributeIndex << 48) | ((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16)
+                    | value.charAt(i + 2));
+        }
+    }
+
+    private static int[] intersect(int[] a, int[] b, int bSize) {
+        int[] result = new int[Math.min(a.length, bSize)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < bSize;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[size++] = a[i++];
+            } else if (i == a.length || a[i] > b[j]) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Sorted list of entry IDs.
+     */
+    private static final class Postings {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+
+/**
+ * Replaces schema aware string values in entries with a shared instance of an equal value, so each repeated value (object
+ * classes, OUs, department names, group DNs in <code>member</code>, ...) holds its user provided and normalized form only
+ * once. Values are matched by the attribute type and the user provided form. Binary values are left untouched.
+ * <p>
+ * Values seen only once are dropped from the table by {@link #trim()}, which is called automatically when the table reaches
+ * its maximum size. The interned values are shared by many entries, so they must never be modified.
+ */
+public final class ValueInterner {
+
+    public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    private final ConcurrentHashMap<String, Slot> values = new ConcurrentHashMap<String, Slot>();
+    private final int maxSize;
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+
+    public ValueInterner() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ValueInterner(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Interns values of all attributes of the entry.
+     */
+    public void intern(Entry entry) throws LdapException {
+        for (Attribute attribute : entry) {
+            intern(attribute);
+        }
+    }
+
+    /**
+     * Interns values of the attribute. Attributes which are not schema aware are skipped.
+     */
+    public void intern(Attribute attribute) throws LdapException {
+        AttributeType attributeType = attribute.getAttributeType();
+        if (attributeType == null || attribute.size() == 0 || !attribute.isHumanReadable()) {
+            return;
+        }
+        Value<?>[] interned = new Value<?>[attribute.size()];
+        boolean changed = false;
+        int i = 0;
+        for (Value<?> value : attribute) {
+            interned[i] = intern(attributeType, value);
+            changed |= interned[i] != value;
+            i++;
+        }
+        if (changed) {
+            attribute.clear();
+            attribute.add(interned);
+        }
+    }
+
+    /**
+     * Removes values which were seen only once. Returns number of the remaining values.
+     */
+    public int trim() {
+        values.values().removeIf(slot -> slot.hits < 2);
+        return values.size();
+    }
+
+    /**
+     * Returns number of distinct values in the table.
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Returns number of values replaced by a shared instance.
+     */
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    /**
+     * Returns rough estimate of the heap saved by the deduplication (compact strings assumed).
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    private Value<?> intern(AttributeType attributeType, Value<?> value) {
+        if (!(value instanceof StringValue) || value.getAttributeType() != attributeType) {
+            return value;
+        }
+        String key = attributeType.getOid() + '\u0000' + value.getString();
+        Slot slot = values.get(key);
+        if (slot == null) {
+            if (values.size() >= maxSize && trim() >= maxSize) {
+                return value;
+            }
+            slot = values.putIfAbsent(key, new Slot(value));
+            if (slot == null) {
+                return value;
+            }
+        }
+        // racy increment, but a lost update can't leave a value seen more than once at 1
+        slot.hits++;
+        if (slot.value != value) {
+            deduplicated.increment();
+            savedBytes.add(estimateSize(value));
+        }
+        return slot.value;
+    }
+
+    private static long estimateSize(Value<?> value) {
+        // value object + user provided String + normalized String (header, array header, Latin-1 content)
+        String upValue = value.getString();
+        Object normValue = value.getNormValue();
+        long size = 32L + 40L + upValue.length();
+        if (normValue != upValue && normValue instanceof String) {
+            size += 40L + ((String) normValue).length();
+        }
+        return size;
+    }
+
+    private static final class Slot {
+        final Value<?> value;
+        volatile int hits = 1;
+
+        Slot(Value<?> value) {
+            this.value = value;
+        }
+    }
+}
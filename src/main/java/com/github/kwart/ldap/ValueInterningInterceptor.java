@@ -0,0 +1,65 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.github.kwart.ldap;
+
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+
+/**
+ * ApacheDS Interceptor which deduplicates values of added and modified entries with a {@link ValueInterner}. It should be the
+ * last interceptor in the chain, so it gets the values which are finally stored. The {@link BulkLoader} uses the same interner
+ * when this interceptor is registered.
+ */
+public class ValueInterningInterceptor extends BaseInterceptor {
+
+    public static final String NAME = "valueInterningInterceptor";
+
+    private final ValueInterner interner;
+
+    public ValueInterningInterceptor(ValueInterner interner) {
+        super(NAME);
+        this.interner = interner;
+    }
+
+    public ValueInterner getInterner() {
+        return interner;
+    }
+
+    @Override
+    public void add(AddOperationContext addContext) throws LdapException {
+        interner.intern(addContext.getEntry());
+        next(addContext);
+    }
+
+    @Override
+    public void modify(ModifyOperationContext modifyContext) throws LdapException {
+        for (Modification modification : modifyContext.getModItems()) {
+            if (modification.getAttribute() != null) {
+                interner.intern(modification.getAttribute());
+            }
+        }
+        next(modifyContext);
+    }
+}
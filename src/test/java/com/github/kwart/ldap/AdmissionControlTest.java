@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearchImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdmissionControlTest {
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-mc", "1", "-mif", "10" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testConnectionLimit() throws Exception {
+        AdmissionControlFilter admissionControl = ldapServer.getAdmissionControl();
+        LdapContext ctx = new InitialLdapContext(createProperties(), null);
+        try {
+            ctx.getAttributes("uid=jduke,ou=Users,dc=ldap,dc=example");
+            assertThrows(NamingException.class, () -> new InitialLdapContext(createProperties(), null));
+            assertEquals(1L, admissionControl.getRejectedConnections());
+            // a rejected connection gets the notice of disconnection and is closed without sending any request
+            try (Socket socket = new Socket("127.0.0.1", 10389)) {
+                socket.setSoTimeout(10000);
+                InputStream in = socket.getInputStream();
+                assertTrue(in.read() != -1);
+                while (in.read() != -1) {
+                }
+            }
+            assertEquals(2L, admissionControl.getRejectedConnections());
+        } finally {
+            ctx.close();
+        }
+        awaitConnectionsClosed();
+        new InitialLdapContext(createProperties(), null).close();
+        assertEquals(0L, admissionControl.getRejectedOperations());
+    }
+
+    @Test
+    public void testInFlightReleased() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            LdapContext ctx = new InitialLdapContext(createProperties(), null);
+            try {
+                ctx.getAttributes("uid=jduke,ou=Users,dc=ldap,dc=example");
+            } finally {
+                ctx.close();
+            }
+            // with a single allowed connection the next one mustn't come before the server notices this one is closed
+            awaitConnectionsClosed();
+        }
+        assertEquals(0, ldapServer.getAdmissionControl().getInFlightCount());
+        assertEquals(0L, ldapServer.getAdmissionControl().getRejectedOperations());
+    }
+
+    @Test
+    public void testPersistentSearchNotCounted() throws Exception {
+        LdapNetworkConnection connection = new LdapNetworkConnection("127.0.0.1", 10389);
+        try {
+            connection.bind("uid=jduke,ou=Users,dc=ldap,dc=example", "theduke");
+            SearchRequest request = new SearchRequestImpl().setBase(new Dn("dc=ldap,dc=example"))
+                    .setFilter("(objectClass=*)").setScope(SearchScope.SUBTREE);
+            request.addControl(new PersistentSearchImpl());
+            SearchFuture persistentSearch = connection.searchAsync(request);
+            // the requests of one connection are admitted in order, so the persistent search is running after the lookup
+            assertEquals("Java Duke",
+                    connection.lookup("uid=jduke,ou=Users,dc=ldap,dc=example").get("cn").getString());
+            assertEquals(0, ldapServer.getAdmissionControl().getInFlightCount());
+            persistentSearch.cancel(true);
+        } finally {
+            connection.close();
+        }
+        assertEquals(0L, ldapServer.getAdmissionControl().getRejectedOperations());
+    }
+
+    /**
+     * Waits until the server notices the closed connections and releases their slots.
+     */
+    private void awaitConnectionsClosed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (ldapServer.getAdmissionControl().getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private Properties createProperties() {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=jduke,ou=Users,dc=ldap,dc=example");
+        env.put(Context.SECURITY_CREDENTIALS, "theduke");
+        return env;
+    }
+}
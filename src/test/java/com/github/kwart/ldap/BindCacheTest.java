@@ -0,0 +1,110 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import javax.naming.AuthenticationException;
+import javax.naming.Context;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BindCacheTest {
+
+    private static final String JDUKE_DN = "uid=jduke,ou=Users,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-bcs", "100" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testRepeatedBinds() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            bind(JDUKE_DN, "theduke").close();
+        }
+        CacheStatistics stats = ldapServer.getBindCache().getStatistics();
+        assertEquals(1L, stats.getSize());
+        assertEquals(1L, stats.getMisses());
+        assertEquals(4L, stats.getHits());
+
+        assertThrows(AuthenticationException.class, () -> bind(JDUKE_DN, "wrong"));
+        assertEquals(4L, ldapServer.getBindCache().getStatistics().getHits());
+    }
+
+    @Test
+    public void testPasswordChange() throws Exception {
+        bind(JDUKE_DN, "theduke").close();
+        bind(JDUKE_DN, "theduke").close();
+
+        LdapContext ctx = bind("uid=admin,ou=system", "secret");
+        try {
+            ctx.modifyAttributes(JDUKE_DN, new ModificationItem[] {
+                    new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("userPassword", "newduke")) });
+        } finally {
+            ctx.close();
+        }
+        assertThrows(AuthenticationException.class, () -> bind(JDUKE_DN, "theduke"));
+        bind(JDUKE_DN, "newduke").close();
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        bind(JDUKE_DN, "theduke").close();
+        boolean found = false;
+        for (CacheStatistics stats : ldapServer.getCacheStatistics()) {
+            if (CachingSimpleAuthenticator.CACHE_NAME.equals(stats.getName())) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+    }
+
+    private LdapContext bind(String dn, String password) throws Exception {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, dn);
+        env.put(Context.SECURITY_CREDENTIALS, password);
+        return new InitialLdapContext(env, null);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkLoaderTest {
+
+    private static final String BASE_DN = "ou=Users,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+    private DirectoryService directoryService;
+    private BulkLoader loader;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[0]);
+        ldapServer = new LdapServer(cliArguments);
+        directoryService = ldapServer.getDirectoryService();
+        loader = new BulkLoader(directoryService);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testSameEntryAsRegularAdd() throws Exception {
+        String[] attributes = { "objectClass: inetOrgPerson", "cn: Jane Doe", "sn: Doe", "givenName: Jane",
+                "mail: jane@ldap.example", "telephoneNumber: +1 555 0100", "employeeNumber: 42", "userPassword: secret" };
+        loader.add(createEntry("uid=bulk," + BASE_DN, "bulk", attributes));
+        directoryService.getAdminSession().add(createEntry("uid=regular," + BASE_DN, "regular", attributes));
+
+        Entry bulk = lookup("uid=bulk," + BASE_DN);
+        Entry regular = lookup("uid=regular," + BASE_DN);
+        assertEquals(userAttributes(regular, "regular"), userAttributes(bulk, "bulk"));
+        assertEquals(operationalAttributeIds(regular), operationalAttributeIds(bulk));
+        assertEquals(1L, loader.getCount());
+    }
+
+    @Test
+    public void testSchemaViolations() throws Exception {
+        assertResultCode(ResultCodeEnum.OBJECT_CLASS_VIOLATION, createEntry("uid=nosn," + BASE_DN, "nosn",
+                "objectClass: inetOrgPerson", "cn: No Sn"));
+        assertResultCode(ResultCodeEnum.OBJECT_CLASS_VIOLATION, createEntry("uid=notallowed," + BASE_DN, "notallowed",
+                "objectClass: person", "objectClass: uidObject", "cn: Not Allowed", "sn: Allowed", "mail: x@ldap.example"));
+        assertResultCode(ResultCodeEnum.NOT_ALLOWED_ON_RDN, new DefaultEntry(directoryService.getSchemaManager(),
+                "uid=nordn," + BASE_DN, "objectClass: inetOrgPerson", "uid: other", "cn: No Rdn", "sn: Rdn"));
+        // not schema aware yet, the invalid value would be dropped otherwise
+        Entry invalidSyntax = new DefaultEntry("uid=syntax," + BASE_DN, "objectClass: inetOrgPerson", "uid: syntax",
+                "cn: Syntax", "sn: Syntax", "preferredDeliveryMethod: pigeon");
+        LdapInvalidAttributeValueException e = assertThrows(LdapInvalidAttributeValueException.class,
+                () -> loader.add(invalidSyntax));
+        assertEquals(ResultCodeEnum.INVALID_ATTRIBUTE_SYNTAX, e.getResultCode());
+
+        // extensibleObject allows any attribute
+        loader.add(createEntry("uid=extensible," + BASE_DN, "extensible", "objectClass: person", "objectClass: uidObject",
+                "objectClass: extensibleObject", "cn: Extensible", "sn: Extensible", "mail: x@ldap.example"));
+        assertEquals(1L, loader.getCount());
+        assertFalse(directoryService.getAdminSession().exists(new Dn(directoryService.getSchemaManager(), "uid=nosn," + BASE_DN)));
+    }
+
+    private void assertResultCode(ResultCodeEnum expected, Entry entry) {
+        LdapSchemaViolationException e = assertThrows(LdapSchemaViolationException.class, () -> loader.add(entry));
+        assertEquals(e.getMessage(), expected, e.getResultCode());
+    }
+
+    private Entry createEntry(String dn, String uid, String... attributes) throws Exception {
+        Entry entry = new DefaultEntry(directoryService.getSchemaManager(), dn, (Object[]) attributes);
+        entry.add("uid", uid);
+        return entry;
+    }
+
+    private Entry lookup(String dn) throws Exception {
+        return directoryService.getAdminSession().lookup(new Dn(directoryService.getSchemaManager(), dn),
+                SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES);
+    }
+
+    /**
+     * Returns user attribute values with the entry specific uid removed.
+     */
+    private static TreeMap<String, Set<String>> userAttributes(Entry entry, String uid) {
+        TreeMap<String, Set<String>> result = new TreeMap<String, Set<String>>();
+        for (Attribute attribute : entry) {
+            if (!attribute.getAttributeType().isUser()) {
+                continue;
+            }
+            Set<String> values = new TreeSet<String>();
+            for (Value<?> value : attribute) {
+                if (!("uid".equals(attribute.getAttributeType().getName()) && uid.equals(value.getString()))) {
+                    values.add(value.getString());
+                }
+            }
+            result.put(attribute.getAttributeType().getOid(), values);
+        }
+        return result;
+    }
+
+    private static Set<String> operationalAttributeIds(Entry entry) {
+        Set<String> result = new TreeSet<String>();
+        for (Attribute attribute : entry) {
+            if (!attribute.getAttributeType().isUser()) {
+                result.add(attribute.getAttributeType().getName());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+public class CacheConfigTest {
+
+    @Test
+    public void testDefaultsScaleWithHeap() {
+        CacheConfig small = new CacheConfig(64L * 1024 * 1024);
+        CacheConfig large = new CacheConfig(8L * 1024 * 1024 * 1024);
+        assertTrue(small.getMaxEntries(CacheConfig.DN_CACHE) < large.getMaxEntries(CacheConfig.DN_CACHE));
+        assertTrue(small.getMaxEntries(CacheConfig.DEFAULT_CACHE) >= 1000);
+        assertEquals(0L, large.getTimeToLive(CacheConfig.GROUP_CACHE));
+    }
+
+    @Test
+    public void testParse() {
+        CacheConfig config = CacheConfig.parse(Arrays.asList("dnCache=12345", "ou=system=500"), Arrays.asList("dnCache=60"),
+                "lfu");
+        assertEquals(12345, config.getMaxEntries(CacheConfig.DN_CACHE));
+        assertEquals(500, config.getMaxEntries("ou=system"));
+        assertEquals(60L, config.getTimeToLive(CacheConfig.DN_CACHE));
+        assertEquals("LFU", config.getEvictionPolicy());
+
+        Configuration ehCacheConfig = config.toEhCacheConfiguration();
+        CacheConfiguration dnCache = ehCacheConfig.getCacheConfigurations().get(CacheConfig.DN_CACHE);
+        assertEquals(12345L, dnCache.getMaxEntriesLocalHeap());
+        assertEquals(60L, dnCache.getTimeToLiveSeconds());
+
+        assertThrows(IllegalArgumentException.class, () -> CacheConfig.parse(null, null, "random"));
+        assertThrows(IllegalArgumentException.class, () -> CacheConfig.parse(Arrays.asList("dnCache"), null, null));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Test;
+
+public class DirectoryGeneratorTest {
+
+    private static final String[] ARGS = { "-gu", "200", "-gg", "5", "-gm", "7", "-gol", "2", "-gof", "3", "-gs", "1234" };
+
+    @Test
+    public void testGenerate() throws Exception {
+        LdapServer ldapServer = startServer(ARGS);
+        try {
+            String userDn = "uid=user11,ou=unit0.2,ou=unit0,ou=Users,dc=ldap,dc=example";
+            LdapContext ctx = new InitialLdapContext(createProperties(userDn, "password11"), null);
+            try {
+                Attributes attributes = ctx.getAttributes("cn=group3,ou=Groups,dc=ldap,dc=example",
+                        new String[] { "member" });
+                assertEquals(7, attributes.get("member").size());
+            } finally {
+                ctx.close();
+            }
+        } finally {
+            ldapServer.stop();
+        }
+    }
+
+    @Test
+    public void testDeterministic() throws Exception {
+        List<String> firstRun = readGroupMembersAndNames();
+        assertEquals(firstRun, readGroupMembersAndNames());
+    }
+
+    private List<String> readGroupMembersAndNames() throws Exception {
+        LdapServer ldapServer = startServer(ARGS);
+        try {
+            List<String> result = new ArrayList<String>();
+            LdapContext ctx = new InitialLdapContext(createProperties("uid=admin,ou=system", "secret"), null);
+            try {
+                for (int i = 0; i < 5; i++) {
+                    Attribute members = ctx.getAttributes("cn=group" + i + ",ou=Groups,dc=ldap,dc=example",
+                            new String[] { "member" }).get("member");
+                    List<String> values = new ArrayList<String>();
+                    NamingEnumeration<?> e = members.getAll();
+                    while (e.hasMore()) {
+                        values.add(String.valueOf(e.next()));
+                    }
+                    Collections.sort(values);
+                    result.addAll(values);
+                }
+                for (int i = 0; i < 200; i += 37) {
+                    DirectoryGenerator generator = new DirectoryGenerator(ldapServer.getDirectoryService()).setOuLevels(2)
+                            .setOuFanout(3);
+                    result.add(String.valueOf(
+                            ctx.getAttributes(generator.getUserDn(i), new String[] { "cn" }).get("cn").get()));
+                }
+            } finally {
+                ctx.close();
+            }
+            return result;
+        } finally {
+            ldapServer.stop();
+        }
+    }
+
+    private LdapServer startServer(String... args) throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, args);
+        return new LdapServer(cliArguments);
+    }
+
+    private Properties createProperties(String principal, String password) {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, principal);
+        env.put(Context.SECURITY_CREDENTIALS, password);
+        return env;
+    }
+}
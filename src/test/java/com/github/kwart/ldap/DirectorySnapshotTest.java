@@ -0,0 +1,82 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectorySnapshotTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File snapshot = new File(tempFolder.getRoot(), "snapshot.bin");
+        LdapServer ldapServer = startServer("-ss", snapshot.getAbsolutePath());
+        ldapServer.stop();
+        assertTrue(snapshot.length() > 0);
+
+        ldapServer = startServer("-sl", snapshot.getAbsolutePath());
+        try {
+            LdapContext ctx = new InitialLdapContext(createProperties(), null);
+            try {
+                Attributes attributes = ctx.getAttributes("uid=jduke,ou=Users,dc=ldap,dc=example",
+                        new String[] { "cn", "entryUUID" });
+                assertEquals("Java Duke", attributes.get("cn").get());
+                assertEquals(1, attributes.get("entryUUID").size());
+                attributes = ctx.getAttributes("cn=Admin,ou=Roles,dc=ldap,dc=example", new String[] { "member" });
+                assertEquals("uid=jduke,ou=Users,dc=ldap,dc=example", attributes.get("member").get());
+            } finally {
+                ctx.close();
+            }
+        } finally {
+            ldapServer.stop();
+        }
+    }
+
+    private LdapServer startServer(String... args) throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, args);
+        return new LdapServer(cliArguments);
+    }
+
+    private Properties createProperties() {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=admin,ou=system");
+        env.put(Context.SECURITY_CREDENTIALS, "secret");
+        return env;
+    }
+}
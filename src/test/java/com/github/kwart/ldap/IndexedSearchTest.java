@@ -0,0 +1,132 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.xdbm.Store;
+import org.apache.directory.server.xdbm.search.Optimizer;
+import org.apache.directory.server.xdbm.search.impl.DefaultOptimizer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that equality searches on indexed attributes are resolved from the index instead of scanning the partition. The
+ * partition size can be set by the <code>ldap.test.indexedSearch.size</code> system property (e.g. 1000000).
+ */
+public class IndexedSearchTest {
+
+    private static final int SIZE = Integer.getInteger("ldap.test.indexedSearch.size", 10000);
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[0]);
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testEqualitySearchUsesIndex() throws Exception {
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        addUsers(directoryService, 0, SIZE);
+        Store store = getUserPartition(directoryService);
+        SchemaManager schemaManager = directoryService.getSchemaManager();
+        assertTrue(store.hasIndexOn(schemaManager.getAttributeType("uid")));
+        assertFalse(store.hasIndexOn(schemaManager.getAttributeType("sn")));
+
+        // the optimizer's scan count is the number of candidates the partition reads for the filter
+        Optimizer optimizer = new DefaultOptimizer<Entry>(store);
+        Random random = new Random(SIZE);
+        for (int i = 0; i < 100; i++) {
+            int id = random.nextInt(SIZE);
+            assertEquals(Long.valueOf(1L), optimizer.annotate(FilterParser.parse(schemaManager, "(uid=user" + id + ")")));
+            assertEquals(1, count(directoryService, "(uid=user" + id + ")"));
+        }
+        // not indexed attribute means a full scan
+        assertEquals(Long.valueOf(Long.MAX_VALUE), optimizer.annotate(FilterParser.parse(schemaManager, "(sn=1)")));
+    }
+
+    @Test
+    public void testIndexedSubstringSearchWithInitial() throws Exception {
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        addUsers(directoryService, 0, 1000);
+        assertTrue(getUserPartition(directoryService)
+                .hasIndexOn(directoryService.getSchemaManager().getAttributeType("cn")));
+        // the first index key "user 1" doesn't match the filter, the index scan mustn't stop there
+        assertEquals(11, count(directoryService, "(cn=User 1*9)"));
+        assertEquals(111, count(directoryService, "(cn=User 1*)"));
+        assertEquals(20, count(directoryService, "(cn=User 1*0*)"));
+    }
+
+    private Store getUserPartition(DirectoryService directoryService) {
+        for (Partition partition : directoryService.getPartitions()) {
+            if (BulkLoader.isUserPartition(partition)) {
+                return (Store) partition;
+            }
+        }
+        throw new IllegalStateException("No user partition");
+    }
+
+    private void addUsers(DirectoryService directoryService, int from, int to) throws Exception {
+        BulkLoader loader = new BulkLoader(directoryService);
+        for (int i = from; i < to; i++) {
+            loader.add(new DefaultEntry(directoryService.getSchemaManager(), "uid=user" + i + ",ou=Users,dc=ldap,dc=example",
+                    "objectClass: inetOrgPerson", "uid: user" + i, "cn: User " + i, "sn: " + i));
+        }
+    }
+
+    private int count(DirectoryService directoryService, String filter) throws Exception {
+        Dn base = new Dn(directoryService.getSchemaManager(), "dc=ldap,dc=example");
+        Cursor<Entry> cursor = directoryService.getAdminSession().search(base, SearchScope.SUBTREE,
+                FilterParser.parse(directoryService.getSchemaManager(), filter),
+                AliasDerefMode.NEVER_DEREF_ALIASES, "uid");
+        try {
+            int count = 0;
+            while (cursor.next()) {
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value : new long[] { 0L, 1L, 31L, 32L, 33L, 1000L, 123456789L, Long.MAX_VALUE / 3, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.lowestValue(index) <= value);
+            assertTrue(LatencyHistogram.highestValue(index) >= value);
+        }
+        for (int i = 1; i < LatencyHistogram.index(Long.MAX_VALUE); i++) {
+            assertEquals(LatencyHistogram.highestValue(i - 1) + 1, LatencyHistogram.lowestValue(i));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(100000L, histogram.getCount());
+        assertEquals(100000000L, histogram.getMax());
+        assertWithinError(50000000L, histogram.getPercentile(0.5));
+        assertWithinError(99000000L, histogram.getPercentile(0.99));
+        assertWithinError(99900000L, histogram.getPercentile(0.999));
+        assertWithinError(50000500L, (long) histogram.getMean());
+
+        histogram.reset();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getPercentile(0.99));
+    }
+
+    private void assertWithinError(long expected, long actual) {
+        assertTrue("Expected " + expected + ", but was " + actual, Math.abs(expected - actual) <= expected * 0.032);
+    }
+}
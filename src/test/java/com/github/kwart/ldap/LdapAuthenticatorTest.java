@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LdapAuthenticatorTest {
+
+    private static final String JDUKE_DN = "uid=jduke,ou=Users,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+    private LdapAuthenticator authenticator;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[0]);
+        ldapServer = new LdapServer(cliArguments);
+        authenticator = new LdapAuthenticator("ldap://127.0.0.1:10389", "uid=admin,ou=system", "secret").setPoolSize(4);
+    }
+
+    @After
+    public void after() throws Exception {
+        authenticator.close();
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testAuthenticate() throws Exception {
+        assertEquals(JDUKE_DN, authenticator.authenticate("jduke", "theduke"));
+        assertNull(authenticator.authenticate("jduke", "wrong"));
+        assertNull(authenticator.authenticate("jduke", ""));
+        assertNull(authenticator.authenticate("nobody", "theduke"));
+        assertNull(authenticator.authenticate("*", "theduke"));
+        // the pooled connections are still usable after the failures
+        assertEquals(JDUKE_DN, authenticator.authenticate("jduke", "theduke"));
+        assertFalse(authenticator.bind(JDUKE_DN, "wrong"));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            input.append(i % 10 == 0 ? "jduke:wrong" : "jduke:theduke").append("\n");
+        }
+        input.append("\nnobody:secret\n");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AuthenticateWithSearch.BatchResult result;
+        try (PrintStream out = new PrintStream(output, true, "UTF-8")) {
+            result = AuthenticateWithSearch.authenticateBatch(authenticator,
+                    new BufferedReader(new StringReader(input.toString())), out, 4);
+        }
+        assertEquals(51L, result.getTotal());
+        assertEquals(6L, result.getFailed());
+        String[] lines = new String(output.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n");
+        assertEquals(51, lines.length);
+        // results keep the input order
+        assertArrayEquals(new String[] { "jduke: failed", "jduke: authenticated as " + JDUKE_DN, "nobody: failed" },
+                new String[] { lines[0], lines[1], lines[50] });
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
+import org.apache.directory.api.ldap.model.ldif.LdapLdifException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LdifImportPipelineTest {
+
+    private static final String BASE_DN = "ou=Pipeline,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+    private DirectoryService directoryService;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[0]);
+        ldapServer = new LdapServer(cliArguments);
+        directoryService = ldapServer.getDirectoryService();
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testBulkImport() throws Exception {
+        testImport(true);
+    }
+
+    @Test
+    public void testRegularImport() throws Exception {
+        testImport(false);
+    }
+
+    @Test
+    public void testMissingParent() throws Exception {
+        StringBuilder ldif = new StringBuilder();
+        appendOu(ldif, BASE_DN);
+        appendUser(ldif, "uid=orphan,ou=Missing," + BASE_DN, "orphan");
+        LdapNoSuchObjectException e = assertThrows(LdapNoSuchObjectException.class,
+                () -> createPipeline(true).importLdif(Collections.singletonList(source("orphan.ldif", ldif))));
+        assertTrue(e.getMessage(), e.getMessage().contains("uid=orphan"));
+        assertTrue(exists(BASE_DN));
+        assertFalse(exists("uid=orphan,ou=Missing," + BASE_DN));
+    }
+
+    @Test
+    public void testParserFailure() throws Exception {
+        StringBuilder ldif = new StringBuilder();
+        appendOu(ldif, BASE_DN);
+        for (int i = 0; i < 1200; i++) {
+            appendUser(ldif, "uid=user" + i + "," + BASE_DN, "user" + i);
+        }
+        // a broken record in the last chunk fails in a parser thread
+        ldif.append("dn: uid=broken,").append(BASE_DN).append("\nobjectClass inetOrgPerson\n\n");
+        assertThrows(LdapLdifException.class,
+                () -> createPipeline(true).importLdif(Collections.singletonList(source("broken.ldif", ldif))));
+    }
+
+    @Test
+    public void testReaderFailure() throws Exception {
+        LdifImportPipeline.LdifSource failing = new LdifImportPipeline.LdifSource("failing.ldif") {
+            @Override
+            public InputStream openStream() throws IOException {
+                throw new IOException("Can't read");
+            }
+        };
+        IOException e = assertThrows(IOException.class,
+                () -> createPipeline(true).importLdif(Collections.singletonList(failing)));
+        assertEquals("Can't read", e.getMessage());
+    }
+
+    private void testImport(boolean bulkImport) throws Exception {
+        StringBuilder first = new StringBuilder();
+        // children in the first chunk wait for their parent from the third chunk
+        appendUser(first, "uid=early,ou=Late," + BASE_DN, "early");
+        appendOu(first, BASE_DN);
+        for (int i = 0; i < 1200; i++) {
+            appendUser(first, "uid=user" + i + "," + BASE_DN, "user" + i);
+        }
+        appendOu(first, "ou=Late," + BASE_DN);
+        // the modification is written after the entry from the first chunk
+        first.append("dn: uid=user0,").append(BASE_DN).append("\nchangetype: modify\nreplace: sn\nsn: Modified\n-\n\n");
+
+        StringBuilder second = new StringBuilder();
+        // the second file depends on the first one
+        appendUser(second, "uid=second,ou=Late," + BASE_DN, "second");
+        second.append("dn: uid=user1,").append(BASE_DN).append("\nchangetype: modify\nreplace: sn\nsn: Second\n-\n\n");
+
+        long count = createPipeline(bulkImport)
+                .importLdif(Arrays.asList(source("first.ldif", first), source("second.ldif", second)));
+        assertEquals(1206L, count);
+        assertTrue(exists("uid=early,ou=Late," + BASE_DN));
+        assertTrue(exists("uid=second,ou=Late," + BASE_DN));
+        assertTrue(exists("uid=user1199," + BASE_DN));
+        assertEquals("Modified", lookup("uid=user0," + BASE_DN).get("sn").getString());
+        assertEquals("Second", lookup("uid=user1," + BASE_DN).get("sn").getString());
+    }
+
+    private LdifImportPipeline createPipeline(boolean bulkImport) {
+        return new LdifImportPipeline(directoryService, ldifEntry -> {
+        }, bulkImport, 4);
+    }
+
+    private boolean exists(String dn) throws Exception {
+        return directoryService.getAdminSession().exists(new Dn(directoryService.getSchemaManager(), dn));
+    }
+
+    private Entry lookup(String dn) throws Exception {
+        return directoryService.getAdminSession().lookup(new Dn(directoryService.getSchemaManager(), dn));
+    }
+
+    private static void appendOu(StringBuilder ldif, String dn) {
+        String ou = dn.substring(3, dn.indexOf(','));
+        ldif.append("dn: ").append(dn).append("\nobjectClass: top\nobjectClass: organizationalUnit\nou: ").append(ou)
+                .append("\n\n");
+    }
+
+    private static void appendUser(StringBuilder ldif, String dn, String uid) {
+        ldif.append("dn: ").append(dn).append("\nobjectClass: inetOrgPerson\nuid: ").append(uid).append("\ncn: ").append(uid)
+                .append("\nsn: ").append(uid).append("\n\n");
+    }
+
+    private static LdifImportPipeline.LdifSource source(String name, final CharSequence ldif) {
+        return new LdifImportPipeline.LdifSource(name) {
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(ldif.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+}
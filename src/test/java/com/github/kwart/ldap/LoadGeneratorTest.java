@@ -0,0 +1,63 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.kwart.ldap.LoadGenerator.OperationType;
+
+public class LoadGeneratorTest {
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[0]);
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testShortRun() throws Exception {
+        LoadGeneratorArguments arguments = new LoadGeneratorArguments();
+        new ExtCommander(arguments, new String[] { "-c", "2", "-d", "2", "-r", "200" });
+        LoadGenerator loadGenerator = new LoadGenerator(arguments);
+        loadGenerator.run();
+        loadGenerator.printReport(System.out);
+
+        long total = 0L;
+        for (OperationType type : OperationType.values()) {
+            assertEquals(0L, loadGenerator.getErrorCount(type));
+            total += loadGenerator.getLatency(type).getCount();
+        }
+        // 200 ops/s for 2 seconds
+        assertTrue("Unexpected operation count " + total, total > 100 && total < 600);
+    }
+}
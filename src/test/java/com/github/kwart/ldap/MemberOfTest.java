@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemberOfTest {
+
+    private static final String JDUKE_DN = "uid=jduke,ou=Users,dc=ldap,dc=example";
+    private static final String ADMIN_GROUP_DN = "cn=Admin,ou=Roles,dc=ldap,dc=example";
+    private static final String OUTER_GROUP_DN = "cn=Outer,ou=Roles,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-mo", "-rb" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testMemberOf() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties(), null);
+        try {
+            assertEquals(setOf(ADMIN_GROUP_DN), getMemberOf(ctx));
+            assertNull(ctx.getAttributes(JDUKE_DN).get("memberOf"));
+
+            BasicAttributes attributes = new BasicAttributes(true);
+            BasicAttribute objectClass = new BasicAttribute("objectClass");
+            objectClass.add("top");
+            objectClass.add("groupOfNames");
+            attributes.put(objectClass);
+            attributes.put("cn", "Outer");
+            attributes.put("member", ADMIN_GROUP_DN);
+            ctx.createSubcontext(OUTER_GROUP_DN, attributes).close();
+            assertEquals(setOf(ADMIN_GROUP_DN, OUTER_GROUP_DN), getMemberOf(ctx));
+
+            SearchControls controls = new SearchControls();
+            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+            controls.setReturningAttributes(new String[] { "memberOf" });
+            NamingEnumeration<SearchResult> results = ctx.search("dc=ldap,dc=example", "(uid=jduke)", controls);
+            assertTrue(results.hasMore());
+            assertEquals(2, results.next().getAttributes().get("memberOf").size());
+            assertFalse(results.hasMore());
+
+            ctx.unbind(ADMIN_GROUP_DN);
+            assertEquals(setOf(), getMemberOf(ctx));
+
+            ldapServer.reset();
+            assertEquals(setOf(ADMIN_GROUP_DN), getMemberOf(ctx));
+        } finally {
+            ctx.close();
+        }
+    }
+
+    private Set<String> getMemberOf(LdapContext ctx) throws NamingException {
+        Set<String> result = new HashSet<String>();
+        Attribute memberOf = ctx.getAttributes(JDUKE_DN, new String[] { "memberOf" }).get("memberOf");
+        if (memberOf != null) {
+            for (int i = 0; i < memberOf.size(); i++) {
+                result.add((String) memberOf.get(i));
+            }
+        }
+        return result;
+    }
+
+    private Set<String> setOf(String... values) {
+        Set<String> result = new HashSet<String>();
+        for (String value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private Properties createProperties() {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=admin,ou=system");
+        env.put(Context.SECURITY_CREDENTIALS, "secret");
+        return env;
+    }
+}
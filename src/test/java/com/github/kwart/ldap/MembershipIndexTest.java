@@ -0,0 +1,73 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class MembershipIndexTest {
+
+    @Test
+    public void testNestedGroups() {
+        MembershipIndex index = new MembershipIndex();
+        index.setMembers("cn=a", "cn=A", Arrays.asList("uid=u1", "uid=u2"));
+        index.setMembers("cn=b", "cn=B", Arrays.asList("cn=a"));
+        index.setMembers("cn=c", "cn=C", Arrays.asList("cn=b", "uid=u1"));
+        // cycle
+        index.setMembers("cn=a2", "cn=A2", Arrays.asList("cn=c"));
+        index.setMembers("cn=c2", "cn=C2", Arrays.asList("cn=a2"));
+
+        assertEquals(new HashSet<String>(Arrays.asList("cn=A", "cn=C")), index.getGroupNames("uid=u1", false));
+        assertEquals(new HashSet<String>(Arrays.asList("cn=A", "cn=B", "cn=C", "cn=A2", "cn=C2")),
+                index.getGroupNames("uid=u1", true));
+        assertEquals(new HashSet<String>(Arrays.asList("cn=A", "cn=B", "cn=C", "cn=A2", "cn=C2")),
+                index.getGroupNames("uid=u2", true));
+        assertTrue(index.getGroupNames("uid=u3", true).isEmpty());
+    }
+
+    @Test
+    public void testUpdates() {
+        MembershipIndex index = new MembershipIndex();
+        index.setMembers("cn=a,ou=g", "cn=A,ou=G", Arrays.asList("uid=u1", "uid=u2"));
+        index.setMembers("cn=a,ou=g", "cn=A,ou=G", Arrays.asList("uid=u2"));
+        assertTrue(index.getGroups("uid=u1").isEmpty());
+        assertEquals(Collections.singleton("cn=a,ou=g"), index.getGroups("uid=u2"));
+        assertEquals(1, index.getMemberCount());
+
+        index.renameSubtree("ou=g", "ou=h", name -> name.replace("ou=G", "ou=H"));
+        assertEquals(Collections.singleton("cn=a,ou=h"), index.getGroups("uid=u2"));
+        assertEquals(Collections.singleton("cn=A,ou=H"), index.getGroupNames("uid=u2", false));
+
+        index.setMembers("cn=a,ou=h", "cn=A,ou=H", Collections.<String> emptyList());
+        assertTrue(index.getGroups("uid=u2").isEmpty());
+        assertEquals(0, index.getGroupCount());
+        assertEquals(0, index.getMemberCount());
+
+        index.setMembers("cn=b", "cn=B", Arrays.asList("uid=u1"));
+        index.removeGroup("cn=b");
+        assertTrue(index.getGroups("uid=u1").isEmpty());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.ldap.InitialLdapContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.kwart.ldap.MetricsInterceptor.Operation;
+
+public class MetricsHttpServerTest {
+
+    private static final String METRICS_PORT = "10380";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-mp", METRICS_PORT });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=jduke,ou=Users,dc=ldap,dc=example");
+        env.put(Context.SECURITY_CREDENTIALS, "theduke");
+        new InitialLdapContext(env, null).close();
+        assertEquals(1L, ldapServer.getMetrics().getCount(Operation.BIND));
+
+        String prometheus = get(MetricsHttpServer.PROMETHEUS_PATH);
+        assertTrue(prometheus, prometheus.contains("ldap_operations_total{operation=\"bind\"} 1\n"));
+        assertTrue(prometheus, prometheus.contains("ldap_operation_latency_seconds{operation=\"bind\",quantile=\"0.99\"}"));
+        assertTrue(prometheus, prometheus.contains("ldap_partition_entries{partition=\"dc=ldap,dc=example\"}"));
+        assertTrue(prometheus, prometheus.contains("ldap_cache_hit_ratio{cache=\"dnCache\"}"));
+        assertTrue(prometheus, prometheus.contains("jvm_memory_bytes_used{area=\"heap\"}"));
+
+        String json = get(MetricsHttpServer.JSON_PATH);
+        assertTrue(json, json.startsWith("{\"uptimeSeconds\":"));
+        assertTrue(json, json.contains("\"bind\":{\"count\":1,\"errors\":0,"));
+        assertTrue(json, json.contains("\"p999\":"));
+        assertTrue(json, json.endsWith("}}"));
+    }
+
+    @Test
+    public void testUnknownPaths() throws Exception {
+        assertEquals(404, getStatus(MetricsHttpServer.PROMETHEUS_PATH + "/x"));
+        assertEquals(404, getStatus(MetricsHttpServer.PROMETHEUS_PATH + "foo"));
+        assertEquals(404, getStatus("/"));
+        assertEquals(200, getStatus(MetricsHttpServer.PROMETHEUS_PATH + "?x=1"));
+    }
+
+    @Test
+    public void testRatesDontDependOnRequests() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            search();
+        }
+        ldapServer.getMetricsHttpServer().sampleRates();
+        assertTrue(Double.parseDouble(getRate(Operation.SEARCH)) > 0d);
+        // the same rate for all clients until the window ends
+        assertEquals(getRate(Operation.SEARCH), getRate(Operation.SEARCH));
+        ldapServer.getMetricsHttpServer().sampleRates();
+        assertEquals("0.000", getRate(Operation.SEARCH));
+    }
+
+    private void search() throws Exception {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=jduke,ou=Users,dc=ldap,dc=example");
+        env.put(Context.SECURITY_CREDENTIALS, "theduke");
+        InitialLdapContext ctx = new InitialLdapContext(env, null);
+        try {
+            ctx.getAttributes("uid=jduke,ou=Users,dc=ldap,dc=example");
+        } finally {
+            ctx.close();
+        }
+    }
+
+    private String getRate(Operation operation) throws Exception {
+        String json = get(MetricsHttpServer.JSON_PATH);
+        String prefix = "\"" + operation.name().toLowerCase() + "\":{";
+        int start = json.indexOf("\"ratePerSecond\":", json.indexOf(prefix)) + "\"ratePerSecond\":".length();
+        return json.substring(start, json.indexOf(',', start));
+    }
+
+    private int getStatus(String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + METRICS_PORT + path)
+                .openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String get(String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + METRICS_PORT + path)
+                .openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream is = connection.getInputStream()) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, n);
+            }
+            return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
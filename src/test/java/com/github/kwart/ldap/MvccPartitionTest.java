@@ -0,0 +1,133 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.ContextNotEmptyException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MvccPartitionTest {
+
+    private static final String JDUKE_DN = "uid=jduke,ou=Users,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-mvcc" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testReadOperations() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties(JDUKE_DN, "theduke"), null);
+        try {
+            assertEquals("Java Duke", ctx.getAttributes(JDUKE_DN, new String[] { "cn" }).get("cn").get());
+            assertEquals(1, count(ctx, "dc=ldap,dc=example", "(uid=jduke)", SearchControls.SUBTREE_SCOPE));
+            assertEquals(1, count(ctx, "dc=ldap,dc=example", "(&(objectClass=person)(cn=java*))",
+                    SearchControls.SUBTREE_SCOPE));
+            assertEquals(2, count(ctx, "dc=ldap,dc=example", "(objectClass=*)", SearchControls.ONELEVEL_SCOPE));
+            assertEquals(5, count(ctx, "dc=ldap,dc=example", "(objectClass=*)", SearchControls.SUBTREE_SCOPE));
+            assertEquals(0, count(ctx, "ou=Roles,dc=ldap,dc=example", "(uid=jduke)", SearchControls.SUBTREE_SCOPE));
+            assertThrows(NameNotFoundException.class, () -> ctx.getAttributes("uid=nobody,ou=Users,dc=ldap,dc=example"));
+        } finally {
+            ctx.close();
+        }
+        assertEquals(Long.valueOf(5), ldapServer.getPartitionEntryCounts().get("dc=ldap,dc=example"));
+    }
+
+    @Test
+    public void testWriteOperations() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties("uid=admin,ou=system", "secret"), null);
+        try {
+            ctx.modifyAttributes(JDUKE_DN, new ModificationItem[] {
+                    new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("cn", "Changed")) });
+            assertEquals(1, count(ctx, "dc=ldap,dc=example", "(cn=changed)", SearchControls.SUBTREE_SCOPE));
+            assertEquals(0, count(ctx, "dc=ldap,dc=example", "(cn=Java Duke)", SearchControls.SUBTREE_SCOPE));
+
+            assertThrows(ContextNotEmptyException.class, () -> ctx.unbind("ou=Users,dc=ldap,dc=example"));
+
+            ctx.rename("ou=Users,dc=ldap,dc=example", "ou=People,dc=ldap,dc=example");
+            String movedDn = "uid=jduke,ou=People,dc=ldap,dc=example";
+            assertEquals("Changed", ctx.getAttributes(movedDn, new String[] { "cn" }).get("cn").get());
+            assertTrue(ctx.getAttributes("ou=People,dc=ldap,dc=example").get("ou").contains("People"));
+            assertFalse(ctx.getAttributes("ou=People,dc=ldap,dc=example").get("ou").contains("Users"));
+            assertEquals(1, count(ctx, "ou=People,dc=ldap,dc=example", "(uid=jduke)", SearchControls.SUBTREE_SCOPE));
+            assertThrows(NameNotFoundException.class, () -> ctx.getAttributes(JDUKE_DN));
+
+            ctx.unbind(movedDn);
+            assertEquals(0, count(ctx, "dc=ldap,dc=example", "(uid=jduke)", SearchControls.SUBTREE_SCOPE));
+        } finally {
+            ctx.close();
+        }
+    }
+
+    private int count(LdapContext ctx, String baseDn, String filter, int scope) throws NamingException {
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(scope);
+        NamingEnumeration<SearchResult> results = ctx.search(baseDn, filter, searchControls);
+        int count = 0;
+        try {
+            while (results.hasMore()) {
+                results.next();
+                count++;
+            }
+        } finally {
+            results.close();
+        }
+        return count;
+    }
+
+    private Properties createProperties(String principal, String password) {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, principal);
+        env.put(Context.SECURITY_CREDENTIALS, password);
+        return env;
+    }
+}
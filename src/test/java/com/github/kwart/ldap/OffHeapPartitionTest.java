@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.ContextNotEmptyException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.directory.server.core.api.partition.Partition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapPartitionTest {
+
+    private static final String USER7_DN = "uid=user7,ou=unit1,ou=Users,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-ohp", "-gu", "300", "-gol", "1", "-gof", "3" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testReadOperations() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties(USER7_DN, "password7"), null);
+        try {
+            assertEquals("user7", ctx.getAttributes(USER7_DN, new String[] { "uid" }).get("uid").get());
+            assertEquals(1, count(ctx, "dc=ldap,dc=example", "(uid=user7)", SearchControls.SUBTREE_SCOPE));
+            assertEquals(0, count(ctx, "ou=unit0,ou=Users,dc=ldap,dc=example", "(uid=user7)",
+                    SearchControls.SUBTREE_SCOPE));
+            assertEquals(100, count(ctx, "ou=unit1,ou=Users,dc=ldap,dc=example", "(objectClass=inetOrgPerson)",
+                    SearchControls.ONELEVEL_SCOPE));
+            assertEquals(4, count(ctx, "ou=Users,dc=ldap,dc=example", "(objectClass=*)", SearchControls.ONELEVEL_SCOPE));
+        } finally {
+            ctx.close();
+        }
+        // non-admin searches are limited to 100 entries
+        LdapContext adminCtx = new InitialLdapContext(createProperties("uid=admin,ou=system", "secret"), null);
+        try {
+            assertEquals(301,
+                    count(adminCtx, "dc=ldap,dc=example", "(objectClass=inetOrgPerson)", SearchControls.SUBTREE_SCOPE));
+        } finally {
+            adminCtx.close();
+        }
+        for (Partition partition : ldapServer.getDirectoryService().getPartitions()) {
+            if (BulkLoader.isUserPartition(partition)) {
+                assertTrue(((OffHeapPartition) partition).getOffHeapBytes() > 0L);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteOperations() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties("uid=admin,ou=system", "secret"), null);
+        try {
+            ctx.modifyAttributes(USER7_DN, new ModificationItem[] {
+                    new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("cn", "Changed Seven")) });
+            assertEquals(1, count(ctx, "dc=ldap,dc=example", "(cn=changed seven)", SearchControls.SUBTREE_SCOPE));
+
+            assertThrows(ContextNotEmptyException.class, () -> ctx.unbind("ou=unit1,ou=Users,dc=ldap,dc=example"));
+
+            ctx.rename("ou=unit1,ou=Users,dc=ldap,dc=example", "ou=moved,dc=ldap,dc=example");
+            String movedDn = "uid=user7,ou=moved,dc=ldap,dc=example";
+            assertEquals(1, count(ctx, "ou=moved,dc=ldap,dc=example", "(cn=changed seven)", SearchControls.SUBTREE_SCOPE));
+            assertEquals(100, count(ctx, "ou=moved,dc=ldap,dc=example", "(objectClass=inetOrgPerson)",
+                    SearchControls.ONELEVEL_SCOPE));
+            assertThrows(NameNotFoundException.class, () -> ctx.getAttributes(USER7_DN));
+
+            ctx.unbind(movedDn);
+            assertEquals(0, count(ctx, "dc=ldap,dc=example", "(cn=changed seven)", SearchControls.SUBTREE_SCOPE));
+            assertEquals(300, count(ctx, "dc=ldap,dc=example", "(objectClass=inetOrgPerson)", SearchControls.SUBTREE_SCOPE));
+        } finally {
+            ctx.close();
+        }
+    }
+
+    private int count(LdapContext ctx, String baseDn, String filter, int scope) throws NamingException {
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(scope);
+        NamingEnumeration<SearchResult> results = ctx.search(baseDn, filter, searchControls);
+        int count = 0;
+        try {
+            while (results.hasMore()) {
+                results.next();
+                count++;
+            }
+        } finally {
+            results.close();
+        }
+        return count;
+    }
+
+    private Properties createProperties(String principal, String password) {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, principal);
+        env.put(Context.SECURITY_CREDENTIALS, password);
+        return env;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class PersistentTreeMapTest {
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(42);
+        TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+        PersistentTreeMap<Integer> map = PersistentTreeMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            String key = "k" + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(new ArrayList<String>(expected.tailMap("k5").keySet()), keysFrom(map, "k5"));
+        assertEquals(new ArrayList<String>(expected.keySet()), keysFrom(map, ""));
+    }
+
+    @Test
+    public void testOldVersionUnchanged() {
+        PersistentTreeMap<String> empty = PersistentTreeMap.empty();
+        PersistentTreeMap<String> v1 = empty.put("a", "1").put("b", "2");
+        PersistentTreeMap<String> v2 = v1.put("a", "3").remove("b").put("c", "4");
+        assertEquals(0, empty.size());
+        assertEquals("1", v1.get("a"));
+        assertEquals("2", v1.get("b"));
+        assertNull(v1.get("c"));
+        assertEquals("3", v2.get("a"));
+        assertNull(v2.get("b"));
+        assertEquals(2, v2.size());
+    }
+
+    private static List<String> keysFrom(PersistentTreeMap<Integer> map, String fromKey) {
+        List<String> keys = new ArrayList<String>();
+        map.visitFrom(fromKey, (key, value) -> keys.add(key));
+        return keys;
+    }
+}
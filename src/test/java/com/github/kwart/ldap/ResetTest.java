@@ -0,0 +1,178 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.NoPermissionException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.ldap.ExtendedRequest;
+import javax.naming.ldap.ExtendedResponse;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResetTest {
+
+    private static final String JDUKE_DN = "uid=jduke,ou=Users,dc=ldap,dc=example";
+    private static final String NEW_DN = "ou=New,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-rb" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties("uid=admin,ou=system", "secret"), null);
+        try {
+            changeDirectory(ctx);
+            ldapServer.reset();
+            assertBaseline(ctx);
+            changeDirectory(ctx);
+            ldapServer.reset();
+            assertBaseline(ctx);
+        } finally {
+            ctx.close();
+        }
+    }
+
+    @Test
+    public void testResetOperation() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties("uid=admin,ou=system", "secret"), null);
+        try {
+            changeDirectory(ctx);
+            ctx.extendedOperation(new ResetRequest());
+            assertBaseline(ctx);
+        } finally {
+            ctx.close();
+        }
+    }
+
+    @Test
+    public void testResetOperationRequiresAdmin() throws Exception {
+        LdapContext ctx = new InitialLdapContext(createProperties(JDUKE_DN, "theduke"), null);
+        try {
+            assertThrows(NoPermissionException.class, () -> ctx.extendedOperation(new ResetRequest()));
+        } finally {
+            ctx.close();
+        }
+    }
+
+    @Test
+    public void testResetDisabledByDefault() throws Exception {
+        ldapServer.stop();
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[0]);
+        ldapServer = new LdapServer(cliArguments);
+        assertThrows(IllegalStateException.class, () -> ldapServer.reset());
+        LdapContext ctx = new InitialLdapContext(createProperties("uid=admin,ou=system", "secret"), null);
+        try {
+            // the extended operation isn't registered
+            assertThrows(NamingException.class, () -> ctx.extendedOperation(new ResetRequest()));
+        } finally {
+            ctx.close();
+        }
+    }
+
+    private void changeDirectory(LdapContext ctx) throws NamingException {
+        ctx.modifyAttributes(JDUKE_DN, new ModificationItem[] {
+                new ModificationItem(DirContext.REPLACE_ATTRIBUTE, new BasicAttribute("cn", "Changed")) });
+        ctx.unbind("cn=Admin,ou=Roles,dc=ldap,dc=example");
+        BasicAttributes attributes = new BasicAttributes(true);
+        BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("organizationalUnit");
+        attributes.put(objectClass);
+        attributes.put("ou", "New");
+        ctx.createSubcontext(NEW_DN, attributes).close();
+    }
+
+    private void assertBaseline(LdapContext ctx) throws NamingException {
+        assertEquals("Java Duke", ctx.getAttributes(JDUKE_DN, new String[] { "cn" }).get("cn").get());
+        assertEquals(JDUKE_DN, ctx.getAttributes("cn=Admin,ou=Roles,dc=ldap,dc=example", new String[] { "member" })
+                .get("member").get());
+        assertThrows(NameNotFoundException.class, () -> ctx.getAttributes(NEW_DN));
+    }
+
+    private Properties createProperties(String principal, String password) {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, principal);
+        env.put(Context.SECURITY_CREDENTIALS, password);
+        return env;
+    }
+
+    private static class ResetRequest implements ExtendedRequest {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String getID() {
+            return ResetExtendedOperationHandler.OID;
+        }
+
+        @Override
+        public byte[] getEncodedValue() {
+            return null;
+        }
+
+        @Override
+        public ExtendedResponse createExtendedResponse(String id, byte[] berValue, int offset, int length) {
+            return new ExtendedResponse() {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public String getID() {
+                    return id;
+                }
+
+                @Override
+                public byte[] getEncodedValue() {
+                    return null;
+                }
+            };
+        }
+    }
+}
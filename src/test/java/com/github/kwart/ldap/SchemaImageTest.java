@@ -0,0 +1,61 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.Test;
+
+public class SchemaImageTest {
+
+    @Test
+    public void testImageRoundTrip() throws Exception {
+        SchemaImage scanned = SchemaImage.scanClasspath();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        scanned.write(baos);
+        SchemaImage image = SchemaImage.read(ByteBuffer.wrap(baos.toByteArray()));
+
+        assertEquals(scanned.getPaths(), image.getPaths());
+        assertEquals(scanned.getEntries().size(), image.getEntries().size());
+        for (int i = 0; i < scanned.getEntries().size(); i++) {
+            assertEquals(scanned.getEntries().get(i), image.getEntries().get(i));
+        }
+    }
+
+    @Test
+    public void testSchemaManagerFromImage() throws Exception {
+        SchemaManager fromJar = new DefaultSchemaManager(new JarLdifSchemaLoader());
+        assertTrue(fromJar.loadAllEnabled());
+        SchemaManager fromImage = new DefaultSchemaManager(new SchemaImageLoader(SchemaImage.scanClasspath()));
+        assertTrue(fromImage.loadAllEnabled());
+
+        assertEquals(fromJar.getAttributeTypeRegistry().size(), fromImage.getAttributeTypeRegistry().size());
+        assertEquals(fromJar.getObjectClassRegistry().size(), fromImage.getObjectClassRegistry().size());
+        assertEquals(fromJar.getMatchingRuleRegistry().size(), fromImage.getMatchingRuleRegistry().size());
+        assertEquals(fromJar.getEnabled().size(), fromImage.getEnabled().size());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.interceptor.BaseInterceptor;
+import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchOptimizerTest {
+
+    private static final String BASE_DN = "dc=ldap,dc=example";
+    private static final String NEW_DN = "uid=newuser,ou=Users,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-so", "-gu", "500" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testOptimizedSearches() throws Exception {
+        SearchOptimizerInterceptor optimizer = ldapServer.getSearchOptimizer();
+        assertTrue(optimizer.getEntryCount() > 500);
+        assertEquals(Long.valueOf(501), optimizer.getAttributeCounts().get("uid"));
+
+        assertEquals(1, count("(&(objectClass=person)(uid=user7))"));
+        assertEquals(1, optimizer.getReorderedSearches());
+        assertEquals(1, count("(&(objectClass=person)(uid=user7)(!(uid=user8)))"));
+        assertEquals(0, count("(&(objectClass=person)(uid=nobody))"));
+        assertEquals(0, count("(&(objectClass=person)(carLicense=*))"));
+        assertEquals(2, optimizer.getImpossibleSearches());
+        assertEquals(1, count("(|(uid=nobody)(uid=user7))"));
+        assertEquals(1, optimizer.getRemovedBranches());
+        assertEquals(501, count("(uid=*)"));
+
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        directoryService.getAdminSession().add(new DefaultEntry(directoryService.getSchemaManager(), NEW_DN,
+                "objectClass: inetOrgPerson", "uid: newuser", "cn: New User", "sn: User"));
+        assertEquals(1, count("(&(objectClass=person)(uid=newuser))"));
+        directoryService.getAdminSession().delete(new Dn(directoryService.getSchemaManager(), NEW_DN));
+        long impossible = optimizer.getImpossibleSearches();
+        assertEquals(0, count("(uid=newuser)"));
+        assertEquals(impossible + 1, optimizer.getImpossibleSearches());
+    }
+
+    @Test
+    public void testSystemPartitionSearches() throws Exception {
+        SearchOptimizerInterceptor optimizer = ldapServer.getSearchOptimizer();
+        long searches = optimizer.getSearches();
+        // the admin entry isn't covered by the user partition statistics
+        assertEquals(1, count("ou=system", "(uid=admin)"));
+        assertEquals(1, count("ou=system", "(&(objectClass=person)(uid=admin))"));
+        assertEquals(searches, optimizer.getSearches());
+        assertEquals(0, optimizer.getImpossibleSearches());
+    }
+
+    @Test
+    public void testCommittedValuesAreNeverPruned() throws Exception {
+        final List<Integer> counts = new ArrayList<Integer>();
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        // searches right after the partition stored the change, before the optimizer updated its statistics
+        directoryService.addLast(new BaseInterceptor("committedChangeSearch") {
+            @Override
+            public void add(AddOperationContext addContext) throws LdapException {
+                next(addContext);
+                counts.add(countUnchecked("(uid=newuser)"));
+            }
+
+            @Override
+            public void modify(ModifyOperationContext modifyContext) throws LdapException {
+                next(modifyContext);
+                counts.add(countUnchecked("(sn=Modified)"));
+            }
+
+            @Override
+            public void rename(RenameOperationContext renameContext) throws LdapException {
+                next(renameContext);
+                counts.add(countUnchecked("(uid=renamed)"));
+            }
+        });
+        directoryService.getAdminSession().add(new DefaultEntry(directoryService.getSchemaManager(), NEW_DN,
+                "objectClass: inetOrgPerson", "uid: newuser", "cn: New User", "sn: User"));
+        Dn dn = new Dn(directoryService.getSchemaManager(), NEW_DN);
+        directoryService.getAdminSession().modify(dn,
+                new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, "sn", "Modified"));
+        directoryService.getAdminSession().rename(dn, new Rdn(directoryService.getSchemaManager(), "uid=renamed"), true);
+        assertEquals(Arrays.asList(1, 1, 1), counts);
+        assertEquals(0, ldapServer.getSearchOptimizer().getImpossibleSearches());
+        // the pending values are released when the operations finish
+        assertEquals(0, count("(uid=newuser)"));
+        assertEquals(1, ldapServer.getSearchOptimizer().getImpossibleSearches());
+    }
+
+    private int countUnchecked(String filter) {
+        try {
+            return count(filter);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int count(String filter) throws Exception {
+        return count(BASE_DN, filter);
+    }
+
+    private int count(String baseDn, String filter) throws Exception {
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        Cursor<Entry> cursor = directoryService.getAdminSession().search(new Dn(directoryService.getSchemaManager(), baseDn),
+                SearchScope.SUBTREE, FilterParser.parse(directoryService.getSchemaManager(), filter),
+                AliasDerefMode.NEVER_DEREF_ALIASES, "1.1");
+        int count = 0;
+        try {
+            while (cursor.next()) {
+                cursor.get();
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+}
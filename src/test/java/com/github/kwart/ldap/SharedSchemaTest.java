@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Test;
+
+public class SharedSchemaTest {
+
+    @Test
+    public void testSharedSchema() throws Exception {
+        LdapServer server1 = startServer("-shs", "-p", "10389");
+        try {
+            LdapServer server2 = startServer("-shs", "-p", "10390");
+            try {
+                assertSame(server1.getDirectoryService().getSchemaManager(),
+                        server2.getDirectoryService().getSchemaManager());
+                for (int port : new int[] { 10389, 10390 }) {
+                    LdapContext ctx = new InitialLdapContext(createProperties(port), null);
+                    try {
+                        assertEquals("Java Duke", ctx.getAttributes("uid=jduke,ou=Users,dc=ldap,dc=example",
+                                new String[] { "cn" }).get("cn").get());
+                        BasicAttribute attributeType = new BasicAttribute("attributeTypes",
+                                "( 1.3.6.1.4.1.18060.0.4.1.2.999999 NAME 'sharedSchemaTest' SYNTAX 1.3.6.1.4.1.1466.115.121.1.15 )");
+                        assertThrows(OperationNotSupportedException.class, () -> ctx.modifyAttributes("cn=schema",
+                                new ModificationItem[] { new ModificationItem(DirContext.ADD_ATTRIBUTE, attributeType) }));
+                    } finally {
+                        ctx.close();
+                    }
+                }
+            } finally {
+                server2.stop();
+            }
+        } finally {
+            server1.stop();
+        }
+    }
+
+    private LdapServer startServer(String... args) throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, args);
+        return new LdapServer(cliArguments);
+    }
+
+    private Properties createProperties(int port) {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:" + port);
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=admin,ou=system");
+        env.put(Context.SECURITY_CREDENTIALS, "secret");
+        return env;
+    }
+}
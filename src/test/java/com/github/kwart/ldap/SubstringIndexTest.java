@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubstringIndexTest {
+
+    private static final String BASE_DN = "dc=ldap,dc=example";
+    private static final String NEW_DN = "uid=newuser,ou=Users,dc=ldap,dc=example";
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-si", "cn", "-si", "mail", "-gu", "2000" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testSearchResultsMatchScan() throws Exception {
+        String[] filters = { "(cn=*smi*)", "(mail=*user123*)", "(|(cn=*er12*)(mail=*er12*))", "(cn=jam*son)",
+                "(&(objectClass=person)(cn=*mary*))", "(cn=*xyz*)", "(cn=*jo*)" };
+        for (String filter : filters) {
+            assertEquals(filter, scan(filter), search(filter));
+        }
+        assertTrue(ldapServer.getSubstringIndex().getNarrowedSearches() > 0);
+    }
+
+    @Test
+    public void testIndexUpdates() throws Exception {
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        CoreSession session = directoryService.getAdminSession();
+        session.add(new DefaultEntry(directoryService.getSchemaManager(), NEW_DN, "objectClass: inetOrgPerson",
+                "uid: newuser", "cn: Quentin Zzyzx", "sn: Zzyzx"));
+        assertEquals(1, search("(cn=*zzyz*)").size());
+
+        session.modify(new Dn(directoryService.getSchemaManager(), NEW_DN),
+                new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, "cn", "Quentin Qwxqwx"));
+        assertEquals(0, search("(cn=*zzyz*)").size());
+        assertEquals(1, search("(cn=*qwxq*)").size());
+
+        session.delete(new Dn(directoryService.getSchemaManager(), NEW_DN));
+        assertEquals(0, search("(cn=*qwxq*)").size());
+    }
+
+    /**
+     * Runs the filter as a part of a disjunction with a non-indexed attribute, so it's evaluated by a partition scan.
+     */
+    private Set<String> scan(String filter) throws Exception {
+        return search("(|" + filter + "(description=*no-such-value*))");
+    }
+
+    private Set<String> search(String filter) throws Exception {
+        DirectoryService directoryService = ldapServer.getDirectoryService();
+        Set<String> result = new HashSet<String>();
+        Cursor<Entry> cursor = directoryService.getAdminSession().search(new Dn(directoryService.getSchemaManager(), BASE_DN),
+                SearchScope.SUBTREE, FilterParser.parse(directoryService.getSchemaManager(), filter),
+                AliasDerefMode.NEVER_DEREF_ALIASES, "1.1");
+        try {
+            while (cursor.next()) {
+                result.add(cursor.get().getDn().getNormName());
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+}
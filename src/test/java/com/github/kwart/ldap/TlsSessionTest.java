@@ -0,0 +1,137 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Properties;
+
+import javax.naming.Context;
+import javax.naming.ldap.InitialLdapContext;
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TlsSessionTest {
+
+    private LdapServer ldapServer;
+
+    @Before
+    public void before() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-sp", "10636", "-sep", "TLSv1.2", "-sscs", "100", "-sst", "600" });
+        ldapServer = new LdapServer(cliArguments);
+    }
+
+    @After
+    public void after() throws Exception {
+        ldapServer.stop();
+    }
+
+    @Test
+    public void testResumedHandshakes() throws Exception {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldaps://127.0.0.1:10636");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=jduke,ou=Users,dc=ldap,dc=example");
+        env.put(Context.SECURITY_CREDENTIALS, "theduke");
+        env.put("java.naming.ldap.factory.socket", SharedSessionSocketFactory.class.getName());
+        for (int i = 0; i < 3; i++) {
+            new InitialLdapContext(env, null).close();
+        }
+        TlsHandshakeCounter counter = ldapServer.getTlsHandshakes();
+        assertEquals(1L, counter.getFullHandshakes());
+        assertEquals(2L, counter.getResumedHandshakes());
+    }
+
+    @Test
+    public void testCipherSuiteOrder() {
+        assertArrayEquals(
+                new String[] { "TLS_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+                        "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384", "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256",
+                        "TLS_RSA_WITH_AES_128_GCM_SHA256" },
+                TlsConfig.orderCipherSuites(new String[] { "TLS_RSA_WITH_AES_128_GCM_SHA256",
+                        "TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256", "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+                        "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", "TLS_AES_128_GCM_SHA256" }));
+    }
+
+    /**
+     * Socket factory for JNDI which shares one client SSL context (and its session cache) by all connections.
+     */
+    public static class SharedSessionSocketFactory extends SocketFactory {
+
+        private static final SharedSessionSocketFactory INSTANCE = new SharedSessionSocketFactory();
+
+        private final SocketFactory delegate;
+
+        SharedSessionSocketFactory() {
+            try {
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, new TrustManager[] { new LdapServerTest.NoVerificationTrustManager() },
+                        new SecureRandom());
+                delegate = sslContext.getSocketFactory();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public static SocketFactory getDefault() {
+            return INSTANCE;
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return delegate.createSocket();
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return delegate.createSocket(host, port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return delegate.createSocket(host, port);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return delegate.createSocket(address, port, localAddress, localPort);
+        }
+    }
+}
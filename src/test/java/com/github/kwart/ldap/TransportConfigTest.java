@@ -0,0 +1,132 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.Properties;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.naming.Context;
+import javax.naming.directory.Attributes;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Test;
+
+public class TransportConfigTest {
+
+    @Test
+    public void testTunedServer() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments,
+                new String[] { "-bl", "512", "-iot", "2", "-wt", "4", "-tnd", "true", "-srb", "65536", "-mps", "1000000" });
+        LdapServer ldapServer = new LdapServer(cliArguments);
+        try {
+            for (int i = 0; i < 10; i++) {
+                LdapContext ctx = new InitialLdapContext(createProperties(), null);
+                try {
+                    Attributes attributes = ctx.getAttributes("uid=jduke,ou=Users,dc=ldap,dc=example", new String[] { "cn" });
+                    assertEquals("Java Duke", attributes.get("cn").get());
+                } finally {
+                    ctx.close();
+                }
+            }
+        } finally {
+            ldapServer.stop();
+        }
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        boolean supported = true;
+        try {
+            TransportConfig.createVirtualThreadExecutor().shutdown();
+        } catch (IllegalStateException e) {
+            supported = false;
+        }
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-vt" });
+        if (!supported) {
+            assertThrows(IllegalStateException.class, () -> new LdapServer(cliArguments));
+            return;
+        }
+        LdapServer ldapServer = new LdapServer(cliArguments);
+        try {
+            new InitialLdapContext(createProperties(), null).close();
+        } finally {
+            ldapServer.stop();
+        }
+    }
+
+    @Test
+    public void testBoundedWorkerQueue() throws Exception {
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) new TransportConfig().setWorkerThreads(2).createWorkerPool();
+        try {
+            assertEquals(2 * TransportConfig.WORKER_QUEUE_PER_THREAD, pool.getQueue().remainingCapacity());
+            assertTrue(pool.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedStartReleasesResources() throws Exception {
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[0]);
+        LdapServer ldapServer = new LdapServer(cliArguments);
+        try {
+            // the LDAPS port is taken, so the already bound LDAP port has to be released again
+            CLIArguments conflicting = new CLIArguments();
+            new ExtCommander(conflicting, new String[] { "-p", "10390", "-sp", "10389", "-wt", "2" });
+            assertThrows(Exception.class, () -> new LdapServer(conflicting));
+            new ServerSocket(10390).close();
+        } finally {
+            ldapServer.stop();
+        }
+    }
+
+    @Test
+    public void testInvalidValues() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TransportConfig().setVirtualThreads(true).setWorkerThreads(10).createWorkerPool());
+        // the server constructor parses the settings before the directory service is started
+        CLIArguments cliArguments = new CLIArguments();
+        new ExtCommander(cliArguments, new String[] { "-vt", "-wt", "10" });
+        assertThrows(IllegalArgumentException.class, () -> TransportConfig.parse(cliArguments));
+        assertThrows(IllegalArgumentException.class, () -> new TransportConfig().setWorkerThreads(0));
+        assertThrows(IllegalArgumentException.class, () -> new TransportConfig().setBacklog(-1));
+        new TransportConfig().setIoThreads(null).setMaxPduSize(null);
+    }
+
+    private Properties createProperties() {
+        Properties env = new Properties();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldap://127.0.0.1:10389");
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=jduke,ou=Users,dc=ldap,dc=example");
+        env.put(Context.SECURITY_CREDENTIALS, "theduke");
+        return env;
+    }
+}
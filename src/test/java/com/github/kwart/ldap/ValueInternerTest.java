@@ -0,0 +1,86 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package com.github.kwart.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ValueInternerTest {
+
+    private static SchemaManager schemaManager;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        schemaManager = InMemoryDirectoryServiceFactory.createSchemaManager(SchemaImage.loadDefault());
+    }
+
+    @Test
+    public void testIntern() throws Exception {
+        ValueInterner interner = new ValueInterner();
+        Entry first = user("user1", "Engineering");
+        Entry second = user("user2", "Engineering");
+        Entry third = user("user3", "ENGINEERING");
+        interner.intern(first);
+        interner.intern(second);
+        interner.intern(third);
+
+        assertSame(first.get("ou").get(), second.get("ou").get());
+        assertNotSame(first.get("ou").get(), third.get("ou").get());
+        assertEquals("ENGINEERING", third.get("ou").getString());
+        assertNotSame(first.get("uid").get(), second.get("uid").get());
+        for (Value<?> value : second.get("objectClass")) {
+            assertSame(value, find(first, value));
+        }
+        assertEquals(3, second.get("objectClass").size());
+    }
+
+    @Test
+    public void testTrim() throws Exception {
+        ValueInterner interner = new ValueInterner();
+        for (int i = 0; i < 20; i++) {
+            interner.intern(user("user" + i, "Sales"));
+        }
+        // object classes and the OU are shared, the unique values were trimmed
+        assertEquals(4, interner.trim());
+        assertEquals(19 * 4, interner.getDeduplicated());
+    }
+
+    private static Value<?> find(Entry entry, Value<?> value) {
+        for (Value<?> candidate : entry.get(value.getAttributeType())) {
+            if (candidate.equals(value)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static Entry user(String uid, String ou) throws Exception {
+        return new DefaultEntry(schemaManager, "uid=" + uid + ",ou=Users,dc=ldap,dc=example", "objectClass: top",
+                "objectClass: person", "objectClass: inetOrgPerson", "uid: " + uid, "cn: " + uid, "sn: " + uid, "ou: " + ou);
+    }
+}